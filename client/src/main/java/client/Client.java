@@ -6,6 +6,7 @@ import chess.ChessMove;
 import chess.InvalidMoveException;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
@@ -21,7 +22,7 @@ public class Client {
     private AuthData session;
     private GameData game;
     private TeamColor team;
-    private List<GameData> games;
+    private List<GameSummary> games;
 
     public enum State {
         LOGGED_OUT,
@@ -41,15 +42,25 @@ public class Client {
     public State state() {
         if (session == null) {
             return State.LOGGED_OUT;
-        } else if (ws == null) {
+        } else if (game == null) {
             return State.LOGGED_IN;
         } else {
             return State.PLAYING;
         }
     }
 
+    /**
+     * @return the game being played or observed, or null if there isn't one
+     * @throws ServerException if the server hasn't sent its board yet
+     */
     public ChessGame chessGame() {
-        return this.game != null ? this.game.game() : null;
+        if (this.game == null) {
+            return null;
+        }
+        if (this.game.game() == null) {
+            throw new ServerException("Error: the game is still loading");
+        }
+        return this.game.game();
     }
 
     public TeamColor team() {
@@ -73,7 +84,7 @@ public class Client {
         server.createGame(session.authToken(), name);
     }
 
-    public List<GameData> listGames() {
+    public List<GameSummary> listGames() {
         games = server.listGames(session.authToken());
         return games;
     }
@@ -87,15 +98,22 @@ public class Client {
             throw new ServerException("Error: invalid game index");
         }
 
-        return games.get(number - 1);
+        // Listings don't have boards, so the board comes with the game's
+        // first LOAD_GAME
+        var summary = games.get(number - 1);
+        return new GameData(summary.gameID(), summary.whiteUsername(), summary.blackUsername(), summary.gameName(),
+            null);
     }
 
     private TeamColor connectToGame(GameData game) {
         var team = game.userTeam(session.username());
         this.team = team;
-        this.ws = new WsFacade(url, this::handleServerMessage);
+        // Every game shares one websocket
+        if (this.ws == null) {
+            this.ws = new WsFacade(url);
+        }
 
-        ws.connect(session.authToken(), game.gameID());
+        ws.connect(session.authToken(), game.gameID(), this::handleServerMessage);
         return team;
     }
 
@@ -113,11 +131,11 @@ public class Client {
     }
 
     public void makeMove(ChessMove move) throws InvalidMoveException {
-        var piece = this.game.game().getBoard().getPiece(move.startPosition());
+        var piece = chessGame().getBoard().getPiece(move.startPosition());
         if (piece == null || piece.pieceColor() != this.team) {
             throw new InvalidMoveException();
         }
-        this.game.game().makeMove(move);
+        chessGame().makeMove(move);
         this.ws.move(session.authToken(), game.gameID(), move);
     }
 
@@ -126,7 +144,6 @@ public class Client {
 
         this.game = null;
         this.team = null;
-        this.ws = null;
     }
 
     public void resign() {
@@ -134,9 +151,13 @@ public class Client {
     }
 
     public void quit() {
-        if (ws != null) {
+        if (game != null) {
             leave();
         }
+        if (ws != null) {
+            ws.close();
+            ws = null;
+        }
         if (session != null) {
             logout();
         }
@@ -147,7 +168,7 @@ public class Client {
             case LoadGameMessage m -> this.game = this.game.withGame(m.game());
             case NotificationMessage m -> {
                 var resign = m.resign();
-                if (resign != null) {
+                if (resign != null && this.game.game() != null) {
                     this.game.game().resign(resign);
                 }
             }
@@ -3,7 +3,7 @@ package client;
 import chess.ChessGame.TeamColor;
 import com.google.gson.Gson;
 import model.AuthData;
-import model.GameData;
+import model.GameSummary;
 import model.UserData;
 import server.ServerInterface.*;
 
@@ -17,12 +17,21 @@ import java.net.http.HttpResponse.BodyHandlers;
 import java.util.List;
 
 public class HttpFacade implements ServerFacade {
-    private final HttpClient client = HttpClient.newHttpClient();
+    private final HttpClient client;
     private final Gson gson = new Gson();
     private final String baseUrl;
 
     public HttpFacade(String baseUrl) {
+        this(baseUrl, HttpClient.newHttpClient());
+    }
+
+    /**
+     * Sends requests through the given client, so many facades can share its
+     * connections and threads.
+     */
+    public HttpFacade(String baseUrl, HttpClient client) {
         this.baseUrl = baseUrl;
+        this.client = client;
     }
 
     public void clear() {
@@ -46,7 +55,7 @@ public class HttpFacade implements ServerFacade {
     }
 
     @Override
-    public List<GameData> listGames(String authToken) throws ServerException {
+    public List<GameSummary> listGames(String authToken) throws ServerException {
         var response = makeRequest("GET", "/game", authToken, null, ListGamesResponse.class);
         assert response != null;
         return response.games();
@@ -2,7 +2,7 @@ package client;
 
 import chess.ChessGame.TeamColor;
 import model.AuthData;
-import model.GameData;
+import model.GameSummary;
 import model.UserData;
 
 import java.util.List;
@@ -16,7 +16,7 @@ public interface ServerFacade {
 
     void logout(String authToken) throws ServerException;
 
-    List<GameData> listGames(String authToken) throws ServerException;
+    List<GameSummary> listGames(String authToken) throws ServerException;
 
     int createGame(String authToken, String gameName) throws ServerException;
 
@@ -13,34 +13,81 @@ import websocket.messages.ServerMessage;
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A single websocket to the server that can be subscribed to any number of
+ * games. Messages are routed to the handler of the game they belong to.
+ */
 public class WsFacade extends Endpoint {
     Session session;
     Gson gson = new Gson();
+    private final URI uri;
+    private final Map<Integer, Subscription> subscriptions = new ConcurrentHashMap<>();
 
     public interface Handler {
         void handleMessage(ServerMessage message);
     }
 
-    public WsFacade(String url, Handler handler) {
+    private static class Subscription {
+        final String auth;
+        final Handler handler;
+        Long lastEpoch;
+        Long lastSequence;
+
+        Subscription(String auth, Handler handler) {
+            this.auth = auth;
+            this.handler = handler;
+        }
+    }
+
+    public WsFacade(String url) {
         var wsUrl = url.replace("http", "ws");
-        var uri = URI.create(wsUrl + "/ws");
+        this.uri = URI.create(wsUrl + "/ws");
+        this.open();
+    }
 
+    private void open() throws ServerException {
         var container = ContainerProvider.getWebSocketContainer();
 
         try {
             this.session = container.connectToServer(this, uri);
-            this.session.addMessageHandler(
-                String.class, messageText -> {
-                    var message = deserializeMessage(messageText);
-                    handler.handleMessage(message);
-                }
-            );
+            this.session.addMessageHandler(String.class, this::receive);
         } catch (DeploymentException | IOException e) {
             throw new ServerException(e.getMessage());
         }
     }
 
+    private void receive(String messageText) {
+        var message = deserializeMessage(messageText);
+        var gameId = message.gameID();
+        if (gameId == null) {
+            for (var subscription : subscriptions.values()) {
+                subscription.handler.handleMessage(message);
+            }
+            return;
+        }
+
+        var subscription = subscriptions.get(gameId);
+        if (subscription == null) {
+            return;
+        }
+
+        var sequence = message.sequence();
+        if (sequence != null) {
+            if (!Objects.equals(message.epoch(), subscription.lastEpoch)) {
+                // The game's events are numbered afresh, so older numbers mean nothing now
+                subscription.lastEpoch = message.epoch();
+                subscription.lastSequence = sequence;
+            } else if (subscription.lastSequence == null || sequence > subscription.lastSequence) {
+                subscription.lastSequence = sequence;
+            }
+        }
+        subscription.handler.handleMessage(message);
+    }
+
     public ServerMessage deserializeMessage(String text) {
         var message = gson.fromJson(text, ServerMessage.class);
         return switch (message.getServerMessageType()) {
@@ -50,8 +97,17 @@ public class WsFacade extends Endpoint {
         };
     }
 
-    public void connect(String auth, int gameId) throws ServerException {
-        this.sendCommand(new UserGameCommand(CommandType.CONNECT, auth, gameId));
+    /**
+     * Subscribes to a game's messages, which will be passed to the given handler
+     */
+    public void connect(String auth, int gameId, Handler handler) throws ServerException {
+        var subscription = new Subscription(auth, handler);
+        var previous = subscriptions.put(gameId, subscription);
+        if (previous != null) {
+            subscription.lastEpoch = previous.lastEpoch;
+            subscription.lastSequence = previous.lastSequence;
+        }
+        this.sendConnect(gameId, subscription);
     }
 
     public void move(String auth, int gameId, ChessMove move) throws ServerException {
@@ -60,13 +116,39 @@ public class WsFacade extends Endpoint {
 
     public void leave(String auth, int gameId) throws ServerException {
         this.sendCommand(new UserGameCommand(CommandType.LEAVE, auth, gameId));
+        subscriptions.remove(gameId);
     }
 
     public void resign(String auth, int gameId) throws ServerException {
         this.sendCommand(new UserGameCommand(CommandType.RESIGN, auth, gameId));
     }
 
-    private void sendCommand(UserGameCommand command) throws ServerException {
+    public void close() {
+        subscriptions.clear();
+        try {
+            this.session.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void sendConnect(int gameId, Subscription subscription) throws ServerException {
+        var command = new UserGameCommand(CommandType.CONNECT, subscription.auth, gameId, subscription.lastEpoch,
+            subscription.lastSequence);
+        this.sendCommand(command);
+    }
+
+    private synchronized void sendCommand(UserGameCommand command) throws ServerException {
+        if (!this.session.isOpen()) {
+            // Reconnect after a dropped connection and resubscribe. The server
+            // only resends the events after each game's lastSequence instead of
+            // the whole game.
+            this.open();
+            for (var entry : subscriptions.entrySet()) {
+                if (command.getCommandType() != CommandType.CONNECT || !entry.getKey().equals(command.getGameID())) {
+                    this.sendConnect(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
         try {
             this.session.getBasicRemote().sendText(gson.toJson(command));
         } catch (IOException e) {
@@ -0,0 +1,101 @@
+package load;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors for each kind of operation the virtual users perform.
+ */
+public class LatencyStats {
+    private final Map<String, Samples> latencies = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+
+    public interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Every latency recorded for an operation. A run records at most a few
+     * million, so they're all kept and sorted for the report.
+     */
+    private static class Samples {
+        private long[] nanos = new long[1024];
+        private int count = 0;
+
+        synchronized void add(long value) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = value;
+        }
+
+        synchronized long[] sorted() {
+            var copy = Arrays.copyOf(nanos, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * Runs an operation, recording how long it took or that it failed.
+     */
+    public <T> T time(String name, Operation<T> operation) throws Exception {
+        var start = System.nanoTime();
+        try {
+            var result = operation.run();
+            record(name, System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            error(name);
+            throw e;
+        }
+    }
+
+    public void record(String name, long nanos) {
+        latencies.computeIfAbsent(name, n -> new Samples()).add(nanos);
+    }
+
+    public void error(String name) {
+        errors.computeIfAbsent(name, n -> new LongAdder()).increment();
+    }
+
+    public void print(PrintStream out, double seconds) {
+        out.printf("%-12s %9s %9s %9s %9s %9s %9s %7s%n", "operation", "count", "per sec", "p50 ms", "p90 ms",
+            "p99 ms", "max ms", "errors");
+        for (var entry : latencies.entrySet()) {
+            var sorted = entry.getValue().sorted();
+            var failed = errors.get(entry.getKey());
+            out.printf("%-12s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7d%n",
+                entry.getKey(),
+                sorted.length,
+                sorted.length / seconds,
+                percentile(sorted, 0.5),
+                percentile(sorted, 0.9),
+                percentile(sorted, 0.99),
+                percentile(sorted, 1),
+                failed != null ? failed.sum() : 0
+            );
+        }
+        for (var entry : errors.entrySet()) {
+            if (!latencies.containsKey(entry.getKey())) {
+                out.printf("%-12s %9d %9s %9s %9s %9s %9s %7d%n", entry.getKey(), 0, "-", "-", "-", "-", "-",
+                    entry.getValue().sum());
+            }
+        }
+    }
+
+    /**
+     * @return the latency in milliseconds that the given fraction of samples
+     * are at or under
+     */
+    static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        var rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
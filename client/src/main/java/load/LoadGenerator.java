@@ -0,0 +1,119 @@
+package load;
+
+import client.HttpFacade;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Puts load on a server by having virtual users register, create and join
+ * games, and play random legal moves over websockets, then prints throughput
+ * and latency percentiles for each operation. For example:
+ * <pre>
+ * mvn -pl client exec:java -Dexec.mainClass=load.LoadGenerator \
+ *     -Dexec.args="--users=100 --profile=spectators"
+ * </pre>
+ * The server can keep its data in MySQL as usual, or in memory by starting it
+ * with {@code -Dchess.storage=memory}.
+ * <p>
+ * Options:
+ * <ul>
+ *     <li>{@code --url} the server to test, by default http://localhost:8080</li>
+ *     <li>{@code --users} how many players, paired off into games</li>
+ *     <li>{@code --profile=players|spectators} whether each game is watched
+ *     by 0 or 20 spectators</li>
+ *     <li>{@code --spectators} how many spectators watch each game</li>
+ *     <li>{@code --duration} how many seconds to run for</li>
+ *     <li>{@code --moves} the most moves to play in a game before starting
+ *     another</li>
+ *     <li>{@code --seed} the seed for choosing moves</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    private static final int SPECTATOR_PROFILE_SPECTATORS = 20;
+
+    public record Options(
+        String url, int users, int spectators, Duration duration, int movesPerGame, long seed
+    ) {
+        public static Options parse(String[] args) {
+            var props = new Properties();
+            for (var arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --option=value, got " + arg);
+                }
+                var split = arg.indexOf('=');
+                props.setProperty(arg.substring(2, split), arg.substring(split + 1));
+            }
+
+            var profile = props.getProperty("profile", "players");
+            var defaultSpectators = switch (profile) {
+                case "players" -> 0;
+                case "spectators" -> SPECTATOR_PROFILE_SPECTATORS;
+                default -> throw new IllegalArgumentException("Unknown profile " + profile);
+            };
+
+            return new Options(
+                props.getProperty("url", "http://localhost:8080"),
+                Integer.parseInt(props.getProperty("users", "10")),
+                Integer.parseInt(props.getProperty("spectators", Integer.toString(defaultSpectators))),
+                Duration.ofSeconds(Long.parseLong(props.getProperty("duration", "30"))),
+                Integer.parseInt(props.getProperty("moves", "100")),
+                Long.parseLong(props.getProperty("seed", "1"))
+            );
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        run(Options.parse(args));
+        // Tyrus leaves non-daemon threads behind
+        System.exit(0);
+    }
+
+    public static LatencyStats run(Options options) throws InterruptedException {
+        var stats = new LatencyStats();
+        var http = new HttpFacade(options.url(), HttpClient.newHttpClient());
+        // Usernames are unique to each run, so runs don't need an empty database
+        var runId = UUID.randomUUID().toString().substring(0, 8);
+
+        var tables = new ArrayList<Table>();
+        for (var i = 0; i < Math.max(1, options.users() / 2); i++) {
+            var random = new Random(options.seed() + i);
+            tables.add(new Table("load-" + runId + "-" + i, options, http, stats, random));
+        }
+
+        System.out.printf("Running %d games with %d spectators each against %s for %ds%n", tables.size(),
+            options.spectators(), options.url(), options.duration().toSeconds());
+
+        var start = System.nanoTime();
+        var deadline = start + options.duration().toNanos();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<?>>();
+            for (var table : tables) {
+                futures.add(executor.submit(() -> {
+                    table.run(deadline);
+                    return null;
+                }));
+            }
+
+            for (var future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    System.err.println("A game stopped early: " + e.getMessage());
+                }
+            }
+        }
+        var seconds = (System.nanoTime() - start) / 1e9;
+
+        stats.print(System.out, seconds);
+        var received = tables.stream().mapToLong(Table::received).sum();
+        System.out.printf("websocket messages received: %d (%.1f per sec)%n", received, received / seconds);
+        return stats;
+    }
+}
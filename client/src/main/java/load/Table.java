@@ -0,0 +1,103 @@
+package load;
+
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
+import client.HttpFacade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Two players playing random legal moves against each other, game after
+ * game, with some number of spectators watching each game.
+ */
+public class Table {
+    private final String name;
+    private final LoadGenerator.Options options;
+    private final Random random;
+    private final VirtualUser white;
+    private final VirtualUser black;
+    private final List<VirtualUser> spectators = new ArrayList<>();
+
+    public Table(String name, LoadGenerator.Options options, HttpFacade http, LatencyStats stats, Random random) {
+        this.name = name;
+        this.options = options;
+        this.random = random;
+        this.white = new VirtualUser(http, options.url(), stats, true);
+        this.black = new VirtualUser(http, options.url(), stats, true);
+        for (var i = 0; i < options.spectators(); i++) {
+            spectators.add(new VirtualUser(http, options.url(), stats, false));
+        }
+    }
+
+    /**
+     * Registers every user, then plays games until the deadline.
+     */
+    public void run(long deadlineNanos) throws Exception {
+        white.register(name + "-white");
+        black.register(name + "-black");
+        for (var i = 0; i < spectators.size(); i++) {
+            spectators.get(i).register(name + "-spectator" + i);
+        }
+
+        try {
+            var game = 0;
+            while (System.nanoTime() < deadlineNanos) {
+                play(name + "-game" + game++, deadlineNanos);
+            }
+        } finally {
+            white.close();
+            black.close();
+            spectators.forEach(VirtualUser::close);
+        }
+    }
+
+    /**
+     * @return how many messages this table's users have received
+     */
+    public long received() {
+        var total = white.received() + black.received();
+        for (var spectator : spectators) {
+            total += spectator.received();
+        }
+        return total;
+    }
+
+    private void play(String gameName, long deadlineNanos) throws Exception {
+        var gameId = white.createGame(gameName);
+        white.joinGame(gameId, TeamColor.WHITE);
+        black.joinGame(gameId, TeamColor.BLACK);
+
+        var game = white.connect(gameId);
+        black.connect(gameId);
+        for (var spectator : spectators) {
+            spectator.listGames();
+            spectator.connect(gameId);
+        }
+
+        var moves = 0;
+        while (game.status().canPlay() && moves < options.movesPerGame() && System.nanoTime() < deadlineNanos) {
+            var color = game.getTeamTurn();
+            var player = color == TeamColor.WHITE ? white : black;
+            game = player.move(gameId, randomMove(game, random), color);
+            moves++;
+        }
+    }
+
+    static ChessMove randomMove(ChessGame game, Random random) {
+        var moves = new ArrayList<ChessMove>();
+        for (var row = 1; row <= 8; row++) {
+            for (var col = 1; col <= 8; col++) {
+                var position = new ChessPosition(row, col);
+                var piece = game.getBoard().getPiece(position);
+                if (piece != null && piece.pieceColor() == game.getTeamTurn()) {
+                    moves.addAll(game.validMoves(position));
+                }
+            }
+        }
+        return moves.get(random.nextInt(moves.size()));
+    }
+}
@@ -0,0 +1,137 @@
+package load;
+
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import client.HttpFacade;
+import client.WsFacade;
+import model.AuthData;
+import model.UserData;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.ServerMessage;
+import websocket.messages.ServerMessage.ServerMessageType;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * One simulated person using the client, with their own session and
+ * websocket.
+ */
+public class VirtualUser {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final HttpFacade http;
+    private final String url;
+    private final LatencyStats stats;
+    private final BlockingQueue<ServerMessage> replies = new LinkedBlockingQueue<>();
+    private final AtomicLong received = new AtomicLong();
+    private final boolean keepReplies;
+    private WsFacade ws;
+    private AuthData auth;
+    private volatile int gameId;
+
+    /**
+     * @param keepReplies whether to keep LOAD_GAME and ERROR messages so they
+     *                    can be waited for. Spectators only count what they
+     *                    receive.
+     */
+    public VirtualUser(HttpFacade http, String url, LatencyStats stats, boolean keepReplies) {
+        this.http = http;
+        this.url = url;
+        this.stats = stats;
+        this.keepReplies = keepReplies;
+    }
+
+    public void register(String username) throws Exception {
+        var user = new UserData(username, "password", username + "@example.com");
+        stats.time("register", () -> http.register(user));
+        auth = stats.time("login", () -> http.login(username, user.password()));
+    }
+
+    public int createGame(String name) throws Exception {
+        return stats.time("createGame", () -> http.createGame(auth.authToken(), name));
+    }
+
+    public void joinGame(int gameId, TeamColor color) throws Exception {
+        stats.time("joinGame", () -> {
+            http.joinGame(auth.authToken(), gameId, color);
+            return null;
+        });
+    }
+
+    public void listGames() throws Exception {
+        stats.time("listGames", () -> http.listGames(auth.authToken()));
+    }
+
+    /**
+     * Subscribes to a game and waits for it to be loaded.
+     */
+    public ChessGame connect(int gameId) throws Exception {
+        close();
+        this.gameId = gameId;
+        replies.clear();
+        ws = new WsFacade(url);
+        var start = System.nanoTime();
+        ws.connect(auth.authToken(), gameId, this::receive);
+        if (!keepReplies) {
+            // Spectators don't keep replies, so there's nothing to wait on
+            return null;
+        }
+        var game = awaitGame("connect", loaded -> true);
+        stats.record("connect", System.nanoTime() - start);
+        return game;
+    }
+
+    /**
+     * Makes a move and waits for the server to send back the updated game.
+     */
+    public ChessGame move(int gameId, ChessMove move, TeamColor color) throws Exception {
+        replies.clear();
+        var start = System.nanoTime();
+        ws.move(auth.authToken(), gameId, move);
+        // The opponent's last move can still be on its way, so wait for the
+        // game where it's no longer our turn
+        var game = awaitGame("move", loaded -> loaded.getTeamTurn() != color);
+        stats.record("move", System.nanoTime() - start);
+        return game;
+    }
+
+    public long received() {
+        return received.get();
+    }
+
+    public void close() {
+        if (ws != null) {
+            ws.close();
+        }
+    }
+
+    private ChessGame awaitGame(String operation, Predicate<ChessGame> expected) throws Exception {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        var reply = replies.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        while (reply instanceof LoadGameMessage load && !expected.test(load.game())) {
+            reply = replies.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        if (reply instanceof LoadGameMessage load) {
+            return load.game();
+        }
+
+        stats.error(operation);
+        var reason = reply instanceof ErrorMessage error ? error.message() : "timed out";
+        throw new IllegalStateException(operation + " failed: " + reason);
+    }
+
+    private void receive(ServerMessage message) {
+        received.incrementAndGet();
+        // Messages for the last game can still arrive after moving on to the next
+        var current = message.gameID() == null || message.gameID() == gameId;
+        if (keepReplies && current && message.getServerMessageType() != ServerMessageType.NOTIFICATION) {
+            replies.add(message);
+        }
+    }
+}
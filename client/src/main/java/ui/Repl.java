@@ -6,7 +6,7 @@ import chess.ChessPiece.PieceType;
 import chess.ChessPosition;
 import chess.InvalidMoveException;
 import client.Client;
-import model.GameData;
+import model.GameSummary;
 import model.UserData;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
@@ -153,11 +153,14 @@ public class Repl {
         return result.toString();
     }
 
-    private static void formatGame(int index, GameData game, StringBuilder result) {
+    private static void formatGame(int index, GameSummary game, StringBuilder result) {
         result.append("\n ")
             .append(index)
             .append(" - ")
             .append(game.gameName());
+        if (!game.status().canPlay()) {
+            result.append(" [").append(game.status().name().toLowerCase()).append("]");
+        }
 
         var hasWhite = game.whiteUsername() != null;
         var hasBlack = game.blackUsername() != null;
@@ -0,0 +1,45 @@
+package load;
+
+import chess.ChessGame;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTests {
+    @Test
+    public void randomMovesAreLegal() throws Exception {
+        var random = new Random(7);
+        var game = new ChessGame();
+        for (var i = 0; i < 200 && game.status().canPlay(); i++) {
+            game.makeMove(Table.randomMove(game, random));
+        }
+    }
+
+    @Test
+    public void parseOptions() {
+        var options = LoadGenerator.Options.parse(new String[]{"--users=8", "--profile=spectators", "--duration=5"});
+        assertEquals(8, options.users());
+        assertEquals(20, options.spectators());
+        assertEquals(Duration.ofSeconds(5), options.duration());
+        assertEquals("http://localhost:8080", options.url());
+
+        var players = LoadGenerator.Options.parse(new String[]{"--spectators=3"});
+        assertEquals(3, players.spectators());
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse(new String[]{"users"}));
+    }
+
+    @Test
+    public void percentiles() {
+        var sorted = new long[100];
+        for (var i = 0; i < sorted.length; i++) {
+            sorted[i] = (i + 1) * 1_000_000L;
+        }
+        assertEquals(50, LatencyStats.percentile(sorted, 0.5));
+        assertEquals(99, LatencyStats.percentile(sorted, 0.99));
+        assertEquals(100, LatencyStats.percentile(sorted, 1));
+        assertEquals(0, LatencyStats.percentile(new long[0], 0.5));
+    }
+}
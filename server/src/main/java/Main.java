@@ -1,9 +1,23 @@
-import chess.*;
 import server.Server;
+import server.ServerConfig;
+import websocket.GameEventBroker;
+
+import java.io.IOException;
 
 public class Main {
-    public static void main(String[] args) {
-        var server = new Server();
-        server.run(8080);
+    public static void main(String[] args) throws IOException {
+        var port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+
+        // One node can also host the broker that the others connect to
+        var brokerPort = System.getProperty("chess.broker.listen");
+        if (brokerPort != null) {
+            var broker = new GameEventBroker(Integer.parseInt(brokerPort));
+            broker.start();
+        }
+
+        var server = new Server(ServerConfig.fromProperties(System.getProperties()));
+        server.run(port);
+        // Flushes anything buffered, such as a command capture
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package capture;
+
+import com.google.gson.Gson;
+import model.AuthData;
+import model.GameData;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A capture file read back into memory.
+ *
+ * @param events every command and close in the order they happened
+ * @param auth   the sessions the commands authenticated with, under the
+ *               placeholders the commands use in place of their tokens
+ * @param games  the games the commands were made on, with the board as it was
+ *               when first connected to and every player that was recorded
+ */
+public record Capture(List<Event> events, List<AuthData> auth, List<GameData> games) {
+    /**
+     * A command received on a socket, or the socket closing if command is null.
+     *
+     * @param offsetMicros when it happened, since the start of the capture
+     */
+    public record Event(long offsetMicros, int socket, String command) {}
+
+    public static Capture read(Path file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CaptureFormat.MAGIC) {
+                throw new IOException(file + " is not a command capture");
+            }
+
+            var gson = new Gson();
+            var events = new ArrayList<Event>();
+            var auth = new ArrayList<AuthData>();
+            var games = new LinkedHashMap<Integer, GameData>();
+            var offset = 0L;
+            for (var type = CaptureFormat.readType(in); type != -1; type = CaptureFormat.readType(in)) {
+                switch (type) {
+                    case CaptureFormat.COMMAND -> {
+                        offset += CaptureFormat.readVarLong(in);
+                        var socket = (int) CaptureFormat.readVarLong(in);
+                        events.add(new Event(offset, socket, CaptureFormat.readString(in)));
+                    }
+                    case CaptureFormat.CLOSE -> {
+                        offset += CaptureFormat.readVarLong(in);
+                        events.add(new Event(offset, (int) CaptureFormat.readVarLong(in), null));
+                    }
+                    case CaptureFormat.AUTH -> auth.add(new AuthData(CaptureFormat.readString(in),
+                        CaptureFormat.readString(in)));
+                    case CaptureFormat.GAME -> {
+                        var game = gson.fromJson(CaptureFormat.readString(in), GameData.class);
+                        var first = games.get(game.gameID());
+                        games.put(game.gameID(), first == null ? game : new GameData(game.gameID(),
+                            game.whiteUsername() != null ? game.whiteUsername() : first.whiteUsername(),
+                            game.blackUsername() != null ? game.blackUsername() : first.blackUsername(),
+                            first.gameName(), first.game()));
+                    }
+                    default -> throw new IOException("Unknown record type " + type);
+                }
+            }
+            return new Capture(events, auth, List.copyOf(games.values()));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package capture;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary layout of a capture file. After a header, each record is a type
+ * byte followed by its fields. Numbers are unsigned varints and strings are a
+ * varint length followed by UTF-8 bytes.
+ * <ul>
+ *     <li>{@link #COMMAND}: microseconds since the previous command or close,
+ *     the socket's number, and the command's JSON</li>
+ *     <li>{@link #CLOSE}: microseconds since the previous command or close, and
+ *     the socket's number</li>
+ *     <li>{@link #AUTH}: the placeholder standing in for an auth token in
+ *     commands, and the username the token belongs to</li>
+ *     <li>{@link #GAME}: a game's JSON when it was connected to with players
+ *     that hadn't been recorded yet</li>
+ * </ul>
+ */
+final class CaptureFormat {
+    static final int MAGIC = 0x43484331; // "CHC1"
+
+    static final int COMMAND = 1;
+    static final int CLOSE = 2;
+    static final int AUTH = 3;
+    static final int GAME = 4;
+
+    private CaptureFormat() {}
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        var value = 0L;
+        for (var shift = 0; shift < 64; shift += 7) {
+            var b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        var length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("String too long");
+        }
+        var bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the next record's type, or -1 at the end of the file
+     */
+    static int readType(DataInputStream in) throws IOException {
+        try {
+            return in.readUnsignedByte();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+}
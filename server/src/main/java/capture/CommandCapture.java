@@ -0,0 +1,153 @@
+package capture;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import model.AuthData;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records the websocket commands a server receives, with when they arrived,
+ * so they can be replayed later with {@link Replay}. The sessions and games
+ * the commands use are recorded too, so a fresh server can be set up to
+ * accept them.
+ * <p>
+ * Auth tokens are never written. Each is replaced with a placeholder, the
+ * same one in its session's record and every command that uses it, so the
+ * replayed commands authenticate as the same users against the sessions
+ * {@link Replay} creates, while the file can't be used to act as them.
+ */
+public class CommandCapture implements AutoCloseable {
+    private final DataOutputStream out;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentHashMap<Session, Integer> sockets = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSocket = new AtomicInteger();
+    private final Set<String> recordedAuth = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, String> placeholders = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPlaceholder = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, List<String>> recordedPlayers = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+    private long lastNanos = System.nanoTime();
+
+    public CommandCapture(Path file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(CaptureFormat.MAGIC);
+    }
+
+    public void command(Session session, String commandText) {
+        var socket = sockets.computeIfAbsent(session, s -> nextSocket.incrementAndGet());
+        var redacted = redact(commandText);
+        write(CaptureFormat.COMMAND, () -> {
+            writeElapsed();
+            CaptureFormat.writeVarLong(out, socket);
+            CaptureFormat.writeString(out, redacted);
+        });
+    }
+
+    public void close(Session session) {
+        var socket = sockets.remove(session);
+        if (socket == null) {
+            return;
+        }
+        write(CaptureFormat.CLOSE, () -> {
+            writeElapsed();
+            CaptureFormat.writeVarLong(out, socket);
+        });
+    }
+
+    /**
+     * Records a session the first time it is used.
+     */
+    public void auth(AuthData auth) {
+        if (recordedAuth.add(auth.authToken())) {
+            var placeholder = placeholder(auth.authToken());
+            write(CaptureFormat.AUTH, () -> {
+                CaptureFormat.writeString(out, placeholder);
+                CaptureFormat.writeString(out, auth.username());
+            });
+        }
+    }
+
+    private String placeholder(String authToken) {
+        return placeholders.computeIfAbsent(authToken, token -> "captured-" + nextPlaceholder.incrementAndGet());
+    }
+
+    /**
+     * @return the command with its auth token replaced by the token's
+     * placeholder, or as it is if it has none or isn't a JSON object, since
+     * the server won't get as far as authenticating it either
+     */
+    private String redact(String commandText) {
+        try {
+            if (JsonParser.parseString(commandText) instanceof JsonObject command
+                && command.get("authToken") instanceof JsonPrimitive token && token.isString()) {
+                command.addProperty("authToken", placeholder(token.getAsString()));
+                return gson.toJson(command);
+            }
+        } catch (JsonParseException e) {
+            // Recorded as it is, so replaying it gets the same error
+        }
+        return commandText;
+    }
+
+    /**
+     * Records a game the first time it is connected to, and again whenever its
+     * players have changed since, since players can join after others connect.
+     */
+    public void game(GameData game) {
+        var players = Arrays.asList(game.whiteUsername(), game.blackUsername());
+        var previous = recordedPlayers.put(game.gameID(), players);
+        if (!players.equals(previous)) {
+            var json = gson.toJson(game);
+            write(CaptureFormat.GAME, () -> CaptureFormat.writeString(out, json));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private interface Fields {
+        void write() throws IOException;
+    }
+
+    private void write(int type, Fields fields) {
+        lock.lock();
+        try {
+            out.writeByte(type);
+            fields.write();
+        } catch (IOException e) {
+            // Losing the capture shouldn't affect the game being played
+            System.err.println("Writing command capture failed: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeElapsed() throws IOException {
+        var now = System.nanoTime();
+        CaptureFormat.writeVarLong(out, Math.max(0, now - lastNanos) / 1000);
+        lastNanos = now;
+    }
+}
@@ -0,0 +1,303 @@
+package capture;
+
+import com.google.gson.Gson;
+import dataaccess.DataAccessException;
+import dataaccess.MemoryDataAccess;
+import metrics.Histogram;
+import model.UserData;
+import server.Server;
+import server.ServerConfig;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+import websocket.messages.ServerMessage;
+import websocket.messages.ServerMessage.ServerMessageType;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replays a capture recorded with {@code -Dchess.capture=file}, sending each
+ * command on its own socket at the time it was originally received, and
+ * reports how long the server took to answer. For example:
+ * <pre>
+ * java -cp server.jar capture.Replay --capture=game.cap --speed=10
+ * </pre>
+ * By default the capture is replayed against a server started in this
+ * process with in-memory storage, set up with the capture's sessions and
+ * games so every command is accepted as it was originally. Other
+ * {@code -Dchess.*} settings apply to that server as usual. With
+ * {@code --url} it is replayed against a running server instead, which must
+ * already have the capture's data.
+ * <p>
+ * {@code --speed} scales time, so 10 replays ten times faster than the
+ * original traffic and 0 sends commands as fast as the server answers them.
+ * Each game's commands are replayed on their own thread, and a command waits
+ * for the server to answer the game's previous CONNECT or MAKE_MOVE before it
+ * is sent, so speeding up the replay can't reorder moves that depended on
+ * each other.
+ * <p>
+ * Latency is measured for CONNECT and MAKE_MOVE, from sending the command to
+ * receiving its LOAD_GAME or ERROR.
+ */
+public class Replay {
+    private static final long ANSWER_TIMEOUT_SECONDS = 10;
+
+    private final Capture capture;
+    private final String wsUrl;
+    private final double speed;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Gson gson = new Gson();
+    private final Map<Integer, Socket> sockets = new ConcurrentHashMap<>();
+    private final Map<CommandType, Histogram> latencies = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder unanswered = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    /**
+     * A command waiting for its LOAD_GAME or ERROR.
+     *
+     * @param minSequence the lowest sequence number the answer can have. A
+     *                    LOAD_GAME from before it is a broadcast of an earlier
+     *                    move that was still on its way.
+     */
+    private record Pending(
+        CommandType type, int gameId, long sentNanos, long minSequence, CompletableFuture<Long> answered
+    ) {}
+
+    private class Socket implements WebSocket.Listener {
+        final WebSocket webSocket;
+        final List<Pending> pending = new CopyOnWriteArrayList<>();
+        final ReentrantLock sendLock = new ReentrantLock();
+        final StringBuilder partial = new StringBuilder();
+
+        Socket() {
+            this.webSocket = client.newWebSocketBuilder().buildAsync(URI.create(wsUrl), this).join();
+        }
+
+        void send(String text) {
+            // The JDK's websocket doesn't allow a send until the last one is done
+            sendLock.lock();
+            try {
+                webSocket.sendText(text, true).join();
+            } finally {
+                sendLock.unlock();
+            }
+        }
+
+        void close() {
+            if (!webSocket.isOutputClosed()) {
+                webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                receive(gson.fromJson(partial.toString(), ServerMessage.class));
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            errors.increment();
+        }
+
+        private void receive(ServerMessage message) {
+            received.increment();
+            var type = message.getServerMessageType();
+            if (type == ServerMessageType.ERROR) {
+                errors.increment();
+            }
+            if (type == ServerMessageType.NOTIFICATION || message.gameID() == null) {
+                return;
+            }
+
+            var sequence = message.sequence() != null ? message.sequence() : 0;
+            for (var waiting : pending) {
+                if (waiting.gameId() != message.gameID()) {
+                    continue;
+                }
+                if (type == ServerMessageType.LOAD_GAME && sequence < waiting.minSequence()) {
+                    return;
+                }
+
+                pending.remove(waiting);
+                latencies.computeIfAbsent(waiting.type(), t -> new Histogram()).recordSince(waiting.sentNanos());
+                waiting.answered().complete(sequence);
+                return;
+            }
+        }
+    }
+
+    public Replay(Capture capture, String url, double speed) {
+        this.capture = capture;
+        this.wsUrl = url.replaceFirst("^http", "ws") + "/ws";
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new Properties();
+        for (var arg : args) {
+            var split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            options.setProperty(arg.substring(2, split), arg.substring(split + 1));
+        }
+        if (options.getProperty("capture") == null) {
+            throw new IllegalArgumentException("--capture is required");
+        }
+
+        var capture = Capture.read(Path.of(options.getProperty("capture")));
+        var speed = Double.parseDouble(options.getProperty("speed", "1"));
+
+        Server server = null;
+        var url = options.getProperty("url");
+        if (url == null) {
+            var config = ServerConfig.fromProperties(System.getProperties());
+            server = new Server(config, seed(capture));
+            url = "http://localhost:" + server.run(0);
+        }
+
+        try {
+            new Replay(capture, url, speed).run(System.out);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * @return storage with every session and game the capture uses
+     */
+    public static MemoryDataAccess seed(Capture capture) throws DataAccessException {
+        var data = new MemoryDataAccess();
+        var users = new LinkedHashMap<String, UserData>();
+        for (var auth : capture.auth()) {
+            users.computeIfAbsent(auth.username(),
+                username -> new UserData(username, "replayed", username + "@replay"));
+        }
+        data.insertUsers(List.copyOf(users.values()));
+        for (var auth : capture.auth()) {
+            data.insertAuth(auth);
+        }
+        data.putGames(capture.games());
+        return data;
+    }
+
+    public void run(PrintStream out) throws InterruptedException {
+        var start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var game : splitByGame().values()) {
+                executor.submit(() -> replayGame(game, start));
+            }
+        }
+        var seconds = (System.nanoTime() - start) / 1e9;
+        sockets.values().forEach(Socket::close);
+
+        out.printf("Replayed %d commands in %.1fs (%.1f per sec), %d messages received, %d errors, %d unanswered%n",
+            sent.sum(), seconds, sent.sum() / seconds, received.sum(), errors.sum(), unanswered.sum());
+        out.printf("%-10s %9s %9s %9s %9s %9s%n", "command", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (var entry : new TreeMap<>(latencies).entrySet()) {
+            var histogram = entry.getValue();
+            out.printf("%-10s %9d %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), histogram.count(),
+                millis(histogram.quantileNanos(0.5)), millis(histogram.quantileNanos(0.9)),
+                millis(histogram.quantileNanos(0.99)), millis(histogram.quantileNanos(1)));
+        }
+    }
+
+    /**
+     * Groups events by the game they're for. A socket closing goes with the
+     * game the socket last sent a command for.
+     */
+    private Map<Integer, List<Capture.Event>> splitByGame() {
+        var games = new LinkedHashMap<Integer, List<Capture.Event>>();
+        var socketGames = new HashMap<Integer, Integer>();
+        for (var event : capture.events()) {
+            Integer gameId;
+            if (event.command() != null) {
+                gameId = gson.fromJson(event.command(), UserGameCommand.class).getGameID();
+                socketGames.put(event.socket(), gameId);
+            } else {
+                gameId = socketGames.remove(event.socket());
+            }
+
+            if (gameId != null) {
+                games.computeIfAbsent(gameId, id -> new ArrayList<>()).add(event);
+            }
+        }
+        return games;
+    }
+
+    private Void replayGame(List<Capture.Event> events, long start) throws InterruptedException {
+        CompletableFuture<Long> previous = CompletableFuture.completedFuture(0L);
+        for (var event : events) {
+            if (speed > 0) {
+                var due = start + (long) (TimeUnit.MICROSECONDS.toNanos(event.offsetMicros()) / speed);
+                var wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+
+            var lastSequence = 0L;
+            try {
+                lastSequence = previous.get(ANSWER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                unanswered.increment();
+            }
+
+            if (event.command() == null) {
+                var socket = sockets.remove(event.socket());
+                if (socket != null) {
+                    socket.close();
+                }
+                continue;
+            }
+
+            var socket = sockets.computeIfAbsent(event.socket(), n -> new Socket());
+            var command = gson.fromJson(event.command(), UserGameCommand.class);
+            var type = command.getCommandType();
+            if (type == CommandType.CONNECT || type == CommandType.MAKE_MOVE) {
+                // The LOAD_GAME answering a CONNECT has the game's current sequence number, not a new one
+                var minSequence = type == CommandType.MAKE_MOVE ? lastSequence + 1 : 0;
+                var answered = new CompletableFuture<Long>();
+                socket.pending.add(new Pending(type, command.getGameID(), System.nanoTime(), minSequence, answered));
+                previous = answered;
+            }
+            socket.send(event.command());
+            sent.increment();
+        }
+        return null;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,49 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * DataAccess with every call returning a future, so independent lookups can
+ * run at the same time. Futures fail with a DataAccessException.
+ */
+public interface AsyncDataAccess {
+    CompletableFuture<Void> insertUser(UserData user);
+
+    CompletableFuture<Void> insertUsers(List<UserData> users);
+
+    CompletableFuture<UserData> getUser(String username);
+
+    CompletableFuture<Void> clearUsers();
+
+    CompletableFuture<Integer> createGame(String name, ChessGame game);
+
+    CompletableFuture<Void> putGame(GameData game);
+
+    CompletableFuture<Void> putGames(List<GameData> games);
+
+    CompletableFuture<GameData> getGame(int gameId);
+
+    CompletableFuture<List<GameData>> getGamesByIds(Collection<Integer> gameIds);
+
+    CompletableFuture<List<GameData>> getGames();
+
+    CompletableFuture<List<GameSummary>> getGameSummaries();
+
+    CompletableFuture<Void> clearGames();
+
+    CompletableFuture<Void> insertAuth(AuthData auth);
+
+    CompletableFuture<AuthData> getAuth(String token);
+
+    CompletableFuture<Void> deleteAuth(String token);
+
+    CompletableFuture<Void> clearAuth();
+}
@@ -0,0 +1,177 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many calls can be made to another DataAccess at once. With
+ * virtual threads there is no thread pool to cap the number of requests
+ * waiting on the database, so this keeps them from opening more connections
+ * than the database will accept.
+ */
+public class BoundedDataAccess implements DataAccess {
+    private final DataAccess data;
+    private final Semaphore permits;
+
+    public BoundedDataAccess(DataAccess data, int maxConcurrent) {
+        this.data = data;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    private interface Call<T> {
+        T run() throws DataAccessException;
+    }
+
+    private <T> T bounded(Call<T> call) throws DataAccessException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted waiting for database");
+        }
+
+        try {
+            return call.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        bounded(() -> {
+            data.insertUser(user);
+            return null;
+        });
+    }
+
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        bounded(() -> {
+            data.insertUsers(users);
+            return null;
+        });
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return bounded(() -> data.getUser(username));
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        bounded(() -> {
+            data.clearUsers();
+            return null;
+        });
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        return bounded(() -> data.createGame(name, game));
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        bounded(() -> {
+            data.putGame(game);
+            return null;
+        });
+    }
+
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        bounded(() -> {
+            data.putGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public GameData getGame(int gameId) throws DataAccessException {
+        return bounded(() -> data.getGame(gameId));
+    }
+
+    @Override
+    public List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        return bounded(() -> data.getGamesByIds(gameIds));
+    }
+
+    @Override
+    public List<GameData> getGames() throws DataAccessException {
+        return bounded(data::getGames);
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() throws DataAccessException {
+        return bounded(data::getGameSummaries);
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        bounded(() -> {
+            data.clearGames();
+            return null;
+        });
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        bounded(() -> {
+            data.insertAuth(auth);
+            return null;
+        });
+    }
+
+    @Override
+    public AuthData getAuth(String token) throws DataAccessException {
+        return bounded(() -> data.getAuth(token));
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        bounded(() -> {
+            data.deleteAuth(token);
+            return null;
+        });
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        bounded(() -> {
+            data.clearAuth();
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        return bounded(() -> data.deleteExpiredAuth(now, limit));
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        bounded(() -> {
+            data.insertRevokedToken(token, expiresAt);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() throws DataAccessException {
+        return bounded(data::getRevokedTokens);
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        return bounded(() -> data.deleteExpiredRevokedTokens(now));
+    }
+}
@@ -0,0 +1,277 @@
+package dataaccess;
+
+import chess.ChessGame;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Keeps recently used users and sessions in front of another DataAccess, since
+ * almost every request looks its session up again. Changes made through this
+ * DataAccess update the cache. Entries expire after a minute, which bounds how
+ * long a logout on another server node takes to be noticed here.
+ * <p>
+ * Games aren't cached, since another node can change one at any time and a
+ * move checked against a stale board would overwrite that change.
+ */
+public class CachingDataAccess implements DataAccess {
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final DataAccess data;
+    private final Cache<String, UserData> users;
+    private final Cache<String, AuthData> auth;
+
+    /**
+     * Entries are versioned, so a lookup that read storage before a removal
+     * doesn't put back what it read once the removal is done. Callers take
+     * {@link #version()} before reading storage and pass it to put.
+     */
+    private static class Cache<K, V> {
+        private record Entry<V>(V value, long expires) {}
+
+        private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+        // The version each key was last removed at
+        private final ConcurrentHashMap<K, Long> removed = new ConcurrentHashMap<>();
+        // Reads from before this version aren't cached at all, after a clear
+        // or once the removed keys have been forgotten
+        private volatile long floor = 0;
+        private final ReentrantLock removeLock = new ReentrantLock();
+        private final int capacity;
+        private final Counter hits;
+        private final Counter misses;
+
+        Cache(String name, int capacity, MetricsRegistry registry) {
+            this.capacity = capacity;
+            this.hits = registry.counter("chess_cache_hits_total", "Lookups answered from the cache", "cache", name);
+            this.misses = registry.counter("chess_cache_misses_total", "Lookups that went to storage", "cache",
+                name);
+        }
+
+        V get(K key) {
+            var entry = entries.get(key);
+            if (entry == null || entry.expires - System.nanoTime() < 0) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+
+        long version() {
+            return version.get();
+        }
+
+        /**
+         * Caches a value read from storage, unless its key was removed or the
+         * cache cleared since the read began.
+         *
+         * @param readVersion what {@link #version()} returned before the read
+         */
+        void put(K key, V value, long readVersion) {
+            if (entries.size() >= capacity) {
+                // Making room for one arbitrary entry is enough, since it's
+                // only a cache
+                var iterator = entries.keySet().iterator();
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            var entry = new Entry<>(value, System.nanoTime() + TTL_NANOS);
+            // Checked inside compute, since a removal marks the key before
+            // removing its entry
+            entries.compute(key, (k, current) -> {
+                if (readVersion < floor || readVersion < removed.getOrDefault(k, 0L)) {
+                    return current;
+                }
+                return entry;
+            });
+        }
+
+        void remove(K key) {
+            removeLock.lock();
+            try {
+                removed.put(key, version.incrementAndGet());
+                entries.remove(key);
+                if (removed.size() > capacity) {
+                    // Forgetting them is safe once every read from before is refused
+                    floor = version.incrementAndGet();
+                    removed.clear();
+                }
+            } finally {
+                removeLock.unlock();
+            }
+        }
+
+        void clear() {
+            removeLock.lock();
+            try {
+                floor = version.incrementAndGet();
+                removed.clear();
+                entries.clear();
+            } finally {
+                removeLock.unlock();
+            }
+        }
+
+        void removeIf(Predicate<V> test) {
+            entries.values().removeIf(entry -> test.test(entry.value));
+        }
+    }
+
+    /**
+     * @param capacity how many users and how many sessions to keep
+     */
+    public CachingDataAccess(DataAccess data, int capacity, MetricsRegistry registry) {
+        this.data = data;
+        this.users = new Cache<>("user", capacity, registry);
+        this.auth = new Cache<>("auth", capacity, registry);
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        var version = users.version();
+        data.insertUser(user);
+        users.put(user.username(), user, version);
+    }
+
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        // Not cached like a single user is, since they're usually imported
+        // rather than about to log in
+        data.insertUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        var user = users.get(username);
+        if (user == null) {
+            var version = users.version();
+            user = data.getUser(username);
+            if (user != null) {
+                users.put(username, user, version);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        users.clear();
+        data.clearUsers();
+        users.clear();
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        return data.createGame(name, game);
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        data.putGame(game);
+    }
+
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        data.putGames(games);
+    }
+
+    @Override
+    public GameData getGame(int gameId) throws DataAccessException {
+        return data.getGame(gameId);
+    }
+
+    @Override
+    public List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        return data.getGamesByIds(gameIds);
+    }
+
+    @Override
+    public List<GameData> getGames() throws DataAccessException {
+        return data.getGames();
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() throws DataAccessException {
+        return data.getGameSummaries();
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        data.clearGames();
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        var version = this.auth.version();
+        data.insertAuth(auth);
+        this.auth.put(auth.authToken(), auth, version);
+    }
+
+    @Override
+    public AuthData getAuth(String token) throws DataAccessException {
+        var found = auth.get(token);
+        if (found == null) {
+            var version = auth.version();
+            found = data.getAuth(token);
+            if (found != null) {
+                auth.put(token, found, version);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        // Removed first so it isn't used while it's being deleted, and again
+        // afterwards so a lookup that read it in between can't cache it
+        auth.remove(token);
+        data.deleteAuth(token);
+        auth.remove(token);
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        auth.clear();
+        data.clearAuth();
+        auth.clear();
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        var deleted = data.deleteExpiredAuth(now, limit);
+        // Removed afterwards, like deleteAuth. Ones storage hasn't got to yet
+        // go too, but callers reject expired sessions anyway.
+        auth.removeIf(session -> session.expired(now));
+        return deleted;
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        data.insertRevokedToken(token, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() throws DataAccessException {
+        return data.getRevokedTokens();
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        return data.deleteExpiredRevokedTokens(now);
+    }
+}
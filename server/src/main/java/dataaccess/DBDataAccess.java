@@ -1,33 +1,108 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
 import com.google.gson.Gson;
+import metrics.JsonEvent;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keeps everything in MySQL. If the database has replicas, lookups of users
+ * and sessions and the list of games are read from them, except that for a
+ * few seconds after this server changes a user, session or the list, reads
+ * of it go to the primary so callers see their own writes. Games themselves
+ * are always read from the primary, since a move has to start from the
+ * latest state.
+ * <p>
+ * Changes made through another server can take as long as the replicas lag
+ * to be seen, as they already can with CachingDataAccess in front.
+ */
 public class DBDataAccess implements DataAccess {
+    private static final int GAME_ID_BLOCK = 100;
+    // Longer than replicas should ever lag
+    private static final long READ_YOUR_WRITES_MILLIS = 5_000;
+    private static final String GAME_LIST = "games";
+    // Rows sent to the database at once by batch calls
+    private static final int BATCH_ROWS = 1000;
+
+    private final DatabaseManager database;
+    private final GameIds gameIds = new GameIds(this::reserveGameIds, GAME_ID_BLOCK);
+    // When this server last changed each user, session or the game list.
+    // Only kept if there are replicas.
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private volatile long lastClear = 0;
+    private volatile long lastPrune = 0;
+
     public DBDataAccess() throws DataAccessException {
+        this(DatabaseManager.primary());
+    }
+
+    public DBDataAccess(DatabaseManager database) throws DataAccessException {
+        this.database = database;
         configureDatabase();
     }
 
+    private void wrote(String key) {
+        if (!database.hasReplicas()) {
+            return;
+        }
+        var now = System.currentTimeMillis();
+        recentWrites.put(key, now);
+        if (now - lastPrune > READ_YOUR_WRITES_MILLIS) {
+            lastPrune = now;
+            recentWrites.values().removeIf(time -> now - time > READ_YOUR_WRITES_MILLIS);
+        }
+    }
+
+    private void cleared() {
+        lastClear = System.currentTimeMillis();
+    }
+
+    private boolean fromReplica(String key) {
+        if (!database.hasReplicas()) {
+            return false;
+        }
+        var changed = Math.max(lastClear, recentWrites.getOrDefault(key, 0L));
+        return System.currentTimeMillis() - changed > READ_YOUR_WRITES_MILLIS;
+    }
+
     @Override
     public void insertUser(UserData user) throws DataAccessException {
         var statement = "INSERT INTO user (username, password, email) VALUES (?, ?, ?)";
+        wrote("user " + user.username());
         executeStatement(statement, user.username(), user.password(), user.email());
     }
 
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        var rows = new ArrayList<Object[]>(users.size());
+        for (var user : users) {
+            wrote("user " + user.username());
+            rows.add(new Object[] {user.username(), user.password(), user.email()});
+        }
+        executeBatch("INSERT INTO user (username, password, email) VALUES (?, ?, ?)", rows);
+    }
+
     @Override
     public UserData getUser(String username) throws DataAccessException {
         var statement = "SELECT password, email FROM user WHERE username=?";
-        return executeQuery(statement, (rs) -> {
+        return executeLookup("user " + username, statement, (rs) -> {
             if (!rs.next()) { return null; }
             var password = rs.getString(1);
             var email = rs.getString(2);
@@ -37,44 +112,82 @@ public class DBDataAccess implements DataAccess {
 
     @Override
     public void clearUsers() throws DataAccessException {
+        cleared();
         executeStatement("TRUNCATE user");
     }
 
     @Override
     public int createGame(String name, ChessGame game) throws DataAccessException {
-        var json = new Gson().toJson(game);
-        var statement = "INSERT INTO gameData (game_name, game) VALUES (?, ?)";
+        var id = gameIds.next();
+        var json = encodeGame(game, id);
+        wrote(GAME_LIST);
+        executeStatement("INSERT INTO gameData (id, game_name, game, status, turn) VALUES (?, ?, ?, ?, ?)", id, name,
+            json, game.status().name(), game.getTeamTurn().name());
+        return id;
+    }
+
+    /**
+     * Moves game_ids along by a block in one statement. LAST_INSERT_ID(expr)
+     * remembers the new value for this connection, so reading it back doesn't
+     * race with other servers reserving blocks.
+     */
+    int reserveGameIds(int count) throws DataAccessException {
         try (
-            var connection = DatabaseManager.getConnection();
-            var prepared = connection.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS)
+            var connection = database.getConnection();
+            var update = connection.prepareStatement(
+                "UPDATE game_ids SET next_id = LAST_INSERT_ID(next_id + ?) WHERE id = 1");
+            var select = connection.prepareStatement("SELECT LAST_INSERT_ID()")
         ) {
-            prepared.setString(1, name);
-            prepared.setString(2, json);
-
-            prepared.executeUpdate();
-
-            var rs = prepared.getGeneratedKeys();
-            return rs.next() ? rs.getInt(1) : 0;
-        } catch (SQLException | DataAccessException e) {
+            update.setInt(1, count);
+            update.executeUpdate();
+            var rs = select.executeQuery();
+            rs.next();
+            return rs.getInt(1) - count;
+        } catch (SQLException e) {
             throw new DataAccessException(e.getMessage());
         }
     }
 
     @Override
     public void putGame(GameData game) throws DataAccessException {
-        var statement = "REPLACE INTO gameData (id, white_username, black_username, game_name, game)"
-            + " VALUES (?, ?, ?, ?, ?)";
-        var json = new Gson().toJson(game.game());
+        // Status and turn are copied out of the game so listings can filter
+        // on them without decoding it
+        var statement = "REPLACE INTO gameData (id, white_username, black_username, game_name, game, status, turn)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+        var json = encodeGame(game.game(), game.gameID());
+        wrote(GAME_LIST);
         executeStatement(
             statement,
             game.gameID(),
             game.whiteUsername(),
             game.blackUsername(),
             game.gameName(),
-            json
+            json,
+            game.game().status().name(),
+            game.game().getTeamTurn().name()
         );
     }
 
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        var statement = "REPLACE INTO gameData (id, white_username, black_username, game_name, game, status, turn)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+        var rows = new ArrayList<Object[]>(games.size());
+        for (var game : games) {
+            rows.add(new Object[] {
+                game.gameID(),
+                game.whiteUsername(),
+                game.blackUsername(),
+                game.gameName(),
+                encodeGame(game.game(), game.gameID()),
+                game.game().status().name(),
+                game.game().getTeamTurn().name()
+            });
+        }
+        wrote(GAME_LIST);
+        executeBatch(statement, rows);
+    }
+
     @Override
     public GameData getGame(int gameId) throws DataAccessException {
         var statement = "SELECT id, white_username, black_username, game_name, game FROM gameData WHERE id=?";
@@ -84,10 +197,41 @@ public class DBDataAccess implements DataAccess {
         }, gameId);
     }
 
+    /**
+     * Looks the games up a batch at a time with {@code id IN (...)}, from the
+     * primary like getGame.
+     */
+    @Override
+    public List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        var ids = List.copyOf(gameIds);
+        var found = new HashMap<Integer, GameData>();
+        for (var start = 0; start < ids.size(); start += BATCH_ROWS) {
+            var batch = ids.subList(start, Math.min(start + BATCH_ROWS, ids.size()));
+            var statement = "SELECT id, white_username, black_username, game_name, game FROM gameData WHERE id IN ("
+                + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")";
+            executeQuery(statement, (rs) -> {
+                while (rs.next()) {
+                    var game = readGame(rs);
+                    found.put(game.gameID(), game);
+                }
+                return null;
+            }, batch.toArray());
+        }
+
+        var games = new ArrayList<GameData>(found.size());
+        for (var id : ids) {
+            var game = found.get(id);
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
     @Override
     public List<GameData> getGames() throws DataAccessException {
         var statement = "SELECT id, white_username, black_username, game_name, game FROM gameData";
-        return executeQuery(statement, (rs) -> {
+        return executeQuery(fromReplica(GAME_LIST), statement, (rs) -> {
             var result = new ArrayList<GameData>();
             while (rs.next()) {
                 result.add(readGame(rs));
@@ -97,136 +241,226 @@ public class DBDataAccess implements DataAccess {
         });
     }
 
+    /**
+     * Reads the status and turn columns putGame copies out of each game, so
+     * the game column is never read or decoded.
+     */
+    @Override
+    public List<GameSummary> getGameSummaries() throws DataAccessException {
+        var statement = "SELECT id, white_username, black_username, game_name, status, turn FROM gameData ORDER BY id";
+        return executeQuery(fromReplica(GAME_LIST), statement, (rs) -> {
+            var result = new ArrayList<GameSummary>();
+            while (rs.next()) {
+                result.add(new GameSummary(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    GameStatus.valueOf(rs.getString(5)), TeamColor.valueOf(rs.getString(6))));
+            }
+            return result;
+        });
+    }
+
     private GameData readGame(ResultSet rs) throws SQLException {
         var id = rs.getInt(1);
         var whiteUsername = rs.getString(2);
         var blackUsername = rs.getString(3);
         var gameName = rs.getString(4);
         var json = rs.getString(5);
+        var event = new JsonEvent();
+        event.begin();
         var chessGame = new Gson().fromJson(json, ChessGame.class);
+        event.commit(ChessGame.class, true, id, json);
 
         return new GameData(id, whiteUsername, blackUsername, gameName, chessGame);
     }
 
+    private static String encodeGame(ChessGame game, int gameId) {
+        var event = new JsonEvent();
+        event.begin();
+        var json = new Gson().toJson(game);
+        event.commit(ChessGame.class, false, gameId, json);
+        return json;
+    }
+
     @Override
     public void clearGames() throws DataAccessException {
+        cleared();
+        // next_id is left alone: other servers and shards still hold blocks reserved from it
         executeStatement("TRUNCATE gameData");
     }
 
     @Override
     public void insertAuth(AuthData auth) throws DataAccessException {
-        var statement = "INSERT INTO auth (auth_token, username) VALUES (?, ?)";
-        executeStatement(statement, auth.authToken(), auth.username());
+        var statement = "INSERT INTO auth (auth_token, username, issued_at, expires_at) VALUES (?, ?, ?, ?)";
+        wrote("auth " + auth.authToken());
+        executeStatement(statement, auth.authToken(), auth.username(), auth.issuedAt(), auth.expiresAt());
     }
 
     @Override
     public AuthData getAuth(String token) throws DataAccessException {
-        var statement = "SELECT username FROM auth WHERE auth_token=?";
-        return executeQuery(statement, (rs) -> {
+        var statement = "SELECT username, issued_at, expires_at FROM auth WHERE auth_token=?";
+        return executeLookup("auth " + token, statement, (rs) -> {
             if (!rs.next()) { return null; }
-            var username = rs.getString(1);
-            return new AuthData(token, username);
+            return new AuthData(token, rs.getString(1), rs.getLong(2), rs.getLong(3));
         }, token);
     }
 
     @Override
     public void deleteAuth(String token) throws DataAccessException {
         var statement = "DELETE FROM auth WHERE auth_token=?";
+        wrote("auth " + token);
         executeStatement(statement, token);
     }
 
     @Override
     public void clearAuth() throws DataAccessException {
+        cleared();
         executeStatement("TRUNCATE auth");
+        executeStatement("TRUNCATE revoked_token");
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        // A range scan of auth_expires, so each batch only touches the rows it
+        // deletes. Sessions on replicas go a little later, but callers reject
+        // them by their expiry anyway.
+        var statement = "DELETE FROM auth WHERE expires_at > 0 AND expires_at <= ? ORDER BY expires_at LIMIT ?";
+        return executeStatement(statement, now, limit);
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        // Every node that got the logout may record it
+        executeStatement("INSERT IGNORE INTO revoked_token (token, expires_at) VALUES (?, ?)", token, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() throws DataAccessException {
+        // From the primary, since a server starting up has to see every logout
+        return executeQuery("SELECT token, expires_at FROM revoked_token", (rs) -> {
+            var revoked = new HashMap<String, Long>();
+            while (rs.next()) {
+                revoked.put(rs.getString(1), rs.getLong(2));
+            }
+            return revoked;
+        });
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        return executeStatement("DELETE FROM revoked_token WHERE expires_at <= ?", now);
+    }
+
+    /**
+     * @return how many rows the statement changed
+     */
+    private int executeStatement(String statement, Object... params) throws DataAccessException {
+        try (
+            var connection = database.getConnection();
+            var prepared = connection.prepareStatement(statement)
+        ) {
+            setParams(prepared, params);
+            return prepared.executeUpdate();
+        } catch (SQLException | DataAccessException e) {
+            throw new DataAccessException(e.getMessage());
+        }
     }
 
-    private void executeStatement(String statement, Object... params) throws DataAccessException {
+    /**
+     * Runs a statement once for each row of parameters, on one connection
+     * and in one transaction, so either every row is changed or none are.
+     * The driver rewrites each batch of inserts into a multi-row statement.
+     */
+    private void executeBatch(String statement, List<Object[]> rows) throws DataAccessException {
+        if (rows.isEmpty()) {
+            return;
+        }
         try (
-            var connection = DatabaseManager.getConnection();
+            var connection = database.getConnection();
             var prepared = connection.prepareStatement(statement)
         ) {
-            for (int i = 0; i < params.length; i++) {
-                var param = params[i];
-                if (param == null) {
-                    prepared.setNull(i + 1, Types.VARCHAR);
-                    continue;
+            connection.setAutoCommit(false);
+            try {
+                for (var i = 0; i < rows.size(); i++) {
+                    setParams(prepared, rows.get(i));
+                    prepared.addBatch();
+                    if ((i + 1) % BATCH_ROWS == 0 || i == rows.size() - 1) {
+                        prepared.executeBatch();
+                    }
                 }
-                switch (param) {
-                    case String s -> prepared.setString(i + 1, s);
-                    case Integer n -> prepared.setInt(i + 1, n);
-                    case Boolean b -> prepared.setBoolean(i + 1, b);
-                    default -> throw new RuntimeException("Object of unknown type detected");
+                connection.commit();
+            } catch (Throwable e) {
+                // Anything that stops the batch partway, not only SQL errors,
+                // must not leave the rows written so far
+                try {
+                    connection.rollback();
+                } catch (SQLException rollback) {
+                    e.addSuppressed(rollback);
                 }
+                throw e;
             }
-            prepared.execute();
         } catch (SQLException | DataAccessException e) {
             throw new DataAccessException(e.getMessage());
         }
     }
 
+    private static void setParams(PreparedStatement prepared, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            var param = params[i];
+            if (param == null) {
+                prepared.setNull(i + 1, Types.VARCHAR);
+                continue;
+            }
+            switch (param) {
+                case String s -> prepared.setString(i + 1, s);
+                case Integer n -> prepared.setInt(i + 1, n);
+                case Long n -> prepared.setLong(i + 1, n);
+                case Boolean b -> prepared.setBoolean(i + 1, b);
+                default -> throw new RuntimeException("Object of unknown type detected");
+            }
+        }
+    }
+
     interface ResultSetFn<T> {
         T apply(ResultSet r) throws SQLException;
     }
 
     private <T> T executeQuery(String statement, ResultSetFn<T> f, Object... params) throws
+        DataAccessException {
+        return executeQuery(false, statement, f, params);
+    }
+
+    /**
+     * Looks up the row with the given key, on a replica unless this server
+     * changed it recently. A miss on the replica is only asked of the primary
+     * if this server changed the row while the replica was being read, so
+     * lookups of tokens and users that don't exist never reach the primary.
+     */
+    private <T> T executeLookup(String key, String statement, ResultSetFn<T> f, Object... params)
+        throws DataAccessException {
+        if (!fromReplica(key)) {
+            return executeQuery(false, statement, f, params);
+        }
+        var result = executeQuery(true, statement, f, params);
+        if (result == null && !fromReplica(key)) {
+            return executeQuery(false, statement, f, params);
+        }
+        return result;
+    }
+
+    private <T> T executeQuery(boolean fromReplica, String statement, ResultSetFn<T> f, Object... params) throws
         DataAccessException {
         try (
-            var connection = DatabaseManager.getConnection();
+            var connection = fromReplica ? database.getReadConnection() : database.getConnection();
             var prepared = connection.prepareStatement(statement)
         ) {
-            for (int i = 0; i < params.length; i++) {
-                var param = params[i];
-                switch (param) {
-                    case String s -> prepared.setString(i + 1, s);
-                    case Integer n -> prepared.setInt(i + 1, n);
-                    case Boolean b -> prepared.setBoolean(i + 1, b);
-                    default -> throw new RuntimeException("Object of unknown type detected");
-                }
-            }
+            setParams(prepared, params);
             return f.apply(prepared.executeQuery());
         } catch (SQLException | DataAccessException e) {
             throw new DataAccessException(e.getMessage());
         }
     }
 
-    private final String[] createStatements = {
-        """
-            CREATE TABLE IF NOT EXISTS user (
-              `username` varchar(256) NOT NULL,
-              `password` varchar(256) NOT NULL,
-              `email` varchar(256) NOT NULL,
-              PRIMARY KEY (`username`)
-            ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
-            """,
-        """
-            CREATE TABLE IF NOT EXISTS auth (
-              `auth_token` varchar(256) NOT NULL,
-              `username` varchar(256) NOT NULL,
-              PRIMARY KEY (`auth_token`)
-            ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
-            """,
-        """
-            CREATE TABLE IF NOT EXISTS gameData (
-              `id` int NOT NULL AUTO_INCREMENT,
-              `white_username` varchar(256) DEFAULT NULL,
-              `black_username` varchar(256) DEFAULT NULL,
-              `game_name` varchar(256) NOT NULL,
-              `game` text NOT NULL,
-              PRIMARY KEY (`id`)
-            ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
-            """
-    };
-
     private void configureDatabase() throws DataAccessException {
-        DatabaseManager.createDatabase();
-        try (var connection = DatabaseManager.getConnection()) {
-            for (var statement : createStatements) {
-                try (var prepared = connection.prepareStatement(statement)) {
-                    prepared.execute();
-                }
-            }
-        } catch (SQLException e) {
-            throw new DataAccessException(e.getMessage());
-        }
+        database.createDatabase();
+        Migrations.apply(database);
     }
 }
@@ -3,13 +3,27 @@ package dataaccess;
 import chess.ChessGame;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface DataAccess {
     void insertUser(UserData user) throws DataAccessException;
 
+    /**
+     * Inserts many users in as few round trips as storage allows. If any of
+     * them already exists, storage that can roll back inserts none of them.
+     */
+    default void insertUsers(List<UserData> users) throws DataAccessException {
+        for (var user : users) {
+            insertUser(user);
+        }
+    }
+
     UserData getUser(String username) throws DataAccessException;
 
     void clearUsers() throws DataAccessException;
@@ -18,10 +32,41 @@ public interface DataAccess {
 
     void putGame(GameData game) throws DataAccessException;
 
+    /**
+     * Puts many games in as few round trips as storage allows.
+     */
+    default void putGames(List<GameData> games) throws DataAccessException {
+        for (var game : games) {
+            putGame(game);
+        }
+    }
+
     GameData getGame(int gameId) throws DataAccessException;
 
+    /**
+     * @return the games with the given IDs that exist, in the order asked for
+     */
+    default List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        var games = new ArrayList<GameData>(gameIds.size());
+        for (var id : gameIds) {
+            var game = getGame(id);
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
     List<GameData> getGames() throws DataAccessException;
 
+    /**
+     * @return what the lobby shows about every game, in ID order. Storage
+     * that can list games without reading their boards overrides this.
+     */
+    default List<GameSummary> getGameSummaries() throws DataAccessException {
+        return getGames().stream().map(GameSummary::of).toList();
+    }
+
     void clearGames() throws DataAccessException;
 
     void insertAuth(AuthData auth) throws DataAccessException;
@@ -31,4 +76,43 @@ public interface DataAccess {
     void deleteAuth(String token) throws DataAccessException;
 
     void clearAuth() throws DataAccessException;
+
+    /**
+     * Deletes up to limit sessions that expired at or before now, oldest
+     * first. Sessions that never expire are kept.
+     *
+     * @return how many were deleted
+     */
+    int deleteExpiredAuth(long now, int limit) throws DataAccessException;
+
+    /**
+     * Records that a signed token was logged out. Signed tokens aren't stored
+     * as sessions, so this is how a server that starts later, or that missed
+     * the logout, learns to reject one. Clearing sessions deletes these too.
+     *
+     * @param expiresAt when the token expires anyway, after which the record
+     *                  is no longer needed
+     */
+    void insertRevokedToken(String token, long expiresAt) throws DataAccessException;
+
+    /**
+     * @return every revoked token that hasn't been deleted, with when it
+     * expires
+     */
+    Map<String, Long> getRevokedTokens() throws DataAccessException;
+
+    /**
+     * Deletes the revoked tokens that expired at or before now.
+     *
+     * @return how many were deleted
+     */
+    int deleteExpiredRevokedTokens(long now) throws DataAccessException;
+
+    /**
+     * @return a view of this DataAccess whose calls don't block the caller. By
+     * default each call runs on its own virtual thread.
+     */
+    default AsyncDataAccess async() {
+        return new ExecutorDataAccess(this, ExecutorDataAccess.VIRTUAL_THREADS);
+    }
 }
@@ -1,72 +1,206 @@
 package dataaccess;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Connects to one database, which is a schema on a MySQL server. The primary
+ * database and any game shards are read from db.properties:
+ * <pre>
+ * db.name=chess
+ * db.host=localhost
+ * db.port=3306
+ * db.user=...
+ * db.password=...
+ * # Optional: keep games in these databases instead, on the same server
+ * # unless db.&lt;name&gt;.host and db.&lt;name&gt;.port say otherwise
+ * db.shards=chess_games_0,chess_games_1
+ * # Optional: replicas of the primary, and of a shard, to read from
+ * db.replicas=replica1:3306,replica2:3306
+ * db.chess_games_0.replicas=replica3:3306
+ * </pre>
+ * Replicas have the same database name and credentials as what they copy.
+ */
 public class DatabaseManager {
-    private static final String DATABASE_NAME;
-    private static final String USER;
-    private static final String PASSWORD;
-    private static final String CONNECTION_URL;
+    // How long a replica that couldn't be reached is left alone
+    private static final long UNHEALTHY_MILLIS = 30_000;
+
+    private final String databaseName;
+    private final String user;
+    private final String password;
+    private final String connectionUrl;
+    private final List<DatabaseManager> replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    // Until when this replica is skipped, after a connection to it failed
+    private volatile long unhealthyUntil = 0;
 
     /*
      * Load the database information for the db.properties file.
      */
-    static {
-        try {
+    private static class Config {
+        static final Properties PROPS = load();
+
+        private static Properties load() {
             try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("db.properties")) {
                 if (propStream == null) {
                     throw new Exception("Unable to load db.properties");
                 }
-                Properties props = new Properties();
+                var props = new Properties();
                 props.load(propStream);
-                DATABASE_NAME = props.getProperty("db.name");
-                USER = props.getProperty("db.user");
-                PASSWORD = props.getProperty("db.password");
+                return props;
+            } catch (Exception ex) {
+                throw new RuntimeException("unable to process db.properties. " + ex.getMessage());
+            }
+        }
+    }
+
+    public DatabaseManager(String host, int port, String databaseName, String user, String password) {
+        // Lets the driver send a batch of inserts as one multi-row statement
+        this(String.format("jdbc:mysql://%s:%d/?rewriteBatchedStatements=true", host, port), databaseName, user,
+            password, List.of());
+    }
+
+    DatabaseManager(String connectionUrl, String databaseName, String user, String password,
+        List<DatabaseManager> replicas) {
+        this.databaseName = databaseName;
+        this.user = user;
+        this.password = password;
+        this.connectionUrl = connectionUrl;
+        this.replicas = List.copyOf(replicas);
+    }
+
+    /**
+     * @return the database users, sessions and unsharded games are kept in
+     */
+    public static DatabaseManager primary() {
+        return fromProperties(Config.PROPS.getProperty("db.name"), "db.replicas");
+    }
 
-                var host = props.getProperty("db.host");
-                var port = Integer.parseInt(props.getProperty("db.port"));
-                CONNECTION_URL = String.format("jdbc:mysql://%s:%d", host, port);
+    /**
+     * @return the databases games are spread over, or none if games are kept
+     * in the primary
+     */
+    public static List<DatabaseManager> shards() {
+        var shards = new ArrayList<DatabaseManager>();
+        var names = Config.PROPS.getProperty("db.shards", "");
+        for (var name : names.split(",")) {
+            if (!name.isBlank()) {
+                shards.add(fromProperties(name.trim(), "db." + name.trim() + ".replicas"));
             }
-        } catch (Exception ex) {
-            throw new RuntimeException("unable to process db.properties. " + ex.getMessage());
         }
+        return shards;
+    }
+
+    private static DatabaseManager fromProperties(String databaseName, String replicasProperty) {
+        var props = Config.PROPS;
+        var host = props.getProperty("db." + databaseName + ".host", props.getProperty("db.host"));
+        var port = props.getProperty("db." + databaseName + ".port", props.getProperty("db.port"));
+        var manager = new DatabaseManager(host, Integer.parseInt(port), databaseName, props.getProperty("db.user"),
+            props.getProperty("db.password"));
+
+        var replicas = new ArrayList<DatabaseManager>();
+        for (var address : props.getProperty(replicasProperty, "").split(",")) {
+            address = address.trim();
+            if (!address.isEmpty()) {
+                var split = address.lastIndexOf(':');
+                var replicaPort = Integer.parseInt(address.substring(split + 1));
+                replicas.add(new DatabaseManager(address.substring(0, split), replicaPort, databaseName,
+                    manager.user, manager.password));
+            }
+        }
+        return manager.withReplicas(replicas);
+    }
+
+    public String databaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return a manager for another database on the same server
+     */
+    public DatabaseManager withDatabase(String name) {
+        return new DatabaseManager(connectionUrl, name, user, password, List.of());
+    }
+
+    /**
+     * @return a manager for this database that reads from the given replicas
+     */
+    public DatabaseManager withReplicas(List<DatabaseManager> replicas) {
+        return new DatabaseManager(connectionUrl, databaseName, user, password, replicas);
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
     }
 
     /**
      * Creates the database if it does not already exist.
      */
-    static void createDatabase() throws DataAccessException {
-        try {
-            var statement = "CREATE DATABASE IF NOT EXISTS " + DATABASE_NAME;
-            var conn = DriverManager.getConnection(CONNECTION_URL, USER, PASSWORD);
-            try (var preparedStatement = conn.prepareStatement(statement)) {
-                preparedStatement.executeUpdate();
-            }
+    void createDatabase() throws DataAccessException {
+        var statement = "CREATE DATABASE IF NOT EXISTS " + databaseName;
+        try (
+            var conn = DriverManager.getConnection(connectionUrl, user, password);
+            var preparedStatement = conn.prepareStatement(statement)
+        ) {
+            preparedStatement.executeUpdate();
         } catch (SQLException e) {
             throw new DataAccessException(e.getMessage());
         }
     }
 
     /**
-     * Create a connection to the database and sets the catalog based upon the
-     * properties specified in db.properties. Connections to the database should
-     * be short-lived, and you must close the connection when you are done with it.
-     * The easiest way to do that is with a try-with-resource block.
+     * Create a connection to the database and sets the catalog to this
+     * manager's database. Connections to the database should be short-lived,
+     * and you must close the connection when you are done with it. The easiest
+     * way to do that is with a try-with-resource block.
      * <br/>
      * <code>
-     * try (var conn = DbInfo.getConnection(databaseName)) {
+     * try (var conn = database.getConnection()) {
      * // execute SQL statements.
      * }
      * </code>
      */
-    static Connection getConnection() throws DataAccessException {
+    Connection getConnection() throws DataAccessException {
         try {
-            var conn = DriverManager.getConnection(CONNECTION_URL, USER, PASSWORD);
-            conn.setCatalog(DATABASE_NAME);
+            var conn = DriverManager.getConnection(connectionUrl, user, password);
+            conn.setCatalog(databaseName);
             return conn;
         } catch (SQLException e) {
             throw new DataAccessException(e.getMessage());
         }
     }
+
+    /**
+     * Creates a read only connection to one of the replicas, taking turns
+     * between them. If the chosen one can't be reached the next is tried, and
+     * only if none can is the primary read from, since a read that is slow
+     * beats one that fails. A replica that can't be reached is skipped for a
+     * while, so reads don't each wait on its connect timeout first.
+     */
+    Connection getReadConnection() throws DataAccessException {
+        var now = System.currentTimeMillis();
+        var start = nextReplica.getAndIncrement();
+        for (var i = 0; i < replicas.size(); i++) {
+            var replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.unhealthyUntil > now) {
+                continue;
+            }
+            try {
+                var conn = replica.getConnection();
+                try {
+                    conn.setReadOnly(true);
+                } catch (SQLException e) {
+                    conn.close();
+                    throw e;
+                }
+                return conn;
+            } catch (DataAccessException | SQLException e) {
+                replica.unhealthyUntil = System.currentTimeMillis() + UNHEALTHY_MILLIS;
+            }
+        }
+        return getConnection();
+    }
 }
@@ -0,0 +1,157 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs each call to a blocking DataAccess on an executor.
+ */
+public class ExecutorDataAccess implements AsyncDataAccess {
+    /**
+     * Runs each call on its own virtual thread, which is cheap enough to use for
+     * every JDBC call.
+     */
+    public static final ExecutorService VIRTUAL_THREADS =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("data-access-", 0).factory());
+
+    private final DataAccess data;
+    private final Executor executor;
+
+    public ExecutorDataAccess(DataAccess data, Executor executor) {
+        this.data = data;
+        this.executor = executor;
+    }
+
+    private interface Call<T> {
+        T run() throws DataAccessException;
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        var future = new CompletableFuture<T>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.run());
+            } catch (DataAccessException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> insertUser(UserData user) {
+        return submit(() -> {
+            data.insertUser(user);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertUsers(List<UserData> users) {
+        return submit(() -> {
+            data.insertUsers(users);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<UserData> getUser(String username) {
+        return submit(() -> data.getUser(username));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearUsers() {
+        return submit(() -> {
+            data.clearUsers();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> createGame(String name, ChessGame game) {
+        return submit(() -> data.createGame(name, game));
+    }
+
+    @Override
+    public CompletableFuture<Void> putGame(GameData game) {
+        return submit(() -> {
+            data.putGame(game);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putGames(List<GameData> games) {
+        return submit(() -> {
+            data.putGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<GameData> getGame(int gameId) {
+        return submit(() -> data.getGame(gameId));
+    }
+
+    @Override
+    public CompletableFuture<List<GameData>> getGamesByIds(Collection<Integer> gameIds) {
+        return submit(() -> data.getGamesByIds(gameIds));
+    }
+
+    @Override
+    public CompletableFuture<List<GameData>> getGames() {
+        return submit(data::getGames);
+    }
+
+    @Override
+    public CompletableFuture<List<GameSummary>> getGameSummaries() {
+        return submit(data::getGameSummaries);
+    }
+
+    @Override
+    public CompletableFuture<Void> clearGames() {
+        return submit(() -> {
+            data.clearGames();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAuth(AuthData auth) {
+        return submit(() -> {
+            data.insertAuth(auth);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<AuthData> getAuth(String token) {
+        return submit(() -> data.getAuth(token));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAuth(String token) {
+        return submit(() -> {
+            data.deleteAuth(token);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAuth() {
+        return submit(() -> {
+            data.clearAuth();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package dataaccess;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out game IDs from blocks reserved from storage (the hi/lo scheme), so
+ * creating a game takes an ID with one atomic increment and only every
+ * {@code blockSize}th game waits on storage. Several servers sharing a
+ * database each reserve their own blocks, so they never hand out the same ID.
+ * <p>
+ * IDs left in a block when the server stops are never used.
+ */
+public class GameIds {
+    private final Reserve reserve;
+    private final int blockSize;
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block block;
+
+    public interface Reserve {
+        /**
+         * Reserves the given number of consecutive IDs.
+         *
+         * @return the first of them
+         */
+        int reserve(int count) throws DataAccessException;
+    }
+
+    private record Block(AtomicInteger next, int end) {}
+
+    public GameIds(Reserve reserve, int blockSize) {
+        this.reserve = reserve;
+        this.blockSize = blockSize;
+    }
+
+    public int next() throws DataAccessException {
+        while (true) {
+            var current = block;
+            if (current != null) {
+                var id = current.next().getAndIncrement();
+                if (id < current.end()) {
+                    return id;
+                }
+            }
+
+            refillLock.lock();
+            try {
+                // Only the first thread to find the block used up reserves another
+                if (block == current) {
+                    var first = reserve.reserve(blockSize);
+                    block = new Block(new AtomicInteger(first), first + blockSize);
+                }
+            } finally {
+                refillLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forgets the current block, for when storage is cleared and starts
+     * counting again.
+     */
+    public void reset() {
+        refillLock.lock();
+        try {
+            block = null;
+        } finally {
+            refillLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package dataaccess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * A concurrent map from int keys, for indexes of games by ID. Keys are kept
+ * unboxed in open addressed tables with linear probing, so an entry is two
+ * array slots instead of a node and an Integer, and a lookup allocates
+ * nothing.
+ * <p>
+ * Keys are spread over segments that each have their own lock. Reads don't
+ * take it: they probe optimistically and only lock if a write got in the way.
+ * Values can't be null, which marks an empty slot.
+ */
+public class IntMap<V> {
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_BITS = Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    // Replaced as a whole when it grows, so a reader never sees keys and
+    // values of different sizes
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        Table table = new Table(INITIAL_CAPACITY);
+        volatile int size;
+
+        // Bounded by the capacity, since an optimistic read can see a table
+        // that is being changed
+        int find(Table table, int key, int hash) {
+            var mask = table.keys.length - 1;
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (table.values[i] == null) {
+                    return ~i;
+                }
+                if (table.keys[i] == key) {
+                    return i;
+                }
+            }
+            return ~0;
+        }
+
+        Object get(int key, int hash) {
+            var stamp = lock.tryOptimisticRead();
+            var table = this.table;
+            var slot = find(table, key, hash);
+            var value = slot >= 0 ? table.values[slot] : null;
+            if (lock.validate(stamp)) {
+                return value;
+            }
+
+            stamp = lock.readLock();
+            try {
+                table = this.table;
+                slot = find(table, key, hash);
+                return slot >= 0 ? table.values[slot] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Callers hold the write lock
+        void insert(int slot, int key, Object value) {
+            table.keys[slot] = key;
+            table.values[slot] = value;
+            size++;
+            if (size * 2 > table.keys.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            var old = table;
+            var grown = new Table(old.keys.length * 2);
+            for (var i = 0; i < old.keys.length; i++) {
+                if (old.values[i] != null) {
+                    var slot = ~find(grown, old.keys[i], hash(old.keys[i]));
+                    grown.keys[slot] = old.keys[i];
+                    grown.values[slot] = old.values[i];
+                }
+            }
+            table = grown;
+        }
+
+        // Shifts later entries back into the gap, so probes never have to
+        // step over deleted slots
+        void delete(int slot) {
+            var keys = table.keys;
+            var values = table.values;
+            var mask = keys.length - 1;
+            values[slot] = null;
+            size--;
+            for (var next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+                var home = hash(keys[next]) & mask;
+                var between = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+                if (!between) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    values[next] = null;
+                    slot = next;
+                }
+            }
+        }
+
+        void clear() {
+            table = new Table(INITIAL_CAPACITY);
+            size = 0;
+        }
+    }
+
+    public IntMap() {
+        for (var i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static int hash(int key) {
+        var h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segment(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        var hash = hash(key);
+        return (V) segment(hash).get(key, hash);
+    }
+
+    /**
+     * @return the value it replaced, or null
+     */
+    public V put(int key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @return the value already there, or null if the value was added
+     */
+    public V putIfAbsent(int key, V value) {
+        return put(key, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(int key, V value, boolean replace) {
+        var hash = hash(key);
+        var segment = segment(hash);
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = segment.find(segment.table, key, hash);
+            if (slot < 0) {
+                segment.insert(~slot, key, value);
+                return null;
+            }
+            var current = (V) segment.table.values[slot];
+            if (replace) {
+                segment.table.values[slot] = value;
+            }
+            return current;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Like ConcurrentHashMap's, the function runs under a lock, so it should
+     * be short and mustn't use the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key, IntFunction<? extends V> function) {
+        var current = get(key);
+        if (current != null) {
+            return current;
+        }
+
+        var hash = hash(key);
+        var segment = segment(hash);
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = segment.find(segment.table, key, hash);
+            if (slot >= 0) {
+                return (V) segment.table.values[slot];
+            }
+            var value = function.apply(key);
+            if (value != null) {
+                segment.insert(~slot, key, value);
+            }
+            return value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the value removed, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        var hash = hash(key);
+        var segment = segment(hash);
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = segment.find(segment.table, key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            var removed = (V) segment.table.values[slot];
+            segment.delete(slot);
+            return removed;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key only if it still maps to this exact value.
+     */
+    public boolean remove(int key, V value) {
+        var hash = hash(key);
+        var segment = segment(hash);
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = segment.find(segment.table, key, hash);
+            if (slot < 0 || segment.table.values[slot] != value) {
+                return false;
+            }
+            segment.delete(slot);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes every value the predicate matches. The predicate runs under the
+     * lock of the value's segment, so nothing can replace the value while it
+     * is being tested.
+     *
+     * @return how many were removed
+     */
+    @SuppressWarnings("unchecked")
+    public int removeIf(Predicate<? super V> predicate) {
+        var removed = 0;
+        for (var segment : segments) {
+            var stamp = segment.lock.writeLock();
+            try {
+                var values = segment.table.values;
+                var i = 0;
+                while (i < values.length) {
+                    // A delete can shift the next entry into this slot, so
+                    // look at it again
+                    if (values[i] != null && predicate.test((V) values[i])) {
+                        segment.delete(i);
+                        removed++;
+                    } else {
+                        i++;
+                    }
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Calls the consumer with each entry, one segment at a time. Changes to
+     * other segments meanwhile may or may not be seen.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        for (var segment : segments) {
+            var stamp = segment.lock.readLock();
+            try {
+                var table = segment.table;
+                for (var i = 0; i < table.keys.length; i++) {
+                    if (table.values[i] != null) {
+                        consumer.accept(table.keys[i], (V) table.values[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    public List<V> values() {
+        var values = new ArrayList<V>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    public int size() {
+        var size = 0;
+        for (var segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (var segment : segments) {
+            var stamp = segment.lock.writeLock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package dataaccess;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps everything in memory like MemoryDataAccess, and appends every change
+ * to a journal file that is replayed when the server starts. Writes are
+ * flushed to the operating system before they return, so they survive the
+ * process crashing but not the machine losing power.
+ * <p>
+ * Each line of the journal is an operation followed by its JSON. A line cut
+ * off by a crash is dropped when the journal is replayed.
+ * <p>
+ * So startup doesn't have to replay every change ever made, everything is
+ * periodically written to a binary {@link Snapshot}, and the journals it
+ * covers are deleted. Each snapshot starts a new journal, so startup loads
+ * the snapshot, decoding games in parallel, and replays only the journals
+ * written since. Games change outside the lock, so a snapshot can catch one
+ * partway through a move, but every change to a game is followed by a
+ * putGame that lands in a later journal and replaces it.
+ */
+public class JournalDataAccess implements DataAccess, AutoCloseable {
+    public static final long DEFAULT_SNAPSHOT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final MemoryDataAccess data;
+    private final Gson gson = new Gson();
+    // Held across the change and its journal line, so the journal has
+    // changes in the order they were made
+    private final ReentrantLock lock = new ReentrantLock();
+    // Keeps a scheduled snapshot and one on close from overlapping
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private BufferedWriter journal;
+    private long journalId;
+    private ScheduledExecutorService snapshots;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private interface Change {
+        void apply() throws DataAccessException;
+    }
+
+    private record RevokedToken(String token, long expiresAt) {}
+
+    /**
+     * @param directory where the snapshot and journals are kept, created if
+     *                  needed
+     */
+    public JournalDataAccess(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_SNAPSHOT_MILLIS, 0);
+    }
+
+    /**
+     * @param snapshotMillis how often to take a snapshot, or 0 to only take
+     *                       one when {@link #snapshot()} is called or the
+     *                       storage is closed
+     * @param idleMillis     how often to move idle games off the heap, as
+     *                       for {@link MemoryDataAccess#MemoryDataAccess(long)}
+     */
+    public JournalDataAccess(Path directory, long snapshotMillis, long idleMillis) throws DataAccessException {
+        this.directory = directory;
+        this.data = new MemoryDataAccess(idleMillis);
+        try {
+            Files.createDirectories(directory);
+            var snapshot = directory.resolve(SNAPSHOT);
+            var firstJournal = Files.exists(snapshot) ? Snapshot.read(snapshot, data) : 1;
+
+            var next = firstJournal;
+            for (var id : journals()) {
+                if (id < firstJournal) {
+                    // Left behind by a crash after the snapshot was written
+                    Files.delete(journal(id));
+                } else {
+                    replay(journal(id));
+                    next = Math.max(next, id + 1);
+                }
+            }
+            journalId = next;
+            journal = openJournal(journalId);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to open journal: " + e.getMessage());
+        }
+
+        if (snapshotMillis > 0) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshots.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (DataAccessException e) {
+                    System.err.println("Journal snapshot failed: " + e.getMessage());
+                }
+            }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<Long> journals() throws IOException {
+        try (var list = Files.list(directory)) {
+            return list.map(path -> path.getFileName().toString())
+                .filter(name -> name.matches(PREFIX + "\\d+" + SUFFIX))
+                .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path journal(long id) {
+        return directory.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX));
+    }
+
+    private BufferedWriter openJournal(long id) throws IOException {
+        return Files.newBufferedWriter(journal(id), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+
+    private void replay(Path file) throws IOException, DataAccessException {
+        var text = Files.readString(file, StandardCharsets.UTF_8);
+        var complete = text.lastIndexOf('\n') + 1;
+        if (complete < text.length()) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(text.substring(0, complete).getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+
+        for (var line : text.substring(0, complete).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            var split = line.indexOf(' ');
+            var op = split < 0 ? line : line.substring(0, split);
+            var json = split < 0 ? "" : line.substring(split + 1);
+            try {
+                switch (op) {
+                    case "user" -> data.insertUser(gson.fromJson(json, UserData.class));
+                    case "users" -> data.insertUsers(List.of(gson.fromJson(json, UserData[].class)));
+                    case "game" -> data.putGame(gson.fromJson(json, GameData.class));
+                    case "games" -> data.putGames(List.of(gson.fromJson(json, GameData[].class)));
+                    case "auth" -> data.insertAuth(gson.fromJson(json, AuthData.class));
+                    case "deleteAuth" -> data.deleteAuth(gson.fromJson(json, String.class));
+                    case "deleteAuths" -> {
+                        for (var token : gson.fromJson(json, String[].class)) {
+                            data.deleteAuth(token);
+                        }
+                    }
+                    case "revoke" -> {
+                        var revoked = gson.fromJson(json, RevokedToken.class);
+                        data.insertRevokedToken(revoked.token(), revoked.expiresAt());
+                    }
+                    case "deleteRevoked" -> {
+                        for (var token : gson.fromJson(json, String[].class)) {
+                            data.deleteRevokedToken(token);
+                        }
+                    }
+                    case "clearUsers" -> data.clearUsers();
+                    case "clearGames" -> data.clearGames();
+                    case "clearAuth" -> data.clearAuth();
+                    default -> throw new DataAccessException("Unknown journal entry " + op);
+                }
+            } catch (JsonParseException e) {
+                throw new DataAccessException("Corrupt journal entry: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(String op, Object value, Change change) throws DataAccessException {
+        lock.lock();
+        try {
+            change.apply();
+            journal.write(op);
+            if (value != null) {
+                journal.write(' ');
+                journal.write(gson.toJson(value));
+            }
+            journal.write('\n');
+            journal.flush();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write journal: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        write("user", user, () -> data.insertUser(user));
+    }
+
+    /**
+     * Journals the users as one line, so they're replayed all or nothing.
+     */
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        write("users", users, () -> data.insertUsers(users));
+    }
+
+    @Override
+    public UserData getUser(String username) {
+        return data.getUser(username);
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        write("clearUsers", null, data::clearUsers);
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        // The lock is reentrant, so the game is journaled before any other change
+        lock.lock();
+        try {
+            var id = data.createGame(name, game);
+            write("game", data.getGame(id), () -> {});
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        write("game", game, () -> data.putGame(game));
+    }
+
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        write("games", games, () -> data.putGames(games));
+    }
+
+    @Override
+    public GameData getGame(int gameId) {
+        return data.getGame(gameId);
+    }
+
+    @Override
+    public List<GameData> getGames() {
+        return data.getGames();
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() {
+        return data.getGameSummaries();
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        write("clearGames", null, data::clearGames);
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        write("auth", auth, () -> data.insertAuth(auth));
+    }
+
+    @Override
+    public AuthData getAuth(String token) {
+        return data.getAuth(token);
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        write("deleteAuth", token, () -> data.deleteAuth(token));
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        write("clearAuth", null, data::clearAuth);
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        lock.lock();
+        try {
+            // Journaled as the tokens deleted rather than the time, so replaying
+            // doesn't depend on the clock
+            var expired = data.expiredAuth(now, limit).stream().map(AuthData::authToken).toList();
+            if (!expired.isEmpty()) {
+                write("deleteAuths", expired, () -> expired.forEach(data::deleteAuth));
+            }
+            return expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        write("revoke", new RevokedToken(token, expiresAt), () -> data.insertRevokedToken(token, expiresAt));
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() {
+        return data.getRevokedTokens();
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        lock.lock();
+        try {
+            // Journaled as the tokens deleted, like deleteExpiredAuth
+            var expired = data.expiredRevokedTokens(now);
+            if (!expired.isEmpty()) {
+                write("deleteRevoked", expired, () -> expired.forEach(data::deleteRevokedToken));
+            }
+            return expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes everything to a new snapshot and deletes the journals it covers.
+     * Changes only wait while the current state is copied and a new journal
+     * is started, not while the snapshot is written.
+     */
+    public void snapshot() throws DataAccessException {
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write snapshot: " + e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            List<UserData> users;
+            List<AuthData> auth;
+            List<GameData> games;
+            Map<String, Long> revoked;
+            long firstJournal;
+            lock.lock();
+            try {
+                users = data.users();
+                auth = data.sessions();
+                games = data.getGames();
+                revoked = data.getRevokedTokens();
+                firstJournal = journalId + 1;
+                var next = openJournal(firstJournal);
+                journal.close();
+                journal = next;
+                journalId = firstJournal;
+            } finally {
+                lock.unlock();
+            }
+
+            Snapshot.write(directory.resolve(SNAPSHOT), firstJournal, users, auth, games, revoked);
+            for (var id : journals()) {
+                if (id < firstJournal) {
+                    Files.delete(journal(id));
+                }
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a last snapshot, so the next startup has no journal to replay.
+     * Closing again does nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+        }
+        data.close();
+        try {
+            writeSnapshot();
+        } finally {
+            lock.lock();
+            try {
+                journal.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,820 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.GameCodec;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps users, sessions and games in append-only segment files, with an index
+ * in memory of where the latest record for each one is. Segments are memory
+ * mapped, so a lookup is a map lookup and decoding a few bytes that are
+ * usually already in the page cache, and a write is a copy into the mapped
+ * segment.
+ * <p>
+ * Unlike JournalDataAccess ("file" storage), which keeps everything on the
+ * heap and journals changes as JSON, only the index is kept on the heap here,
+ * so this suits more games than fit in memory. The journal is simpler and
+ * reads nothing from disk after startup; this trades that for a heap that
+ * only grows with the number of keys.
+ * <p>
+ * A record is its length, a CRC32 of the rest, a type and its fields. Segments
+ * are created at full size and filled with zeros, so on startup each is read
+ * up to the first record that is empty or fails its checksum, which drops a
+ * record cut off by a crash. Writes survive the process crashing as soon as
+ * they return. A background thread forces new records to disk once a second
+ * by default, so the machine losing power drops at most the last second of
+ * writes. With a sync interval of 0, each write is forced before it returns
+ * instead.
+ * <p>
+ * Changes leave the records they replace behind. Once more than half of what
+ * the full segments hold is dead, a background thread copies their live
+ * records to the end of the log and deletes them. Every full segment is
+ * compacted at once, so the deletes and clears in them can be dropped, since
+ * no older records are left for them to apply to.
+ */
+public class LogDataAccess implements DataAccess, AutoCloseable {
+    private static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+    private static final long DEFAULT_COMPACT_MILLIS = 10_000;
+    private static final long DEFAULT_SYNC_MILLIS = 1_000;
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+    private static final int GAME_ID_BLOCK = 64;
+    // Length and checksum
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private static final byte USER = 1;
+    private static final byte AUTH = 2;
+    private static final byte GAME = 3;
+    private static final byte DELETE_AUTH = 4;
+    private static final byte CLEAR_USERS = 5;
+    private static final byte CLEAR_GAMES = 6;
+    private static final byte CLEAR_AUTH = 7;
+    private static final byte REVOKE = 8;
+    private static final byte DELETE_REVOKED = 9;
+
+    private final Path directory;
+    private final int segmentBytes;
+    // Held for every write, so records are appended in the order the index
+    // changes in
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Location> users = new ConcurrentHashMap<>();
+    private final Map<String, Location> auth = new ConcurrentHashMap<>();
+    // Sessions that expire, soonest first. Entries for sessions that were
+    // deleted are only dropped when they come up.
+    private final ConcurrentSkipListSet<Expiry> expiring = new ConcurrentSkipListSet<>(
+        Comparator.comparingLong(Expiry::expiresAt).thenComparing(Expiry::token));
+    private final Map<Integer, Location> games = new ConcurrentHashMap<>();
+    private final Map<String, Location> revoked = new ConcurrentHashMap<>();
+    private int lastGameId = 0;
+    private int reservedGameId = 0;
+    private final GameIds gameIds = new GameIds(this::reserveGameIds, GAME_ID_BLOCK);
+    private ScheduledExecutorService compactor;
+    // Null when each write is forced as it's made
+    private ScheduledExecutorService syncer;
+
+    private record Expiry(long expiresAt, String token) {}
+
+    private static class Segment {
+        final long id;
+        final Path path;
+        final MappedByteBuffer map;
+        // Bytes of records that are still the latest for their key
+        final AtomicLong live = new AtomicLong();
+        // Written under the lock, read by the syncer without it
+        volatile int end = 0;
+        // How much the syncer has forced to disk, only used by it
+        int forced = 0;
+
+        Segment(long id, Path path, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.map = map;
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {}
+
+    public LogDataAccess(Path directory) throws DataAccessException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACT_MILLIS);
+    }
+
+    /**
+     * @param segmentBytes  how big each segment file is
+     * @param compactMillis how often to check whether to compact, or 0 to only
+     *                      compact when {@link #compact()} is called
+     */
+    public LogDataAccess(Path directory, int segmentBytes, long compactMillis) throws DataAccessException {
+        this(directory, segmentBytes, compactMillis, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * @param syncMillis how often to force new records to disk, or 0 to
+     *                   force each write before it returns
+     */
+    public LogDataAccess(Path directory, int segmentBytes, long compactMillis, long syncMillis)
+        throws DataAccessException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            recover();
+            if (segments.isEmpty()) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to open log: " + e.getMessage());
+        }
+
+        if (compactMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "log-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                } catch (DataAccessException e) {
+                    System.err.println("Log compaction failed: " + e.getMessage());
+                }
+            }, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+        }
+        if (syncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "log-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (var list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().matches(PREFIX + "\\d+" + SUFFIX))
+                .sorted(Comparator.comparingLong(LogDataAccess::segmentId))
+                .toList();
+        }
+
+        for (var path : files) {
+            var segment = open(segmentId(path), path, 0);
+            segments.add(segment);
+            var map = segment.map;
+            var at = 0;
+            while (at + HEADER_BYTES < map.capacity()) {
+                var length = map.getInt(at);
+                if (length <= 0 || at + HEADER_BYTES + length > map.capacity() || !checksumMatches(map, at)) {
+                    break;
+                }
+                var location = new Location(segment, at, HEADER_BYTES + length);
+                apply(map.get(at + HEADER_BYTES), location);
+                at += location.length();
+            }
+            segment.end = at;
+
+            // Zero whatever is left of a record cut off partway through, so it
+            // can't be read back after newer records are written over its start
+            if (at + Integer.BYTES <= map.capacity() && map.getInt(at) != 0) {
+                for (var i = at; i < map.capacity(); i++) {
+                    map.put(i, (byte) 0);
+                }
+            }
+        }
+    }
+
+    private void apply(byte type, Location location) {
+        var fields = fields(location);
+        switch (type) {
+            case USER -> index(users, readString(fields), location);
+            case AUTH -> {
+                var session = readAuth(location);
+                index(auth, session.authToken(), location);
+                if (session.expiresAt() != 0) {
+                    expiring.add(new Expiry(session.expiresAt(), session.authToken()));
+                }
+            }
+            case GAME -> {
+                var id = fields.getInt();
+                index(games, id, location);
+                lastGameId = Math.max(lastGameId, id);
+            }
+            case DELETE_AUTH -> remove(auth, readString(fields));
+            case CLEAR_USERS -> clear(users);
+            case CLEAR_GAMES -> {
+                clear(games);
+                lastGameId = 0;
+            }
+            case CLEAR_AUTH -> {
+                clear(auth);
+                expiring.clear();
+                clear(revoked);
+            }
+            case REVOKE -> index(revoked, readString(fields), location);
+            case DELETE_REVOKED -> remove(revoked, readString(fields));
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    private static long segmentId(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static Segment open(long id, Path path, int size) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            var map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            return new Segment(id, path, map);
+        }
+    }
+
+    private Segment roll() throws IOException {
+        var id = segments.isEmpty() ? 1 : segments.getLast().id + 1;
+        var segment = open(id, directory.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX)), segmentBytes);
+        segments.add(segment);
+        return segment;
+    }
+
+    private static boolean checksumMatches(ByteBuffer map, int offset) {
+        var length = map.getInt(offset);
+        var crc = new CRC32();
+        crc.update(map.slice(offset + HEADER_BYTES, length));
+        return (int) crc.getValue() == map.getInt(offset + Integer.BYTES);
+    }
+
+    /**
+     * @return the fields of a record, after its type
+     */
+    private static ByteBuffer fields(Location location) {
+        var start = location.offset() + HEADER_BYTES + 1;
+        return location.segment().map.slice(start, location.length() - HEADER_BYTES - 1);
+    }
+
+    private static String readString(ByteBuffer in) {
+        var length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readLong(ByteBuffer in) {
+        in.getInt();
+        return in.getLong();
+    }
+
+    private static class Fields {
+        private final List<byte[]> strings = new ArrayList<>();
+        private int size = 0;
+
+        Fields string(String value) {
+            var bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+            strings.add(bytes);
+            size += Integer.BYTES + (bytes != null ? bytes.length : 0);
+            return this;
+        }
+
+        Fields number(long value) {
+            strings.add(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+            size += Integer.BYTES + Long.BYTES;
+            return this;
+        }
+
+        void write(ByteBuffer out) {
+            for (var bytes : strings) {
+                if (bytes == null) {
+                    out.putInt(-1);
+                } else {
+                    out.putInt(bytes.length);
+                    out.put(bytes);
+                }
+            }
+        }
+    }
+
+    private Location append(byte type, int gameId, Fields fields, ChessGame game) throws DataAccessException {
+        var size = 1 + fields.size + (type == GAME ? Integer.BYTES + GameCodec.BYTES : 0);
+        var record = ByteBuffer.allocate(HEADER_BYTES + size);
+        record.position(HEADER_BYTES).put(type);
+        if (type == GAME) {
+            record.putInt(gameId);
+        }
+        fields.write(record);
+        if (type == GAME) {
+            GameCodec.write(game, record);
+        }
+
+        var crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, size);
+        record.putInt(0, size).putInt(Integer.BYTES, (int) crc.getValue());
+        return appendRecord(record.array());
+    }
+
+    private Location appendRecord(byte[] record) throws DataAccessException {
+        try {
+            var segment = segments.getLast();
+            if (segment.end + record.length > segment.map.capacity()) {
+                if (record.length > segmentBytes) {
+                    throw new DataAccessException("Record is bigger than a segment");
+                }
+                segment = roll();
+            }
+            segment.map.put(segment.end, record);
+            var location = new Location(segment, segment.end, record.length);
+            segment.end += record.length;
+            if (syncer == null) {
+                segment.map.force(location.offset(), record.length);
+            }
+            return location;
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to add a log segment: " + e.getMessage());
+        }
+    }
+
+    private <K> void index(Map<K, Location> index, K key, Location location) {
+        location.segment().live.addAndGet(location.length());
+        var replaced = index.put(key, location);
+        if (replaced != null) {
+            replaced.segment().live.addAndGet(-replaced.length());
+        }
+    }
+
+    private <K> void remove(Map<K, Location> index, K key) {
+        var removed = index.remove(key);
+        if (removed != null) {
+            removed.segment().live.addAndGet(-removed.length());
+        }
+    }
+
+    private <K> void clear(Map<K, Location> index) {
+        for (var key : index.keySet()) {
+            remove(index, key);
+        }
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        lock.lock();
+        try {
+            if (users.containsKey(user.username())) {
+                throw new DataAccessException("Duplicate username");
+            }
+            var fields = new Fields().string(user.username()).string(user.password()).string(user.email());
+            index(users, user.username(), append(USER, 0, fields, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        lock.lock();
+        try {
+            // Checked first, so a duplicate leaves none of them inserted
+            var usernames = new HashSet<String>();
+            for (var user : users) {
+                if (this.users.containsKey(user.username()) || !usernames.add(user.username())) {
+                    throw new DataAccessException("Duplicate username");
+                }
+            }
+            for (var user : users) {
+                var fields = new Fields().string(user.username()).string(user.password()).string(user.email());
+                index(this.users, user.username(), append(USER, 0, fields, null));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public UserData getUser(String username) {
+        var location = users.get(username);
+        if (location == null) {
+            return null;
+        }
+        var fields = fields(location);
+        return new UserData(readString(fields), readString(fields), readString(fields));
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        lock.lock();
+        try {
+            append(CLEAR_USERS, 0, new Fields(), null);
+            clear(users);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        var id = gameIds.next();
+        putGame(new GameData(id, null, null, name, game));
+        return id;
+    }
+
+    private int reserveGameIds(int count) {
+        lock.lock();
+        try {
+            var first = Math.max(reservedGameId, lastGameId) + 1;
+            reservedGameId = first + count - 1;
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        var fields = new Fields().string(game.whiteUsername()).string(game.blackUsername()).string(game.gameName());
+        lock.lock();
+        try {
+            index(games, game.gameID(), append(GAME, game.gameID(), fields, game.game()));
+            lastGameId = Math.max(lastGameId, game.gameID());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        lock.lock();
+        try {
+            for (var game : games) {
+                var fields = new Fields().string(game.whiteUsername()).string(game.blackUsername())
+                    .string(game.gameName());
+                index(this.games, game.gameID(), append(GAME, game.gameID(), fields, game.game()));
+                lastGameId = Math.max(lastGameId, game.gameID());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameId) {
+        var location = games.get(gameId);
+        return location != null ? readGame(location) : null;
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() {
+        var result = new ArrayList<GameSummary>(games.size());
+        for (var location : games.values()) {
+            // The board follows the names, and only its last byte is read
+            var fields = fields(location);
+            var id = fields.getInt();
+            var white = readString(fields);
+            var black = readString(fields);
+            var name = readString(fields);
+            var board = fields.position();
+            result.add(new GameSummary(id, white, black, name, GameCodec.status(fields, board),
+                GameCodec.turn(fields, board)));
+        }
+        result.sort(Comparator.comparingInt(GameSummary::gameID));
+        return result;
+    }
+
+    private static GameData readGame(Location location) {
+        var fields = fields(location);
+        var id = fields.getInt();
+        return new GameData(id, readString(fields), readString(fields), readString(fields), GameCodec.read(fields));
+    }
+
+    @Override
+    public List<GameData> getGames() {
+        var result = new ArrayList<GameData>(games.size());
+        for (var location : games.values()) {
+            result.add(readGame(location));
+        }
+        result.sort(Comparator.comparingInt(GameData::gameID));
+        return result;
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        // Not under the lock, which is taken inside GameIds' own lock
+        gameIds.reset();
+        lock.lock();
+        try {
+            append(CLEAR_GAMES, 0, new Fields(), null);
+            clear(games);
+            lastGameId = 0;
+            reservedGameId = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        lock.lock();
+        try {
+            if (this.auth.containsKey(auth.authToken())) {
+                throw new DataAccessException("Duplicate authToken");
+            }
+            var fields = new Fields().string(auth.authToken()).string(auth.username())
+                .number(auth.issuedAt()).number(auth.expiresAt());
+            index(this.auth, auth.authToken(), append(AUTH, 0, fields, null));
+            if (auth.expiresAt() != 0) {
+                expiring.add(new Expiry(auth.expiresAt(), auth.authToken()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public AuthData getAuth(String token) {
+        var location = auth.get(token);
+        if (location == null) {
+            return null;
+        }
+        return readAuth(location);
+    }
+
+    private static AuthData readAuth(Location location) {
+        var fields = fields(location);
+        var token = readString(fields);
+        var username = readString(fields);
+        // Sessions written before they had timestamps end after the username
+        if (!fields.hasRemaining()) {
+            return new AuthData(token, username);
+        }
+        return new AuthData(token, username, readLong(fields), readLong(fields));
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        lock.lock();
+        try {
+            if (auth.containsKey(token)) {
+                append(DELETE_AUTH, 0, new Fields().string(token), null);
+                remove(auth, token);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        lock.lock();
+        try {
+            append(CLEAR_AUTH, 0, new Fields(), null);
+            clear(auth);
+            expiring.clear();
+            clear(revoked);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        lock.lock();
+        try {
+            var deleted = 0;
+            for (var expiry : expiring) {
+                if (deleted == limit || expiry.expiresAt() > now) {
+                    break;
+                }
+                expiring.remove(expiry);
+                // Skips sessions logged out since, and tokens reused after that
+                var location = auth.get(expiry.token());
+                if (location != null && readAuth(location).expiresAt() == expiry.expiresAt()) {
+                    append(DELETE_AUTH, 0, new Fields().string(expiry.token()), null);
+                    remove(auth, expiry.token());
+                    deleted++;
+                }
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        lock.lock();
+        try {
+            index(revoked, token, append(REVOKE, 0, new Fields().string(token).number(expiresAt), null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() {
+        var all = new HashMap<String, Long>();
+        revoked.forEach((token, location) -> all.put(token, revokedExpiry(location)));
+        return all;
+    }
+
+    private static long revokedExpiry(Location location) {
+        var fields = fields(location);
+        readString(fields);
+        return readLong(fields);
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        lock.lock();
+        try {
+            var deleted = 0;
+            for (var entry : revoked.entrySet()) {
+                if (revokedExpiry(entry.getValue()) <= now) {
+                    append(DELETE_REVOKED, 0, new Fields().string(entry.getKey()), null);
+                    remove(revoked, entry.getKey());
+                    deleted++;
+                }
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the live records in every full segment to the end of the log and
+     * deletes those segments, if more than half of what they hold is dead.
+     *
+     * @return whether anything was compacted
+     */
+    public boolean compact() throws DataAccessException {
+        List<Segment> full;
+        lock.lock();
+        try {
+            full = List.copyOf(segments.subList(0, segments.size() - 1));
+        } finally {
+            lock.unlock();
+        }
+
+        var total = 0L;
+        var live = 0L;
+        for (var segment : full) {
+            total += segment.end;
+            live += segment.live.get();
+        }
+        if (full.isEmpty() || live * 2 > total) {
+            return false;
+        }
+
+        // Full segments don't change, so they can be read without the lock
+        for (var segment : full) {
+            for (var at = 0; at < segment.end; ) {
+                var location = new Location(segment, at, HEADER_BYTES + segment.map.getInt(at));
+                var fields = fields(location);
+                switch (segment.map.get(at + HEADER_BYTES)) {
+                    case USER -> moveIfLive(users, readString(fields), location);
+                    case AUTH -> moveIfLive(auth, readString(fields), location);
+                    case GAME -> moveIfLive(games, fields.getInt(), location);
+                    case REVOKE -> moveIfLive(revoked, readString(fields), location);
+                    default -> {}
+                }
+                at += location.length();
+            }
+        }
+
+        List<Segment> copies;
+        lock.lock();
+        try {
+            segments.removeAll(full);
+            copies = List.copyOf(segments);
+        } finally {
+            lock.unlock();
+        }
+        // The copies have to be on disk before the originals are deleted, and
+        // they can be spread over any of the segments left
+        for (var segment : copies) {
+            segment.map.force();
+        }
+        // Oldest first, so a crash partway through never leaves a delete or
+        // clear without the older records it applied to
+        try {
+            for (var segment : full) {
+                Files.deleteIfExists(segment.path);
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to delete compacted segment: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private <K> void moveIfLive(Map<K, Location> index, K key, Location location) throws DataAccessException {
+        lock.lock();
+        try {
+            if (!location.equals(index.get(key))) {
+                return;
+            }
+            var record = new byte[location.length()];
+            location.segment().map.get(location.offset(), record);
+            index(index, key, appendRecord(record));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many segment files the log is made of
+     */
+    public int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Nothing here waits on anything but the page cache, so calls run on the
+     * caller's thread and return completed futures.
+     */
+    @Override
+    public AsyncDataAccess async() {
+        return new ExecutorDataAccess(this, Runnable::run);
+    }
+
+    /**
+     * Forces the records written since the last sync to disk.
+     */
+    private void sync() {
+        List<Segment> current;
+        lock.lock();
+        try {
+            current = List.copyOf(segments);
+        } finally {
+            lock.unlock();
+        }
+        for (var segment : current) {
+            var end = segment.end;
+            if (end > segment.forced) {
+                segment.map.force(segment.forced, end - segment.forced);
+                segment.forced = end;
+            }
+        }
+    }
+
+    /**
+     * Stops compacting, waiting for a compaction that is running to finish,
+     * and flushes every segment to disk.
+     */
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                if (!compactor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println("Log compaction didn't finish before closing");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            for (var segment : segments) {
+                segment.map.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -3,17 +3,80 @@ package dataaccess;
 import chess.ChessGame;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class MemoryDataAccess implements DataAccess {
-    private final Map<String, UserData> users = new HashMap<>();
-    private final Map<Integer, GameData> games = new HashMap<>();
-    private final Map<String, AuthData> auth = new HashMap<>();
+/**
+ * Keeps everything in maps on the heap. Optionally, games that haven't been
+ * read or written for a while are moved to {@link OffHeapGames}, so the heap
+ * only grows with the games being played, and are copied back onto the heap
+ * the next time they're read.
+ */
+public class MemoryDataAccess implements DataAccess, AutoCloseable {
+    private static final int GAME_ID_BLOCK = 64;
+    private static final int STRIPES = 64;
+
+    private final Map<String, UserData> users = new ConcurrentHashMap<>();
+    private final IntMap<GameData> games = new IntMap<>();
+    private final Map<String, AuthData> auth = new ConcurrentHashMap<>();
+    // Revoked signed token -> when it expires
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    // Sessions that expire, soonest first
+    private final ConcurrentSkipListSet<AuthData> expiring = new ConcurrentSkipListSet<>(
+        Comparator.comparingLong(AuthData::expiresAt).thenComparing(AuthData::authToken));
+    private final AtomicInteger lastGameId = new AtomicInteger();
+    private final GameIds gameIds = new GameIds(this::reserveGameIds, GAME_ID_BLOCK);
+    private final ReentrantLock reserveLock = new ReentrantLock();
+    private int reservedGameId = 0;
+    // Null when games are never moved off the heap
+    private final OffHeapGames idle;
+    // Games used since the last time idle games were moved
+    private final IntMap<Boolean> used = new IntMap<>();
+    // Held by putGame, and by moveIdleGames from copying a game off the heap
+    // until it's removed, so a put can't land in between and be lost
+    private final ReentrantLock[] moveLocks = new ReentrantLock[STRIPES];
+    // Null when games are never moved off the heap
+    private final ScheduledExecutorService mover;
+
+    public MemoryDataAccess() {
+        this(0);
+    }
+
+    /**
+     * @param idleMillis how often to move games that haven't been used since
+     *                   the last time off the heap, or 0 to keep every game
+     *                   on the heap
+     */
+    public MemoryDataAccess(long idleMillis) {
+        for (var i = 0; i < STRIPES; i++) {
+            moveLocks[i] = new ReentrantLock();
+        }
+        if (idleMillis <= 0) {
+            idle = null;
+            mover = null;
+            return;
+        }
+
+        idle = new OffHeapGames();
+        mover = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "idle-games");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mover.scheduleWithFixedDelay(this::moveIdleGames, idleMillis, idleMillis, TimeUnit.MILLISECONDS);
+    }
 
     @Override
     public void insertUser(UserData user) throws DataAccessException {
@@ -23,6 +86,21 @@ public class MemoryDataAccess implements DataAccess {
         }
     }
 
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        var inserted = new ArrayList<UserData>(users.size());
+        for (var user : users) {
+            if (this.users.putIfAbsent(user.username(), user) != null) {
+                // None of them are kept, as when MySQL rolls back
+                for (var added : inserted) {
+                    this.users.remove(added.username(), added);
+                }
+                throw new DataAccessException("Duplicate username");
+            }
+            inserted.add(user);
+        }
+    }
+
     @Override
     public UserData getUser(String username) {
         return this.users.get(username);
@@ -34,32 +112,181 @@ public class MemoryDataAccess implements DataAccess {
     }
 
     @Override
-    public int createGame(String name, ChessGame game) {
-        var id = this.games.size() + 1;
-        var gameData = new GameData(id, null, null, name, game);
-        this.games.put(id, gameData);
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        var id = this.gameIds.next();
+        putGame(new GameData(id, null, null, name, game));
 
         return id;
     }
 
+    // Blocks start after every game put so far, so games loaded from a
+    // journal or snapshot keep their IDs
+    private int reserveGameIds(int count) {
+        this.reserveLock.lock();
+        try {
+            var first = Math.max(this.reservedGameId, this.lastGameId.get()) + 1;
+            this.reservedGameId = first + count - 1;
+            return first;
+        } finally {
+            this.reserveLock.unlock();
+        }
+    }
+
     @Override
     public void putGame(GameData game) {
-        this.games.put(game.gameID(), game);
+        var lock = moveLock(game.gameID());
+        lock.lock();
+        try {
+            this.games.put(game.gameID(), game);
+            markUsed(game.gameID());
+        } finally {
+            lock.unlock();
+        }
+        this.lastGameId.accumulateAndGet(game.gameID(), Math::max);
+    }
+
+    @Override
+    public void putGames(List<GameData> games) {
+        var last = 0;
+        for (var game : games) {
+            var lock = moveLock(game.gameID());
+            lock.lock();
+            try {
+                this.games.put(game.gameID(), game);
+                markUsed(game.gameID());
+            } finally {
+                lock.unlock();
+            }
+            last = Math.max(last, game.gameID());
+        }
+        // Once for the batch, rather than contending for it once per game
+        this.lastGameId.accumulateAndGet(last, Math::max);
+    }
+
+    private void markUsed(int gameId) {
+        if (this.idle != null && this.used.get(gameId) == null) {
+            this.used.put(gameId, Boolean.TRUE);
+        }
     }
 
     @Override
     public GameData getGame(int gameId) {
-        return this.games.get(gameId);
+        var game = this.games.get(gameId);
+        if (this.idle == null) {
+            return game;
+        }
+
+        if (game == null) {
+            var stored = this.idle.get(gameId);
+            if (stored == null) {
+                return null;
+            }
+            // Another thread may have brought it back or replaced it first
+            var current = this.games.putIfAbsent(gameId, stored);
+            game = current != null ? current : stored;
+        }
+        markUsed(gameId);
+        return game;
     }
 
     @Override
     public List<GameData> getGames() {
-        return new ArrayList<>(this.games.values());
+        if (this.idle == null) {
+            var all = this.games.values();
+            all.sort(Comparator.comparingInt(GameData::gameID));
+            return all;
+        }
+
+        // Listing doesn't count as using a game, so idle ones are copied
+        // without being brought back onto the heap
+        var all = new ArrayList<GameData>();
+        var last = this.lastGameId.get();
+        for (var id = 1; id <= last; id++) {
+            var game = this.games.get(id);
+            if (game == null) {
+                game = this.idle.get(id);
+            }
+            if (game != null) {
+                all.add(game);
+            }
+        }
+        return all;
     }
 
     @Override
-    public void clearGames() {
+    public List<GameSummary> getGameSummaries() {
+        if (this.idle == null) {
+            return getGames().stream().map(GameSummary::of).toList();
+        }
+
+        // Like getGames, but idle games' boards aren't decoded either
+        var all = new ArrayList<GameSummary>();
+        var last = this.lastGameId.get();
+        for (var id = 1; id <= last; id++) {
+            var game = this.games.get(id);
+            var summary = game != null ? GameSummary.of(game) : this.idle.summary(id);
+            if (summary != null) {
+                all.add(summary);
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public synchronized void clearGames() {
         this.games.clear();
+        this.lastGameId.set(0);
+        // Not under reserveLock, which is taken inside GameIds' own lock
+        this.gameIds.reset();
+        this.reserveLock.lock();
+        try {
+            this.reservedGameId = 0;
+        } finally {
+            this.reserveLock.unlock();
+        }
+        if (this.idle != null) {
+            this.idle.clear();
+        }
+    }
+
+    /**
+     * Moves the games that haven't been used since the last call off the
+     * heap. Games are changed in place before they're put, so a game may be
+     * copied partway through a change; the putGame that follows the change
+     * waits until the game is gone from the heap and then puts it back,
+     * which wins over the stored copy.
+     *
+     * @return how many games were moved
+     */
+    synchronized int moveIdleGames() {
+        var moved = 0;
+        for (var game : this.games.values()) {
+            var lock = moveLock(game.gameID());
+            lock.lock();
+            try {
+                if (this.used.remove(game.gameID()) == null && this.idle.put(game)
+                    && this.games.remove(game.gameID(), game)) {
+                    moved++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return moved;
+    }
+
+    private ReentrantLock moveLock(int gameId) {
+        return moveLocks[Math.floorMod(gameId, STRIPES)];
+    }
+
+    /**
+     * Stops moving idle games off the heap.
+     */
+    @Override
+    public void close() {
+        if (mover != null) {
+            mover.shutdownNow();
+        }
     }
 
     @Override
@@ -68,6 +295,9 @@ public class MemoryDataAccess implements DataAccess {
         if (current != null) {
             throw new DataAccessException("Duplicate authToken");
         }
+        if (auth.expiresAt() != 0) {
+            expiring.add(auth);
+        }
     }
 
     @Override
@@ -77,11 +307,92 @@ public class MemoryDataAccess implements DataAccess {
 
     @Override
     public void deleteAuth(String token) {
-        this.auth.remove(token);
+        var removed = this.auth.remove(token);
+        if (removed != null) {
+            expiring.remove(removed);
+        }
     }
 
     @Override
     public void clearAuth() {
         this.auth.clear();
+        expiring.clear();
+        this.revoked.clear();
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) {
+        var deleted = 0;
+        for (var session : expiredAuth(now, limit)) {
+            expiring.remove(session);
+            // It may have been logged out, and the token reused, meanwhile
+            if (this.auth.remove(session.authToken(), session)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return up to limit sessions that expired at or before now, soonest
+     * expiring first
+     */
+    List<AuthData> expiredAuth(long now, int limit) {
+        var expired = new ArrayList<AuthData>();
+        for (var session : expiring) {
+            if (expired.size() == limit || !session.expired(now)) {
+                break;
+            }
+            expired.add(session);
+        }
+        return expired;
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) {
+        this.revoked.put(token, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() {
+        return Map.copyOf(this.revoked);
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) {
+        var expired = expiredRevokedTokens(now);
+        expired.forEach(this::deleteRevokedToken);
+        return expired.size();
+    }
+
+    void deleteRevokedToken(String token) {
+        this.revoked.remove(token);
+    }
+
+    List<String> expiredRevokedTokens(long now) {
+        var expired = new ArrayList<String>();
+        this.revoked.forEach((token, expiresAt) -> {
+            if (expiresAt <= now) {
+                expired.add(token);
+            }
+        });
+        return expired;
+    }
+
+    List<UserData> users() {
+        return new ArrayList<>(this.users.values());
+    }
+
+    List<AuthData> sessions() {
+        return new ArrayList<>(this.auth.values());
+    }
+
+    /**
+     * Nothing here blocks, so calls run on the caller's thread and return
+     * completed futures.
+     */
+    @Override
+    public AsyncDataAccess async() {
+        return new ExecutorDataAccess(this, Runnable::run);
     }
 }
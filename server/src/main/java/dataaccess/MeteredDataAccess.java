@@ -0,0 +1,202 @@
+package dataaccess;
+
+import chess.ChessGame;
+import metrics.Counter;
+import metrics.DatabaseEvent;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how long each call to another DataAccess takes, and how many fail.
+ * Each call is also a {@link DatabaseEvent} for Flight Recorder.
+ */
+public class MeteredDataAccess implements DataAccess {
+    private static final List<String> CALLS = List.of(
+        "insertUser", "insertUsers", "getUser", "clearUsers", "createGame", "putGame", "putGames", "getGame",
+        "getGamesByIds", "getGames", "getGameSummaries", "clearGames",
+        "insertAuth", "getAuth", "deleteAuth", "clearAuth", "deleteExpiredAuth",
+        "insertRevokedToken", "getRevokedTokens", "deleteExpiredRevokedTokens"
+    );
+
+    private final DataAccess data;
+    // Looked up once here rather than on every call
+    private final Map<String, Meter> meters = new HashMap<>();
+
+    private record Meter(Histogram time, Counter errors) {}
+
+    private interface Call<T> {
+        T run() throws DataAccessException;
+    }
+
+    public MeteredDataAccess(DataAccess data, MetricsRegistry registry) {
+        this.data = data;
+        for (var call : CALLS) {
+            var time = registry.histogram("chess_db_call_seconds", "Time spent in database calls", "call", call);
+            var errors = registry.counter("chess_db_errors_total", "Database calls that failed", "call", call);
+            meters.put(call, new Meter(time, errors));
+        }
+    }
+
+    private <T> T metered(String call, int gameId, Call<T> body) throws DataAccessException {
+        var meter = meters.get(call);
+        var event = new DatabaseEvent();
+        event.begin();
+        var start = System.nanoTime();
+        var failed = true;
+        try {
+            var result = body.run();
+            failed = false;
+            return result;
+        } finally {
+            meter.time().recordSince(start);
+            if (failed) {
+                meter.errors().increment();
+            }
+            if (event.shouldCommit()) {
+                event.call = call;
+                event.gameId = gameId;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        metered("insertUser", 0, () -> {
+            data.insertUser(user);
+            return null;
+        });
+    }
+
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        metered("insertUsers", 0, () -> {
+            data.insertUsers(users);
+            return null;
+        });
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return metered("getUser", 0, () -> data.getUser(username));
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        metered("clearUsers", 0, () -> {
+            data.clearUsers();
+            return null;
+        });
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        return metered("createGame", 0, () -> data.createGame(name, game));
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        metered("putGame", game.gameID(), () -> {
+            data.putGame(game);
+            return null;
+        });
+    }
+
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        metered("putGames", 0, () -> {
+            data.putGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public GameData getGame(int gameId) throws DataAccessException {
+        return metered("getGame", gameId, () -> data.getGame(gameId));
+    }
+
+    @Override
+    public List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        return metered("getGamesByIds", 0, () -> data.getGamesByIds(gameIds));
+    }
+
+    @Override
+    public List<GameData> getGames() throws DataAccessException {
+        return metered("getGames", 0, data::getGames);
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() throws DataAccessException {
+        return metered("getGameSummaries", 0, data::getGameSummaries);
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        metered("clearGames", 0, () -> {
+            data.clearGames();
+            return null;
+        });
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        metered("insertAuth", 0, () -> {
+            data.insertAuth(auth);
+            return null;
+        });
+    }
+
+    @Override
+    public AuthData getAuth(String token) throws DataAccessException {
+        return metered("getAuth", 0, () -> data.getAuth(token));
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        metered("deleteAuth", 0, () -> {
+            data.deleteAuth(token);
+            return null;
+        });
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        metered("clearAuth", 0, () -> {
+            data.clearAuth();
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        return metered("deleteExpiredAuth", 0, () -> data.deleteExpiredAuth(now, limit));
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        metered("insertRevokedToken", 0, () -> {
+            data.insertRevokedToken(token, expiresAt);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() throws DataAccessException {
+        return metered("getRevokedTokens", 0, data::getRevokedTokens);
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        return metered("deleteExpiredRevokedTokens", 0, () -> data.deleteExpiredRevokedTokens(now));
+    }
+}
@@ -0,0 +1,213 @@
+package dataaccess;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The MySQL schema as numbered migrations. Each database records the ones it
+ * has had in schema_version and is given the rest, in order, when a server
+ * starts, so schema changes reach existing databases as well as new ones. A
+ * released migration is never edited; changing the schema means adding one.
+ * <p>
+ * MySQL commits each DDL statement as it runs, so a migration whose statements
+ * ran but which couldn't be recorded runs again on the next start. Its
+ * statements must therefore be safe to run twice, or it must have a check
+ * that finds it already ran, in which case it is only recorded.
+ */
+class Migrations {
+    /**
+     * @param appliedCheck a query that returns a count above 0 if the
+     *                     statements have already run, or null if running
+     *                     them again does no harm
+     */
+    record Migration(int version, String description, List<String> statements, String appliedCheck) {
+        Migration(int version, String description, String... statements) {
+            this(version, description, List.of(statements), null);
+        }
+
+        Migration unlessApplied(String check) {
+            return new Migration(version, description, statements, check);
+        }
+    }
+
+    static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Users, sessions and games",
+            """
+                CREATE TABLE IF NOT EXISTS user (
+                  `username` varchar(256) NOT NULL,
+                  `password` varchar(256) NOT NULL,
+                  `email` varchar(256) NOT NULL,
+                  PRIMARY KEY (`username`)
+                ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+                """,
+            """
+                CREATE TABLE IF NOT EXISTS auth (
+                  `auth_token` varchar(256) NOT NULL,
+                  `username` varchar(256) NOT NULL,
+                  PRIMARY KEY (`auth_token`)
+                ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+                """,
+            """
+                CREATE TABLE IF NOT EXISTS gameData (
+                  `id` int NOT NULL AUTO_INCREMENT,
+                  `white_username` varchar(256) DEFAULT NULL,
+                  `black_username` varchar(256) DEFAULT NULL,
+                  `game_name` varchar(256) NOT NULL,
+                  `game` text NOT NULL,
+                  PRIMARY KEY (`id`)
+                ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+                """),
+        new Migration(2, "Game IDs reserved in blocks",
+            """
+                CREATE TABLE IF NOT EXISTS game_ids (
+                  `id` tinyint NOT NULL,
+                  `next_id` int NOT NULL,
+                  PRIMARY KEY (`id`)
+                )
+                """,
+            // Games created before IDs were reserved in blocks keep theirs
+            """
+                INSERT IGNORE INTO game_ids (id, next_id) SELECT 1, COALESCE(MAX(id), 0) + 1 FROM gameData
+                """),
+        new Migration(3, "Index games by player",
+            """
+                ALTER TABLE gameData
+                  ADD INDEX game_white (white_username),
+                  ADD INDEX game_black (black_username)
+                """).unlessApplied(indexExists("gameData", "game_white")),
+        new Migration(4, "Status and turn columns",
+            """
+                ALTER TABLE gameData
+                  ADD COLUMN `status` varchar(16) NOT NULL DEFAULT 'PLAY',
+                  ADD COLUMN `turn` varchar(8) NOT NULL DEFAULT 'WHITE',
+                  ADD INDEX game_status_turn (status, turn)
+                """).unlessApplied(columnExists("gameData", "status")),
+        new Migration(5, "Fill in status and turn from existing games",
+            """
+                UPDATE gameData SET
+                  status = COALESCE(JSON_UNQUOTE(JSON_EXTRACT(game, '$.status')), 'PLAY'),
+                  turn = COALESCE(JSON_UNQUOTE(JSON_EXTRACT(game, '$.turn')), 'WHITE')
+                """),
+        new Migration(6, "Session timestamps",
+            """
+                ALTER TABLE auth
+                  ADD COLUMN `issued_at` bigint NOT NULL DEFAULT 0,
+                  ADD COLUMN `expires_at` bigint NOT NULL DEFAULT 0,
+                  ADD INDEX auth_expires (expires_at)
+                """).unlessApplied(columnExists("auth", "expires_at")),
+        new Migration(7, "Expire existing sessions a day from now",
+            // Otherwise sessions from before they had timestamps would never expire
+            """
+                UPDATE auth SET expires_at = (UNIX_TIMESTAMP() + 86400) * 1000 WHERE expires_at = 0
+                """),
+        new Migration(8, "Revoked signed tokens",
+            """
+                CREATE TABLE IF NOT EXISTS revoked_token (
+                  `token` varchar(512) NOT NULL,
+                  `expires_at` bigint NOT NULL,
+                  PRIMARY KEY (`token`),
+                  INDEX revoked_expires (expires_at)
+                ) DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci
+                """)
+    );
+
+    // An ALTER TABLE is atomic, so if one of its changes is there, all are
+    private static String columnExists(String table, String column) {
+        return "SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE()"
+            + " AND TABLE_NAME = '" + table + "' AND COLUMN_NAME = '" + column + "'";
+    }
+
+    private static String indexExists(String table, String index) {
+        return "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE()"
+            + " AND TABLE_NAME = '" + table + "' AND INDEX_NAME = '" + index + "'";
+    }
+
+    private static final String VERSION_TABLE = """
+        CREATE TABLE IF NOT EXISTS schema_version (
+          `version` int NOT NULL,
+          `description` varchar(256) NOT NULL,
+          `applied_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          PRIMARY KEY (`version`)
+        )
+        """;
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Applies the migrations the database hasn't had. A named lock keeps
+     * servers starting at the same time from applying them twice.
+     *
+     * @return how many were applied
+     */
+    static int apply(DatabaseManager database) throws DataAccessException {
+        var lock = "schema_" + database.databaseName();
+        try (var connection = database.getConnection()) {
+            execute(connection, VERSION_TABLE);
+            try (var prepared = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                prepared.setString(1, lock);
+                prepared.setInt(2, LOCK_TIMEOUT_SECONDS);
+                var rs = prepared.executeQuery();
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new DataAccessException("Timed out waiting for another server to migrate the database");
+                }
+            }
+
+            try {
+                return apply(connection);
+            } finally {
+                try (var prepared = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    prepared.setString(1, lock);
+                    prepared.executeQuery();
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Migrating database failed: " + e.getMessage());
+        }
+    }
+
+    private static int apply(Connection connection) throws SQLException {
+        var current = 0;
+        try (var prepared = connection.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            var rs = prepared.executeQuery();
+            if (rs.next()) {
+                current = rs.getInt(1);
+            }
+        }
+
+        var applied = 0;
+        for (var migration : MIGRATIONS) {
+            if (migration.version() <= current) {
+                continue;
+            }
+            if (!alreadyApplied(connection, migration)) {
+                for (var statement : migration.statements()) {
+                    execute(connection, statement);
+                }
+            }
+            try (var prepared = connection.prepareStatement(
+                "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                prepared.setInt(1, migration.version());
+                prepared.setString(2, migration.description());
+                prepared.executeUpdate();
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    private static boolean alreadyApplied(Connection connection, Migration migration) throws SQLException {
+        if (migration.appliedCheck() == null) {
+            return false;
+        }
+        try (var prepared = connection.prepareStatement(migration.appliedCheck())) {
+            var rs = prepared.executeQuery();
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    private static void execute(Connection connection, String statement) throws SQLException {
+        try (var prepared = connection.prepareStatement(statement)) {
+            prepared.execute();
+        }
+    }
+}
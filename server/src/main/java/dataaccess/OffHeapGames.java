@@ -0,0 +1,179 @@
+package dataaccess;
+
+import chess.GameCodec;
+import model.GameData;
+import model.GameSummary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Games kept outside the heap, so a game nobody is playing costs a fixed
+ * {@value #RECORD_BYTES} bytes of direct memory instead of a ChessGame and
+ * its board for the garbage collector to trace. Game IDs are handed out in
+ * order, so a game's record is found from its ID without an index.
+ * <p>
+ * A record is a byte that is 1 when the slot holds a game, the board packed
+ * by GameCodec, then the white and black usernames and the game name, each
+ * a length byte and up to {@value #NAME_BYTES} bytes of UTF-8. A game with a
+ * longer name isn't stored.
+ */
+class OffHeapGames {
+    private static final int RECORD_BYTES = 256;
+    private static final int NAME_BYTES = 63;
+    private static final int CHUNK_RECORDS = 4096;
+    private static final int STRIPES = 64;
+
+    // Readers copy the array reference, so it is replaced, never changed
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private final ReentrantLock growLock = new ReentrantLock();
+    // A record is written and read under its stripe's lock, so a game is
+    // never read half written
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    OffHeapGames() {
+        for (var i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return false if the game can't be stored, because its ID isn't
+     * positive or a name is too long
+     */
+    boolean put(GameData game) {
+        var id = game.gameID();
+        var names = new byte[][]{utf8(game.whiteUsername()), utf8(game.blackUsername()), utf8(game.gameName())};
+        if (id <= 0 || Arrays.stream(names).anyMatch(name -> name != null && name.length > NAME_BYTES)) {
+            return false;
+        }
+
+        var record = record(chunk(id, true), id);
+        var lock = stripes[id % STRIPES];
+        lock.lock();
+        try {
+            record.put((byte) 1);
+            GameCodec.write(game.game(), record);
+            for (var name : names) {
+                record.put((byte) (name != null ? name.length : -1));
+                if (name != null) {
+                    record.put(name);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * @return a new copy of the game, or null if it isn't stored
+     */
+    GameData get(int id) {
+        var chunk = chunk(id, false);
+        if (chunk == null) {
+            return null;
+        }
+
+        var record = record(chunk, id);
+        var lock = stripes[id % STRIPES];
+        lock.lock();
+        try {
+            if (record.get() != 1) {
+                return null;
+            }
+            var game = GameCodec.read(record);
+            return new GameData(id, readName(record), readName(record), readName(record), game);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the game without its board, or null if it isn't stored
+     */
+    GameSummary summary(int id) {
+        var chunk = chunk(id, false);
+        if (chunk == null) {
+            return null;
+        }
+
+        var record = record(chunk, id);
+        var lock = stripes[id % STRIPES];
+        lock.lock();
+        try {
+            if (record.get() != 1) {
+                return null;
+            }
+            var board = record.position();
+            record.position(board + GameCodec.BYTES);
+            return new GameSummary(id, readName(record), readName(record), readName(record),
+                GameCodec.status(record, board), GameCodec.turn(record, board));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every game, keeping the chunks for the games created after it,
+     * whose IDs start over from 1. Dropping the chunks instead would leave
+     * their memory allocated until a garbage collection happened to find
+     * them, which a ByteBuffer's few heap bytes do nothing to hurry.
+     */
+    void clear() {
+        var current = chunks;
+        for (var id = 1; id <= current.length * CHUNK_RECORDS; id++) {
+            var lock = stripes[id % STRIPES];
+            lock.lock();
+            try {
+                record(current[(id - 1) / CHUNK_RECORDS], id).put(0, (byte) 0);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ByteBuffer chunk(int id, boolean create) {
+        var index = (id - 1) / CHUNK_RECORDS;
+        var current = chunks;
+        if (index < current.length || !create) {
+            return index < current.length && id > 0 ? current[index] : null;
+        }
+
+        growLock.lock();
+        try {
+            current = chunks;
+            if (index >= current.length) {
+                var grown = Arrays.copyOf(current, index + 1);
+                for (var i = current.length; i < grown.length; i++) {
+                    grown[i] = ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_BYTES);
+                }
+                chunks = current = grown;
+            }
+            return current[index];
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    // A view of just the record, with its own position
+    private static ByteBuffer record(ByteBuffer chunk, int id) {
+        return chunk.slice((id - 1) % CHUNK_RECORDS * RECORD_BYTES, RECORD_BYTES);
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String readName(ByteBuffer record) {
+        var length = record.get();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
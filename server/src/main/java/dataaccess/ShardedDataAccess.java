@@ -0,0 +1,264 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.AuthData;
+import model.GameData;
+import model.GameSummary;
+import model.UserData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps users and sessions in a primary database and spreads games over
+ * several shard databases by game ID. IDs are reserved in blocks from the
+ * primary, so they are unique across shards, and a game's shard is its ID
+ * modulo the number of shards, so consecutive games land on different ones.
+ * Listing games asks every shard at once and merges what they return.
+ * <p>
+ * Since the shard comes from the ID alone, changing the number of shards
+ * means moving existing games to their new shards first.
+ */
+public class ShardedDataAccess implements DataAccess {
+    private static final int GAME_ID_BLOCK = 100;
+
+    private final DataAccess primary;
+    private final List<DataAccess> shards;
+    private final GameIds gameIds;
+
+    /**
+     * @param primary keeps users and sessions
+     * @param reserve reserves blocks of game IDs that are unique across every
+     *                shard
+     * @param shards  keep games
+     */
+    public ShardedDataAccess(DataAccess primary, GameIds.Reserve reserve, List<? extends DataAccess> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards to keep games in");
+        }
+        this.primary = primary;
+        this.shards = List.copyOf(shards);
+        this.gameIds = new GameIds(reserve, GAME_ID_BLOCK);
+    }
+
+    /**
+     * Uses the databases in db.properties, reserving game IDs from the
+     * primary's game_ids.
+     */
+    public static ShardedDataAccess fromProperties() throws DataAccessException {
+        var primary = new DBDataAccess();
+        var shards = new ArrayList<DBDataAccess>();
+        for (var database : DatabaseManager.shards()) {
+            shards.add(new DBDataAccess(database));
+        }
+        return new ShardedDataAccess(primary, primary::reserveGameIds, shards);
+    }
+
+    private int shardIndex(int gameId) {
+        return Math.floorMod(gameId, shards.size());
+    }
+
+    private DataAccess shard(int gameId) {
+        return shards.get(shardIndex(gameId));
+    }
+
+    @Override
+    public void insertUser(UserData user) throws DataAccessException {
+        primary.insertUser(user);
+    }
+
+    @Override
+    public void insertUsers(List<UserData> users) throws DataAccessException {
+        primary.insertUsers(users);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return primary.getUser(username);
+    }
+
+    @Override
+    public void clearUsers() throws DataAccessException {
+        primary.clearUsers();
+    }
+
+    @Override
+    public int createGame(String name, ChessGame game) throws DataAccessException {
+        var id = gameIds.next();
+        shard(id).putGame(new GameData(id, null, null, name, game));
+        return id;
+    }
+
+    @Override
+    public void putGame(GameData game) throws DataAccessException {
+        shard(game.gameID()).putGame(game);
+    }
+
+    /**
+     * Puts each shard's share of the games at the same time.
+     */
+    @Override
+    public void putGames(List<GameData> games) throws DataAccessException {
+        var byShard = new ArrayList<List<GameData>>();
+        for (var i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (var game : games) {
+            byShard.get(shardIndex(game.gameID())).add(game);
+        }
+
+        var puts = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < shards.size(); i++) {
+            if (!byShard.get(i).isEmpty()) {
+                puts.add(shards.get(i).async().putGames(byShard.get(i)));
+            }
+        }
+        for (var put : puts) {
+            await(put);
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameId) throws DataAccessException {
+        return shard(gameId).getGame(gameId);
+    }
+
+    /**
+     * Asks each shard for its share of the games at the same time.
+     */
+    @Override
+    public List<GameData> getGamesByIds(Collection<Integer> gameIds) throws DataAccessException {
+        var byShard = new ArrayList<List<Integer>>();
+        for (var i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (var id : gameIds) {
+            byShard.get(shardIndex(id)).add(id);
+        }
+
+        var lookups = new ArrayList<CompletableFuture<List<GameData>>>();
+        for (var i = 0; i < shards.size(); i++) {
+            if (!byShard.get(i).isEmpty()) {
+                lookups.add(shards.get(i).async().getGamesByIds(byShard.get(i)));
+            }
+        }
+        var found = new HashMap<Integer, GameData>();
+        for (var lookup : lookups) {
+            for (var game : await(lookup)) {
+                found.put(game.gameID(), game);
+            }
+        }
+
+        var games = new ArrayList<GameData>(found.size());
+        for (var id : gameIds) {
+            var game = found.get(id);
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+
+    @Override
+    public List<GameData> getGames() throws DataAccessException {
+        var listings = new ArrayList<CompletableFuture<List<GameData>>>();
+        for (var shard : shards) {
+            listings.add(shard.async().getGames());
+        }
+
+        var games = new ArrayList<GameData>();
+        for (var listing : listings) {
+            games.addAll(await(listing));
+        }
+        games.sort(Comparator.comparingInt(GameData::gameID));
+        return games;
+    }
+
+    @Override
+    public List<GameSummary> getGameSummaries() throws DataAccessException {
+        var listings = new ArrayList<CompletableFuture<List<GameSummary>>>();
+        for (var shard : shards) {
+            listings.add(shard.async().getGameSummaries());
+        }
+
+        var summaries = new ArrayList<GameSummary>();
+        for (var listing : listings) {
+            summaries.addAll(await(listing));
+        }
+        summaries.sort(Comparator.comparingInt(GameSummary::gameID));
+        return summaries;
+    }
+
+    @Override
+    public void clearGames() throws DataAccessException {
+        var clears = new ArrayList<CompletableFuture<Void>>();
+        for (var shard : shards) {
+            clears.add(shard.async().clearGames());
+        }
+        for (var clear : clears) {
+            await(clear);
+        }
+        // Drops this node's block, in case the primary starts its game IDs over
+        primary.clearGames();
+        gameIds.reset();
+    }
+
+    @Override
+    public void insertAuth(AuthData auth) throws DataAccessException {
+        primary.insertAuth(auth);
+    }
+
+    @Override
+    public AuthData getAuth(String token) throws DataAccessException {
+        return primary.getAuth(token);
+    }
+
+    @Override
+    public void deleteAuth(String token) throws DataAccessException {
+        primary.deleteAuth(token);
+    }
+
+    @Override
+    public void clearAuth() throws DataAccessException {
+        primary.clearAuth();
+    }
+
+    @Override
+    public int deleteExpiredAuth(long now, int limit) throws DataAccessException {
+        return primary.deleteExpiredAuth(now, limit);
+    }
+
+    @Override
+    public void insertRevokedToken(String token, long expiresAt) throws DataAccessException {
+        primary.insertRevokedToken(token, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens() throws DataAccessException {
+        return primary.getRevokedTokens();
+    }
+
+    @Override
+    public int deleteExpiredRevokedTokens(long now) throws DataAccessException {
+        return primary.deleteExpiredRevokedTokens(now);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws DataAccessException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case DataAccessException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw e;
+            }
+        }
+    }
+}
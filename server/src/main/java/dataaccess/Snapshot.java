@@ -0,0 +1,166 @@
+package dataaccess;
+
+import chess.GameCodec;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Writes and reads everything in a MemoryDataAccess as one binary file:
+ * users, then sessions, then games, each game prefixed with its length and
+ * its board stored with {@link GameCodec}, then revoked signed tokens.
+ * <p>
+ * Reading finds where each game starts with one pass over the lengths, then
+ * decodes the games in parallel, which is most of the work.
+ */
+class Snapshot {
+    private static final int MAGIC = 0x43485353;
+    // Version 1 didn't have session timestamps, and neither 1 nor 2 had
+    // revoked tokens
+    private static final int VERSION = 3;
+
+    /**
+     * Writes a snapshot to a temporary file and then moves it into place, so a
+     * crash never leaves a partly written snapshot behind.
+     *
+     * @param firstJournal the first journal with changes the snapshot doesn't
+     *                     include
+     */
+    static void write(Path file, long firstJournal, List<UserData> users, List<AuthData> auth,
+        List<GameData> games, Map<String, Long> revoked) throws IOException {
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(firstJournal);
+
+            out.writeInt(users.size());
+            for (var user : users) {
+                writeStrings(out, user.username(), user.password(), user.email());
+            }
+            out.writeInt(auth.size());
+            for (var session : auth) {
+                writeStrings(out, session.authToken(), session.username());
+                out.writeLong(session.issuedAt());
+                out.writeLong(session.expiresAt());
+            }
+            out.writeInt(games.size());
+            for (var game : games) {
+                var names = strings(game.whiteUsername(), game.blackUsername(), game.gameName());
+                out.writeInt(Integer.BYTES + names.length + GameCodec.BYTES);
+                out.writeInt(game.gameID());
+                out.write(names);
+                out.write(GameCodec.encode(game.game()));
+            }
+            out.writeInt(revoked.size());
+            for (var entry : revoked.entrySet()) {
+                writeStrings(out, entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot into empty storage.
+     *
+     * @return the first journal with changes the snapshot doesn't include
+     */
+    static long read(Path file, MemoryDataAccess data) throws IOException, DataAccessException {
+        ByteBuffer in;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < Integer.BYTES || in.getInt() != MAGIC) {
+            throw new DataAccessException(file + " is not a snapshot");
+        }
+        var version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new DataAccessException(file + " is from an unknown version");
+        }
+        var firstJournal = in.getLong();
+
+        var userCount = in.getInt();
+        for (var i = 0; i < userCount; i++) {
+            data.insertUser(new UserData(readString(in), readString(in), readString(in)));
+        }
+        var authCount = in.getInt();
+        for (var i = 0; i < authCount; i++) {
+            var token = readString(in);
+            var username = readString(in);
+            data.insertAuth(version == 1 ? new AuthData(token, username)
+                : new AuthData(token, username, in.getLong(), in.getLong()));
+        }
+
+        var offsets = new int[in.getInt()];
+        for (var i = 0; i < offsets.length; i++) {
+            offsets[i] = in.position() + Integer.BYTES;
+            in.position(offsets[i] + in.getInt(in.position()));
+        }
+        if (version >= 3) {
+            var revokedCount = in.getInt();
+            for (var i = 0; i < revokedCount; i++) {
+                data.insertRevokedToken(readString(in), in.getLong());
+            }
+        }
+        var games = in;
+        IntStream.range(0, offsets.length).parallel().forEach(i -> {
+            // A slice for each game, since the buffer's position isn't safe to share
+            var game = games.slice(offsets[i], games.limit() - offsets[i]);
+            var id = game.getInt();
+            data.putGame(new GameData(id, readString(game), readString(game), readString(game), GameCodec.read(game)));
+        });
+        return firstJournal;
+    }
+
+    private static byte[] strings(String... values) {
+        var size = 0;
+        var encoded = new byte[values.length][];
+        for (var i = 0; i < values.length; i++) {
+            encoded[i] = values[i] != null ? values[i].getBytes(StandardCharsets.UTF_8) : null;
+            size += Integer.BYTES + (encoded[i] != null ? encoded[i].length : 0);
+        }
+
+        var out = ByteBuffer.allocate(size);
+        for (var bytes : encoded) {
+            out.putInt(bytes != null ? bytes.length : -1);
+            if (bytes != null) {
+                out.put(bytes);
+            }
+        }
+        return out.array();
+    }
+
+    private static void writeStrings(DataOutputStream out, String... values) throws IOException {
+        out.write(strings(values));
+    }
+
+    private static String readString(ByteBuffer in) {
+        var length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
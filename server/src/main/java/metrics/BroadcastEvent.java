@@ -0,0 +1,34 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for sending a game event to a game's websockets on
+ * this node.
+ */
+@Name("chess.Broadcast")
+@Label("Websocket Broadcast")
+@Category({"Chess", "Websocket"})
+@Enabled(false)
+@StackTrace(false)
+public class BroadcastEvent extends Event {
+    @Label("Game ID")
+    public int gameId;
+
+    @Label("Sequence")
+    public long sequence;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Recipients")
+    public int recipients;
+
+    @Label("Failures")
+    public int failures;
+}
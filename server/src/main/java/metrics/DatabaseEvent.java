@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a DataAccess call. Like the other chess events
+ * it is disabled unless a recording turns it on, for example with
+ * {@code -XX:StartFlightRecording:chess.Database#enabled=true}.
+ */
+@Name("chess.Database")
+@Label("Database Call")
+@Category({"Chess", "Persistence"})
+@Enabled(false)
+@StackTrace(false)
+public class DatabaseEvent extends Event {
+    @Label("Call")
+    public String call;
+
+    @Label("Game ID")
+    public int gameId;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,116 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in nanoseconds into log-linear buckets, like
+ * HdrHistogram: every power of two is split into {@value #SUB_BUCKETS} equal
+ * buckets, so a recorded value is off by at most 1/{@value #SUB_BUCKETS} of
+ * itself. Recording is a couple of bit operations and an uncontended add, so
+ * it's cheap enough to do on every request.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram() {
+        for (var i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        var value = Math.max(0, nanos);
+        buckets[index(value)].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Records the time since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the upper bound of the bucket containing that quantile, or 0 if
+     * nothing has been recorded
+     */
+    public long quantileNanos(double quantile) {
+        var counts = snapshot();
+        var total = 0L;
+        for (var c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        var rank = Math.max(1, (long) Math.ceil(quantile * total));
+        var seen = 0L;
+        for (var i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * @return how many of the counts from {@link #snapshot} are for values
+     * below the given power of two
+     */
+    static long countBelow(int powerOfTwo, long[] counts) {
+        // Bucket boundaries line up with powers of two, so this is exact
+        var last = index((1L << powerOfTwo) - 1);
+        var result = 0L;
+        for (var i = 0; i <= last; i++) {
+            result += counts[i];
+        }
+        return result;
+    }
+
+    long[] snapshot() {
+        var counts = new long[BUCKETS];
+        for (var i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var shift = exponent - SUB_BUCKET_BITS;
+        var subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        var shift = index / SUB_BUCKETS - 1;
+        var subBucket = index % SUB_BUCKETS;
+        var lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
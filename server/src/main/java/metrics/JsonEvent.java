@@ -0,0 +1,43 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for encoding or decoding JSON with Gson.
+ */
+@Name("chess.Json")
+@Label("JSON Encode or Decode")
+@Category({"Chess", "Serialization"})
+@Enabled(false)
+@StackTrace(false)
+public class JsonEvent extends Event {
+    @Label("Type")
+    public String type;
+
+    @Label("Decode")
+    public boolean decode;
+
+    @Label("Game ID")
+    public int gameId;
+
+    @Label("Characters")
+    public int length;
+
+    /**
+     * Fills in the event's fields if it is being recorded and commits it.
+     */
+    public void commit(Class<?> type, boolean decode, int gameId, String text) {
+        if (shouldCommit()) {
+            this.type = type.getSimpleName();
+            this.decode = decode;
+            this.gameId = gameId;
+            this.length = text != null ? text.length() : 0;
+            commit();
+        }
+    }
+}
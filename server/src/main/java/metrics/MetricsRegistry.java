@@ -0,0 +1,152 @@
+package metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds named counters, gauges and histograms and writes them out in the
+ * Prometheus text format. Metrics with the same name and different labels are
+ * written together as one family.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+    // Histograms are written with a bucket for each power of two nanoseconds
+    // from about a microsecond to about a minute
+    private static final int MIN_BUCKET_POWER = 10;
+    private static final int MAX_BUCKET_POWER = 36;
+
+    private enum Type { Counter, Gauge, Histogram }
+
+    private record Family(String name, String help, Type type, Map<String, Object> metrics) {}
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    // Metrics looked up on every request would otherwise sort and format
+    // their labels each time. There's one entry per series, so it's bounded.
+    private final Map<List<String>, String> labelTexts = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry the server's metrics are recorded in
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) metric(name, help, Type.Counter, labels, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) metric(name, help, Type.Histogram, labels, Histogram::new);
+    }
+
+    /**
+     * Registers a value that is read each time metrics are written. A later
+     * gauge with the same name and labels replaces this one.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.Gauge).metrics.put(cachedLabelText(labels), value);
+    }
+
+    private Object metric(String name, String help, Type type, String[] labels, Supplier<Object> create) {
+        return family(name, help, type).metrics.computeIfAbsent(cachedLabelText(labels), key -> create.get());
+    }
+
+    private Family family(String name, String help, Type type) {
+        var family = families.computeIfAbsent(name, n -> new Family(n, help, type, new ConcurrentHashMap<>()));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered with another type");
+        }
+        return family;
+    }
+
+    private String cachedLabelText(String[] labels) {
+        var text = labelTexts.get(Arrays.asList(labels));
+        if (text == null) {
+            text = labelText(labels);
+            labelTexts.putIfAbsent(List.of(labels), text);
+        }
+        return text;
+    }
+
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+
+        var sorted = new TreeMap<String, String>();
+        for (var i = 0; i < labels.length; i += 2) {
+            sorted.put(labels[i], labels[i + 1]);
+        }
+
+        var text = new StringBuilder();
+        for (var label : sorted.entrySet()) {
+            text.append(text.isEmpty() ? "" : ",").append(label.getKey()).append("=\"")
+                .append(escape(label.getValue())).append('"');
+        }
+        return text.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format. Durations
+     * are written in seconds.
+     */
+    public void write(Appendable out) throws IOException {
+        for (var family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (var entry : new TreeMap<>(family.metrics).entrySet()) {
+                var labels = entry.getKey();
+                switch (entry.getValue()) {
+                    case Counter counter -> sample(out, family.name, labels, counter.value());
+                    case DoubleSupplier gauge -> sample(out, family.name, labels, gauge.getAsDouble());
+                    case Histogram histogram -> writeHistogram(out, family.name, labels, histogram);
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(Appendable out, String name, String labels, Histogram histogram)
+        throws IOException {
+        var counts = histogram.snapshot();
+        var total = 0L;
+        for (var c : counts) {
+            total += c;
+        }
+
+        var prefix = labels.isEmpty() ? "" : labels + ",";
+        for (var power = MIN_BUCKET_POWER; power <= MAX_BUCKET_POWER; power++) {
+            var le = seconds(1L << power);
+            sample(out, name + "_bucket", prefix + "le=\"" + le + "\"", Histogram.countBelow(power, counts));
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", total);
+        sample(out, name + "_sum", labels, seconds(histogram.sumNanos()));
+        sample(out, name + "_count", labels, total);
+    }
+
+    private static void sample(Appendable out, String name, String labels, Object value) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
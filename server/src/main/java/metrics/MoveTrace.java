@@ -0,0 +1,57 @@
+package metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Times one MAKE_MOVE on its way through the server, from the command being
+ * received to the new board being sent to each connection watching the game.
+ * Each phase is recorded as it finishes. Auth and Load overlap, since they run
+ * at the same time.
+ * <p>
+ * Traces only follow a move through this node, so with a shared event bus the
+ * sends on other nodes aren't timed.
+ */
+public class MoveTrace {
+    public enum Phase { Auth, Load, Validate, Persist, Serialize, Send }
+
+    private static final Map<Phase, Histogram> PHASE_TIME = new EnumMap<>(Phase.class);
+    private static final Histogram DELIVERY_TIME = MetricsRegistry.global().histogram("chess_move_delivery_seconds",
+        "Time from receiving a move to sending the new board to a connection watching the game");
+
+    static {
+        for (var phase : Phase.values()) {
+            PHASE_TIME.put(phase, MetricsRegistry.global().histogram("chess_move_phase_seconds",
+                "Time moves spend in each step of being made and broadcast", "phase", phase.name().toLowerCase()));
+        }
+    }
+
+    public final int gameId;
+    public final long receivedNanos;
+
+    /**
+     * @param receivedNanos the {@link System#nanoTime()} the command was received at
+     */
+    public MoveTrace(int gameId, long receivedNanos) {
+        this.gameId = gameId;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Records a phase that started at the given {@link System#nanoTime()}.
+     */
+    public void record(Phase phase, long startNanos) {
+        PHASE_TIME.get(phase).recordSince(startNanos);
+    }
+
+    /**
+     * Records the new board having been sent to one connection.
+     *
+     * @param game also records the time here, for the game's own numbers
+     */
+    public void delivered(Histogram game) {
+        var nanos = System.nanoTime() - receivedNanos;
+        DELIVERY_TIME.record(nanos);
+        game.record(nanos);
+    }
+}
@@ -2,13 +2,23 @@ package server;
 
 public class ResponseException extends Exception {
     private final int httpCode;
+    private final Integer retryAfterSeconds;
 
     public ResponseException(int httpCode, String message) {
+        this(httpCode, message, null);
+    }
+
+    public ResponseException(int httpCode, String message, Integer retryAfterSeconds) {
         super(message);
         this.httpCode = httpCode;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
     public int httpCode() {
         return this.httpCode;
     }
+
+    public Integer retryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
 }
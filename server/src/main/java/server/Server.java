@@ -1,39 +1,183 @@
 package server;
 
+import capture.CommandCapture;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import dataaccess.BoundedDataAccess;
+import dataaccess.CachingDataAccess;
 import dataaccess.DBDataAccess;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import dataaccess.DatabaseManager;
+import dataaccess.JournalDataAccess;
+import dataaccess.LogDataAccess;
+import dataaccess.MemoryDataAccess;
+import dataaccess.MeteredDataAccess;
+import dataaccess.ShardedDataAccess;
+import metrics.JsonEvent;
+import metrics.MetricsRegistry;
 import model.UserData;
 import server.ServerInterface.*;
+import service.PasswordHasher;
 import service.Service;
 import service.ServiceException;
+import service.SessionSweeper;
+import service.SignedTokens;
 import spark.*;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import websocket.GameEventBus;
+import websocket.LocalGameEventBus;
+import websocket.SocketGameEventBus;
 import websocket.WebSocketHandler;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+
 public class Server {
     private final WebSocketHandler ws;
+    private final DataAccess storage;
     private final DataAccess data;
+    private final GameEventBus bus;
+    private final boolean virtualThreads;
+    private final CommandCapture capture;
+    private final SessionSweeper sweeper;
+    private final Service service;
     private final Gson gson = new Gson();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
 
     public Server() {
+        this(ServerConfig.defaults());
+    }
+
+    public Server(ServerConfig config) {
+        this(config, createStorage(config));
+    }
+
+    /**
+     * Creates a server that keeps its data in the given storage instead of the
+     * one named in the config.
+     */
+    public Server(ServerConfig config, DataAccess storage) {
+        // Every kind of storage is wrapped the same way. Metering is innermost
+        // so it only times calls that reach storage, and the cache is outermost
+        // so hits don't wait for one of the limited storage calls.
+        this.storage = storage;
+        DataAccess wrapped = new MeteredDataAccess(storage, metrics);
+        if (config.maxDbCalls() > 0) {
+            wrapped = new BoundedDataAccess(wrapped, config.maxDbCalls());
+        }
+        if (config.cacheSize() > 0) {
+            wrapped = new CachingDataAccess(wrapped, config.cacheSize(), metrics);
+        }
+        data = wrapped;
+
+        var tokenLifetime = Duration.ofSeconds(config.tokenLifetimeSeconds());
+        SignedTokens signedTokens = null;
+        if (config.tokenKey() != null) {
+            signedTokens = new SignedTokens(config.tokenKey().getBytes(StandardCharsets.UTF_8), tokenLifetime);
+        }
+        service = new Service(new PasswordHasher(config.hashThreads(), config.hashQueue()), signedTokens,
+            tokenLifetime);
+        try {
+            service.loadRevokedTokens(data);
+        } catch (DataAccessException e) {
+            // Starting anyway would accept every token logged out before now
+            throw new RuntimeException("Failed to load revoked tokens: " + e.getMessage());
+        }
+        sweeper = new SessionSweeper(service, data, SessionSweeper.DEFAULT_INTERVAL_MILLIS);
+        bus = createEventBus(config);
+        capture = createCapture(config);
+        ws = new WebSocketHandler(service, data, bus, capture);
+        bus.subscribeSessions(new GameEventBus.SessionListener() {
+            @Override
+            public void loggedOut(String authToken) {
+                service.loggedOut(authToken);
+                ws.revoke(authToken);
+            }
+
+            @Override
+            public void cleared(long clearedAt) {
+                service.sessionsCleared(clearedAt);
+                ws.revokeAll();
+            }
+        });
+        virtualThreads = config.virtualThreads();
+        registerGauges();
+    }
+
+    private void registerGauges() {
+        // Gauges are read when metrics are written, so they follow whichever
+        // hasher and handler are current
+        metrics.gauge("chess_bcrypt_active", "Password hashes running",
+            () -> service.passwordHasher().stats().active());
+        metrics.gauge("chess_bcrypt_queued", "Password hashes waiting for a thread",
+            () -> service.passwordHasher().stats().queued());
+        metrics.gauge("chess_ws_sockets", "Open websockets", () -> ws.connections().socketCount());
+        metrics.gauge("chess_ws_games", "Games with recent websocket subscribers on this node",
+            () -> ws.connections().gameCount());
+    }
+
+    private static DataAccess createStorage(ServerConfig config) {
+        var idleMillis = Duration.ofSeconds(config.idleGameSeconds()).toMillis();
         try {
-            data = new DBDataAccess();
+            return switch (config.storage()) {
+                case "mysql" -> DatabaseManager.shards().isEmpty() ? new DBDataAccess()
+                    : ShardedDataAccess.fromProperties();
+                case "memory" -> new MemoryDataAccess(idleMillis);
+                case "file" -> new JournalDataAccess(Path.of(config.storagePath()),
+                    JournalDataAccess.DEFAULT_SNAPSHOT_MILLIS, idleMillis);
+                case "log" -> new LogDataAccess(Path.of(config.storagePath()));
+                default -> throw new IllegalArgumentException("Unknown storage " + config.storage());
+            };
         } catch (DataAccessException e) {
-            System.err.println("Database initialization failed");
-            throw new RuntimeException("Failed to initialize database");
+            System.err.println("Storage initialization failed");
+            throw new RuntimeException("Failed to initialize " + config.storage() + " storage: " + e.getMessage());
+        }
+    }
+
+    private static CommandCapture createCapture(ServerConfig config) {
+        if (config.capture() == null) {
+            return null;
+        }
+
+        try {
+            return new CommandCapture(Path.of(config.capture()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open command capture " + config.capture());
+        }
+    }
+
+    private static GameEventBus createEventBus(ServerConfig config) {
+        if (config.eventBroker() == null) {
+            return new LocalGameEventBus();
         }
 
-        ws = new WebSocketHandler(data);
+        var address = config.eventBroker().split(":");
+        try {
+            return new SocketGameEventBus(address[0], Integer.parseInt(address[1]));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Connecting to event broker failed");
+            throw new RuntimeException("Failed to connect to event broker " + config.eventBroker());
+        }
     }
 
     public int run(int desiredPort) {
+        // Replaced every time, since the factory is global and an earlier
+        // Server in this JVM may have used the other mode
+        var jetty = virtualThreads ? new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool())
+            : new EmbeddedJettyFactory();
+        EmbeddedServers.add(EmbeddedServers.defaultIdentifier(), jetty);
+
         Spark.port(desiredPort);
 
         Spark.staticFiles.location("web");
 
         Spark.webSocket("/ws", ws);
+        ws.start();
 
         Spark.delete("/db", this::clear);
         Spark.post("/user", this::register);
@@ -42,6 +186,8 @@ public class Server {
         Spark.post("/game", this::createGame);
         Spark.put("/game", this::joinGame);
         Spark.get("/game", this::listGames);
+        Spark.get("/metrics", this::metrics);
+        Spark.get("/metrics/games", this::gameMetrics);
         Spark.exception(ResponseException.class, this::exceptionHandler);
 
         Spark.awaitInitialization();
@@ -49,20 +195,68 @@ public class Server {
     }
 
     public void stop() {
+        ws.stop();
+        bus.close();
+        sweeper.close();
+        service.passwordHasher().shutdown();
+        if (storage instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                System.err.println("Closing storage failed: " + e.getMessage());
+            }
+        }
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                System.err.println("Closing command capture failed: " + e.getMessage());
+            }
+        }
         Spark.stop();
         Spark.awaitStop();
     }
 
     private void exceptionHandler(ResponseException ex, Request req, Response res) {
         res.status(ex.httpCode());
+        if (ex.retryAfterSeconds() != null) {
+            res.header("Retry-After", ex.retryAfterSeconds().toString());
+        }
         res.body(gson.toJson(new ResponseExceptionBody(ex.getMessage())));
     }
 
+    /**
+     * Handles a request and records how long it took.
+     */
     private <T> String route(Request req, Response res, Class<T> body, HandlerFunction<T> callback) throws
+        ResponseException {
+        var start = System.nanoTime();
+        var status = 500;
+        try {
+            var result = handle(req, res, body, callback);
+            status = 200;
+            return result;
+        } catch (ResponseException e) {
+            status = e.httpCode();
+            throw e;
+        } finally {
+            // Labelled by the route's pattern rather than the request's path, so
+            // there are a fixed number of series
+            var route = req.matchedPath();
+            metrics.histogram("chess_http_request_seconds", "Time to handle HTTP requests",
+                "method", req.requestMethod(), "route", route).recordSince(start);
+            if (status != 200) {
+                metrics.counter("chess_http_errors_total", "HTTP requests that failed",
+                    "method", req.requestMethod(), "route", route, "status", Integer.toString(status)).increment();
+            }
+        }
+    }
+
+    private <T> String handle(Request req, Response res, Class<T> body, HandlerFunction<T> callback) throws
         ResponseException {
         res.type("application/json");
         try {
-            var request = body != null ? gson.fromJson(req.body(), body) : null;
+            var request = body != null ? fromJson(req.body(), body) : null;
             var authToken = req.headers("authorization");
             res.status(200);
             return callback.run(authToken, request);
@@ -77,15 +271,45 @@ public class Server {
                 case DoesNotExist -> new ResponseException(400, "Error: does not exist");
                 case Unauthorized -> new ResponseException(401, "Error: unauthorized");
                 case LoginFail -> new ResponseException(401, "Error: incorrect username or password");
+                case Overloaded -> new ResponseException(503, "Error: server busy", 1);
             };
         }
     }
 
+    private Object metrics(Request req, Response res) throws IOException {
+        res.type("text/plain; version=0.0.4");
+        var out = new StringBuilder();
+        metrics.write(out);
+        return out.toString();
+    }
+
+    /**
+     * Per game numbers are kept out of /metrics, since a label per game would
+     * never stop growing.
+     */
+    private Object gameMetrics(Request req, Response res) {
+        res.type("application/json");
+        var games = new ArrayList<MoveLatency>();
+        for (var entry : ws.connections().games().entrySet()) {
+            var delivery = entry.getValue().moveDelivery();
+            if (delivery != null) {
+                games.add(new MoveLatency(entry.getKey(), delivery.count(), millis(delivery.quantileNanos(0.5)),
+                    millis(delivery.quantileNanos(0.9)), millis(delivery.quantileNanos(0.99)),
+                    millis(delivery.quantileNanos(1))));
+            }
+        }
+        return toJson(new MoveLatencyResponse(games));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
     private Object register(Request req, Response res) throws ResponseException {
         return route(
             req, res, UserData.class, (auth, user) -> {
-                var authData = Service.registerUser(user, data);
-                return gson.toJson(authData);
+                var authData = service.registerUser(user, data);
+                return toJson(authData);
             }
         );
     }
@@ -93,8 +317,8 @@ public class Server {
     private Object login(Request req, Response res) throws ResponseException {
         return route(
             req, res, LoginRequest.class, (auth, request) -> {
-                var authData = Service.login(request.username(), request.password(), data);
-                return gson.toJson(authData);
+                var authData = service.login(request.username(), request.password(), data);
+                return toJson(authData);
             }
         );
     }
@@ -102,7 +326,15 @@ public class Server {
     private Object logout(Request req, Response res) throws ResponseException {
         return route(
             req, res, null, (auth, request) -> {
-                Service.logout(auth, data);
+                service.logout(auth, data);
+                try {
+                    bus.publishLogout(auth);
+                } catch (IOException e) {
+                    // The logout is stored, so other nodes still pick it up within a sweep,
+                    // as they do a deleted session once their cache lets go of it
+                    System.err.println("Publishing logout failed: " + e.getMessage());
+                    ws.revoke(auth);
+                }
                 return "{}";
             }
         );
@@ -111,8 +343,8 @@ public class Server {
     private Object createGame(Request req, Response res) throws ResponseException {
         return route(
             req, res, CreateGameRequest.class, (auth, request) -> {
-                var id = Service.createGame(request.gameName(), auth, data);
-                return gson.toJson(new CreateGameResponse(id));
+                var id = service.createGame(request.gameName(), auth, data);
+                return toJson(new CreateGameResponse(id));
             }
         );
     }
@@ -120,7 +352,7 @@ public class Server {
     private Object joinGame(Request req, Response res) throws ResponseException {
         return route(
             req, res, JoinGameRequest.class, (auth, request) -> {
-                Service.joinGame(request.gameID(), request.playerColor(), auth, data);
+                service.joinGame(request.gameID(), request.playerColor(), auth, data);
                 return "{}";
             }
         );
@@ -129,8 +361,8 @@ public class Server {
     private Object listGames(Request req, Response res) throws ResponseException {
         return route(
             req, res, null, (auth, request) -> {
-                var games = Service.listGames(auth, data);
-                return gson.toJson(new ListGamesResponse(games));
+                var games = service.listGames(auth, data);
+                return toJson(new ListGamesResponse(games));
             }
         );
     }
@@ -138,12 +370,34 @@ public class Server {
     private Object clear(Request req, Response res) throws ResponseException {
         return route(
             req, res, null, (auth, request) -> {
-                Service.clear(data);
+                service.clear(data);
+                try {
+                    bus.publishClear(System.currentTimeMillis());
+                } catch (IOException e) {
+                    System.err.println("Publishing clear failed: " + e.getMessage());
+                    ws.revokeAll();
+                }
                 return "{}";
             }
         );
     }
 
+    private <T> T fromJson(String text, Class<T> type) {
+        var event = new JsonEvent();
+        event.begin();
+        var value = gson.fromJson(text, type);
+        event.commit(type, true, 0, text);
+        return value;
+    }
+
+    private String toJson(Object value) {
+        var event = new JsonEvent();
+        event.begin();
+        var text = gson.toJson(value);
+        event.commit(value.getClass(), false, 0, text);
+        return text;
+    }
+
     private interface HandlerFunction<T> {
         String run(String authToken, T body) throws DataAccessException, ServiceException;
     }
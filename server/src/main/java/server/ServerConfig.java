@@ -0,0 +1,82 @@
+package server;
+
+import java.util.Properties;
+
+/**
+ * Settings for running a server node. Every setting is optional.
+ *
+ * @param eventBroker the host:port of the GameEventBroker that connects this
+ *                    node to the others, or null to only deliver game events
+ *                    within this process
+ * @param hashThreads how many threads hash passwords, which bounds how many
+ *                    cores a burst of logins can use
+ * @param hashQueue   how many password hashes can wait for a thread before
+ *                    requests are turned away with a 503
+ * @param tokenKey    the secret used to sign auth tokens, or null to issue
+ *                    random tokens stored in the database
+ * @param tokenLifetimeSeconds how long an auth token is valid for
+ * @param virtualThreads whether HTTP and websocket handlers run on virtual
+ *                       threads instead of Jetty's fixed thread pool
+ * @param maxDbCalls     how many database calls can run at once, or 0 for no
+ *                       limit beyond the database's own
+ * @param storage        where data is kept: "mysql", "memory" for a server
+ *                       that forgets everything when it stops, "file" to
+ *                       keep it in memory and journal it to storagePath, or
+ *                       "log" for memory mapped segment files in storagePath,
+ *                       which keeps only the index in memory, for more games
+ *                       than fit on the heap.
+ *                       Only "mysql" needs a database, and spreads games over
+ *                       the db.shards in db.properties if there are any.
+ * @param storagePath    the directory file and log storage are kept in
+ * @param cacheSize      how many users and sessions to cache in front of
+ *                       storage, or 0 to look every one up
+ * @param idleGameSeconds how often memory and file storage move games that
+ *                        haven't been used since the last time off the heap,
+ *                        or 0 to keep every game on the heap
+ * @param capture        a file to record incoming websocket commands to for
+ *                       replaying later, or null
+ */
+public record ServerConfig(
+    String eventBroker, int hashThreads, int hashQueue, String tokenKey, long tokenLifetimeSeconds,
+    boolean virtualThreads, int maxDbCalls, String storage, String storagePath, int cacheSize,
+    long idleGameSeconds, String capture
+) {
+    private static final int VIRTUAL_MAX_DB_CALLS = 64;
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final int DEFAULT_IDLE_GAME_SECONDS = 60;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    public static ServerConfig defaults() {
+        return fromProperties(new Properties());
+    }
+
+    /**
+     * Reads settings from properties such as {@code -Dchess.broker=localhost:9000}.
+     */
+    public static ServerConfig fromProperties(Properties props) {
+        var hashThreads = intProperty(props, "chess.hash.threads", CORES);
+        var virtualThreads = props.getProperty("chess.threads", "platform").equals("virtual");
+        return new ServerConfig(
+            props.getProperty("chess.broker"),
+            hashThreads,
+            intProperty(props, "chess.hash.queue", hashThreads * 16),
+            props.getProperty("chess.auth.key"),
+            intProperty(props, "chess.auth.lifetime", 24 * 60 * 60),
+            virtualThreads,
+            // Jetty's pool already bounds platform threads, but nothing bounds
+            // virtual ones
+            intProperty(props, "chess.db.maxConcurrent", virtualThreads ? VIRTUAL_MAX_DB_CALLS : 0),
+            props.getProperty("chess.storage", "mysql"),
+            props.getProperty("chess.storage.path", "data"),
+            intProperty(props, "chess.cache.size", DEFAULT_CACHE_SIZE),
+            intProperty(props, "chess.storage.idle", DEFAULT_IDLE_GAME_SECONDS),
+            props.getProperty("chess.capture")
+        );
+    }
+
+    private static int intProperty(Properties props, String name, int defaultValue) {
+        var value = props.getProperty(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
@@ -0,0 +1,64 @@
+package server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Jetty thread pool that runs every task on its own virtual thread, so
+ * handlers that block on the database or on password hashing don't use up a
+ * fixed number of platform threads.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final AtomicInteger running = new AtomicInteger();
+    private ExecutorService executor;
+
+    @Override
+    protected void doStart() throws Exception {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jetty-virtual-", 0).factory());
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(getStopTimeout(), TimeUnit.MILLISECONDS);
+        super.doStop();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
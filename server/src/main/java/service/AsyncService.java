@@ -0,0 +1,155 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import dataaccess.AsyncDataAccess;
+import dataaccess.DataAccessException;
+import metrics.MoveTrace;
+import metrics.MoveTrace.Phase;
+import model.AuthData;
+import model.GameData;
+import service.ServiceException.ErrorKind;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The game commands from Service, with lookups that don't depend on each other
+ * made at the same time. Futures fail with the same exceptions Service throws,
+ * which {@link #await} rethrows.
+ */
+public class AsyncService {
+    private interface Step<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    private interface Combine<A, B, R> {
+        R apply(A a, B b) throws Exception;
+    }
+
+    private static <T, R> Function<T, R> checked(Step<T, R> step) {
+        return value -> {
+            try {
+                return step.apply(value);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    private static <A, B, R> BiFunction<A, B, R> checked(Combine<A, B, R> combine) {
+        return (a, b) -> {
+            try {
+                return combine.apply(a, b);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * @param service checks signed tokens, which need no lookup
+     */
+    public static CompletableFuture<AuthData> authenticate(String authToken, Service service, AsyncDataAccess data) {
+        if (authToken == null) {
+            return CompletableFuture.failedFuture(new ServiceException(ErrorKind.NullInput));
+        }
+
+        var auth = service.isSignedToken(authToken)
+            ? CompletableFuture.completedFuture(service.verifySigned(authToken))
+            : data.getAuth(authToken);
+        return auth.thenApply(checked(found -> {
+            if (found == null || found.expired(System.currentTimeMillis())) {
+                throw new ServiceException(ErrorKind.Unauthorized);
+            }
+            return found;
+        }));
+    }
+
+    public static CompletableFuture<GameData> getGame(int gameId, AsyncDataAccess data) {
+        return data.getGame(gameId).thenApply(checked(game -> {
+            if (game == null) {
+                throw new ServiceException(ErrorKind.DoesNotExist);
+            }
+            return game;
+        }));
+    }
+
+    /**
+     * @param trace records how long authenticating, loading, validating and
+     *              saving the move take. Authenticating and loading are
+     *              recorded whether or not they succeed.
+     */
+    public static CompletableFuture<ChessGame> makeMove(
+        int gameId, CompletableFuture<AuthData> auth, ChessMove move, AsyncDataAccess data, MoveTrace trace
+    ) {
+        if (move == null || move.startPosition() == null || move.endPosition() == null) {
+            return CompletableFuture.failedFuture(new ServiceException(ErrorKind.NullInput));
+        }
+
+        var start = System.nanoTime();
+        var authenticated = auth.whenComplete((user, error) -> trace.record(Phase.Auth, trace.receivedNanos));
+        return data.getGame(gameId)
+            .whenComplete((game, error) -> trace.record(Phase.Load, start))
+            .thenCombine(authenticated, checked((game, user) -> {
+                var validating = System.nanoTime();
+                try {
+                    return Service.applyMove(game, user, move);
+                } finally {
+                    trace.record(Phase.Validate, validating);
+                }
+            }))
+            .thenCompose(game -> {
+                var persisting = System.nanoTime();
+                return data.putGame(game).thenApply(saved -> {
+                    trace.record(Phase.Persist, persisting);
+                    return game.game();
+                });
+            })
+            .whenComplete((game, error) -> Service.MOVE_TIME.recordSince(start));
+    }
+
+    public static CompletableFuture<Void> leaveGame(
+        int gameId, CompletableFuture<AuthData> auth, AsyncDataAccess data
+    ) {
+        return data.getGame(gameId)
+            .thenCombine(auth, checked(Service::removePlayer))
+            .thenCompose(game -> game != null ? data.putGame(game) : CompletableFuture.completedFuture(null));
+    }
+
+    public static CompletableFuture<TeamColor> resignGame(
+        int gameId, CompletableFuture<AuthData> auth, AsyncDataAccess data
+    ) {
+        var game = data.getGame(gameId);
+        // The game has loaded by the time it has been resigned, so join doesn't block
+        return game.thenCombine(auth, checked(Service::resign))
+            .thenCompose(team -> data.putGame(game.join()).thenApply(saved -> team));
+    }
+
+    /**
+     * Waits for a future and rethrows what it failed with.
+     */
+    public static <T> T await(CompletableFuture<T> future)
+        throws ServiceException, DataAccessException, InvalidMoveException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case ServiceException cause -> throw cause;
+                case DataAccessException cause -> throw cause;
+                case InvalidMoveException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package service;
+
+import dataaccess.DataAccessException;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.mindrot.jbcrypt.BCrypt;
+import service.ServiceException.ErrorKind;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs BCrypt on a fixed pool of threads with a bounded queue, so a burst of
+ * logins can only use that many cores and can't tie up every request thread.
+ * Once the queue is full further requests fail immediately with
+ * {@link ErrorKind#Overloaded} instead of waiting. A caller interrupted while
+ * waiting gets a DataAccessException, since the server isn't busy but shutting
+ * down or giving up on the request.
+ */
+public class PasswordHasher {
+    private static final Histogram HASH_TIME = hashTime("hash");
+    private static final Histogram CHECK_TIME = hashTime("check");
+    private static final Counter REJECTED = MetricsRegistry.global()
+        .counter("chess_bcrypt_rejected_total", "Password hashes turned away because the queue was full");
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    public record Stats(long completed, long rejected, int active, int queued, long busyNanos) {}
+
+    public PasswordHasher(int threads, int queueSize) {
+        var count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+                var thread = new Thread(runnable, "bcrypt-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+    }
+
+    /**
+     * Creates a hasher with one thread per core.
+     */
+    public static PasswordHasher forCores() {
+        var cores = Runtime.getRuntime().availableProcessors();
+        return new PasswordHasher(cores, cores * 16);
+    }
+
+    private static Histogram hashTime(String op) {
+        return MetricsRegistry.global().histogram("chess_bcrypt_seconds", "Time spent running BCrypt", "op", op);
+    }
+
+    public String hash(String password) throws ServiceException, DataAccessException {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt()), HASH_TIME);
+    }
+
+    public boolean check(String password, String hashed) throws ServiceException, DataAccessException {
+        return run(() -> BCrypt.checkpw(password, hashed), CHECK_TIME);
+    }
+
+    public Stats stats() {
+        return new Stats(
+            completed.sum(),
+            rejected.sum(),
+            executor.getActiveCount(),
+            executor.getQueue().size(),
+            busyNanos.sum()
+        );
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    <T> T run(Callable<T> task, Histogram time) throws ServiceException, DataAccessException {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                var start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    var elapsed = System.nanoTime() - start;
+                    busyNanos.add(elapsed);
+                    time.record(elapsed);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            REJECTED.increment();
+            throw new ServiceException(ErrorKind.Overloaded);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // No one is waiting for it any more, so don't take up the pool
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted while hashing password");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -7,17 +7,44 @@ import chess.ChessMove;
 import chess.InvalidMoveException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
-import org.mindrot.jbcrypt.BCrypt;
 import service.ServiceException.ErrorKind;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
 public class Service {
-    public static AuthData registerUser(UserData user, DataAccess data) throws DataAccessException, ServiceException {
+    static final Histogram MOVE_TIME =
+        MetricsRegistry.global().histogram("chess_move_seconds", "Time to validate and save a move");
+
+    private final PasswordHasher hasher;
+    private final SignedTokens signedTokens;
+    private final Duration sessionLifetime;
+
+    /**
+     * @param signedTokens    issues signed tokens, or null to issue random
+     *                        tokens stored in the database. Random tokens are
+     *                        accepted either way.
+     * @param sessionLifetime how long random tokens are accepted for after
+     *                        they're issued
+     */
+    public Service(PasswordHasher hasher, SignedTokens signedTokens, Duration sessionLifetime) {
+        this.hasher = hasher;
+        this.signedTokens = signedTokens;
+        this.sessionLifetime = sessionLifetime;
+    }
+
+    public PasswordHasher passwordHasher() {
+        return hasher;
+    }
+
+    public AuthData registerUser(UserData user, DataAccess data) throws DataAccessException, ServiceException {
         verifyNonNull(user);
         if (!user.initialized()) {
             throw new ServiceException(ErrorKind.NullInput);
@@ -28,7 +55,7 @@ public class Service {
             throw new ServiceException(ErrorKind.AlreadyExists);
         }
 
-        var hashed = BCrypt.hashpw(user.password(), BCrypt.gensalt());
+        var hashed = hasher.hash(user.password());
         var dbUser = new UserData(user.username(), hashed, user.email());
 
         data.insertUser(dbUser);
@@ -36,43 +63,49 @@ public class Service {
         return createSession(dbUser.username(), data);
     }
 
-    public static AuthData login(String username, String password, DataAccess data)
+    public AuthData login(String username, String password, DataAccess data)
         throws DataAccessException, ServiceException {
         verifyNonNull(username, password);
         var dbUser = data.getUser(username);
 
-        if (dbUser == null || !BCrypt.checkpw(password, dbUser.password())) {
+        if (dbUser == null || !hasher.check(password, dbUser.password())) {
             throw new ServiceException(ErrorKind.LoginFail);
         }
 
         return createSession(username, data);
     }
 
-    public static void logout(String authToken, DataAccess data) throws DataAccessException, ServiceException {
+    public void logout(String authToken, DataAccess data) throws DataAccessException, ServiceException {
         verifyNonNull(authToken);
-        Service.verifyAuth(authToken, data);
-        data.deleteAuth(authToken);
+        var auth = verifyAuth(authToken, data);
+        if (isSignedToken(authToken)) {
+            // Stored first, so the logout fails rather than only holding on this node
+            data.insertRevokedToken(authToken, auth.expiresAt());
+            loggedOut(authToken);
+        } else {
+            data.deleteAuth(authToken);
+        }
     }
 
-    public static int createGame(String gameName, String authToken, DataAccess data)
+    public int createGame(String gameName, String authToken, DataAccess data)
         throws DataAccessException, ServiceException {
         verifyNonNull(gameName, authToken);
-        Service.verifyAuth(authToken, data);
+        verifyAuth(authToken, data);
 
         return data.createGame(gameName, new ChessGame());
     }
 
-    public static List<GameData> listGames(String authToken, DataAccess data)
+    public List<GameSummary> listGames(String authToken, DataAccess data)
         throws DataAccessException, ServiceException {
         verifyNonNull(authToken);
-        Service.verifyAuth(authToken, data);
-        return data.getGames();
+        verifyAuth(authToken, data);
+        return data.getGameSummaries();
     }
 
-    public static void joinGame(int gameId, TeamColor team, String authToken, DataAccess data)
+    public void joinGame(int gameId, TeamColor team, String authToken, DataAccess data)
         throws DataAccessException, ServiceException {
         verifyNonNull(team, authToken, data);
-        var auth = Service.verifyAuth(authToken, data);
+        var auth = verifyAuth(authToken, data);
 
         var game = data.getGame(gameId);
         if (game == null) {
@@ -92,10 +125,16 @@ public class Service {
         data.putGame(game.withUser(team, auth.username()));
     }
 
-    public static GameData getGame(int gameId, String authToken, DataAccess data)
+    public GameData getGame(int gameId, String authToken, DataAccess data)
         throws ServiceException, DataAccessException {
-        Service.verifyAuth(authToken, data);
+        verifyAuth(authToken, data);
+        return getGame(gameId, data);
+    }
 
+    /**
+     * Gets a game for a caller that has already been authenticated.
+     */
+    public GameData getGame(int gameId, DataAccess data) throws ServiceException, DataAccessException {
         var game = data.getGame(gameId);
         if (game == null) {
             throw new ServiceException(ErrorKind.DoesNotExist);
@@ -104,18 +143,39 @@ public class Service {
         return game;
     }
 
-    public static UserData getUser(String authToken, DataAccess data) throws ServiceException, DataAccessException {
-        var auth = Service.verifyAuth(authToken, data);
+    public UserData getUser(String authToken, DataAccess data) throws ServiceException, DataAccessException {
+        var auth = verifyAuth(authToken, data);
         return data.getUser(auth.username());
     }
 
-    public static ChessGame makeMove(int gameId, String authToken, ChessMove move, DataAccess data)
+    public ChessGame makeMove(int gameId, String authToken, ChessMove move, DataAccess data)
+        throws DataAccessException, ServiceException, InvalidMoveException {
+        verifyNonNull(move);
+        var auth = verifyAuth(authToken, data);
+        return makeMove(gameId, auth, move, data);
+    }
+
+    public ChessGame makeMove(int gameId, AuthData auth, ChessMove move, DataAccess data)
         throws DataAccessException, ServiceException, InvalidMoveException {
         verifyNonNull(move);
         verifyNonNull(move.startPosition(), move.endPosition());
-        var auth = Service.verifyAuth(authToken, data);
 
-        var game = data.getGame(gameId);
+        var start = System.nanoTime();
+        try {
+            var game = applyMove(data.getGame(gameId), auth, move);
+            data.putGame(game);
+
+            return game.game();
+        } finally {
+            MOVE_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Makes a move in a game that has been loaded but not saved yet.
+     */
+    static GameData applyMove(GameData game, AuthData auth, ChessMove move)
+        throws ServiceException, InvalidMoveException {
         if (game == null) {
             throw new ServiceException(ErrorKind.DoesNotExist);
         }
@@ -126,35 +186,56 @@ public class Service {
             throw new ServiceException(ErrorKind.Unauthorized);
         }
 
-        game.game().makeMove(move);
-        data.putGame(game);
+        game.game().makeMove(move, game.gameID());
+        return game;
+    }
 
-        return game.game();
+    public void leaveGame(int gameId, String authToken, DataAccess data)
+        throws ServiceException, DataAccessException {
+        var auth = verifyAuth(authToken, data);
+        leaveGame(gameId, auth, data);
     }
 
-    public static void leaveGame(int gameId, String authToken, DataAccess data)
+    public void leaveGame(int gameId, AuthData auth, DataAccess data)
         throws ServiceException, DataAccessException {
-        var auth = Service.verifyAuth(authToken, data);
+        var newGame = removePlayer(data.getGame(gameId), auth);
+        if (newGame != null) {
+            data.putGame(newGame);
+        }
+    }
 
-        var game = data.getGame(gameId);
+    /**
+     * @return the game without the user as a player, or null if they weren't
+     * playing and it doesn't need to be saved
+     */
+    static GameData removePlayer(GameData game, AuthData auth) throws ServiceException {
         if (game == null) {
             throw new ServiceException(ErrorKind.DoesNotExist);
         }
 
         var team = game.userTeam(auth.username());
-        if (team == null) {
-            return;
-        }
-
-        var newGame = game.withUser(team, null);
-        data.putGame(newGame);
+        return team != null ? game.withUser(team, null) : null;
     }
 
-    public static TeamColor resignGame(int gameId, String authToken, DataAccess data)
+    public TeamColor resignGame(int gameId, String authToken, DataAccess data)
         throws ServiceException, DataAccessException {
-        var auth = Service.verifyAuth(authToken, data);
+        var auth = verifyAuth(authToken, data);
+        return resignGame(gameId, auth, data);
+    }
 
+    public TeamColor resignGame(int gameId, AuthData auth, DataAccess data)
+        throws ServiceException, DataAccessException {
         var game = data.getGame(gameId);
+        var team = resign(game, auth);
+        data.putGame(game);
+
+        return team;
+    }
+
+    /**
+     * Resigns the user's side of a game that has been loaded but not saved yet.
+     */
+    static TeamColor resign(GameData game, AuthData auth) throws ServiceException {
         if (game == null) {
             throw new ServiceException(ErrorKind.DoesNotExist);
         }
@@ -169,18 +250,57 @@ public class Service {
         }
 
         game.game().resign(team);
-        data.putGame(game);
-        
         return team;
     }
 
-    public static void clear(DataAccess data) throws DataAccessException {
+    public void clear(DataAccess data) throws DataAccessException {
         data.clearUsers();
         data.clearAuth();
         data.clearGames();
+        var clearedAt = System.currentTimeMillis();
+        if (signedTokens != null) {
+            // Clearing sessions deleted the revoked tokens, which the cutoff covers
+            data.insertRevokedToken(SignedTokens.cutoff(clearedAt), clearedAt + signedTokens.lifetime().toMillis());
+        }
+        sessionsCleared(clearedAt);
+    }
+
+    /**
+     * Rejects the signed tokens logged out and cleared through any node, as
+     * stored, and forgets those that have expired since. Called when the
+     * server starts and then periodically, which also catches logouts this
+     * node wasn't told about.
+     */
+    public void loadRevokedTokens(DataAccess data) throws DataAccessException {
+        if (signedTokens != null) {
+            signedTokens.load(data.getRevokedTokens().keySet());
+            signedTokens.prune(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Stops accepting a signed token that was logged out, possibly through
+     * another node. Random tokens were already deleted from storage.
+     */
+    public void loggedOut(String authToken) {
+        if (isSignedToken(authToken)) {
+            signedTokens.revoke(authToken);
+        }
+    }
+
+    /**
+     * Stops accepting signed tokens issued up to when every session was
+     * cleared, possibly through another node.
+     *
+     * @param clearedAt in epoch milliseconds
+     */
+    public void sessionsCleared(long clearedAt) {
+        if (signedTokens != null) {
+            signedTokens.revokeIssuedUntil(clearedAt);
+        }
     }
 
-    private static void verifyNonNull(Object... objects) throws ServiceException {
+    static void verifyNonNull(Object... objects) throws ServiceException {
         for (var o : objects) {
             if (o == null) {
                 throw new ServiceException(ErrorKind.NullInput);
@@ -188,18 +308,46 @@ public class Service {
         }
     }
 
-    private static AuthData verifyAuth(String authToken, DataAccess data) throws ServiceException, DataAccessException {
-        var auth = data.getAuth(authToken);
-        if (auth == null) {
+    /**
+     * Looks up the session for an auth token, so callers that make several
+     * requests with the same token only need to check it once.
+     */
+    public AuthData authenticate(String authToken, DataAccess data)
+        throws ServiceException, DataAccessException {
+        verifyNonNull(authToken);
+        return verifyAuth(authToken, data);
+    }
+
+    private AuthData verifyAuth(String authToken, DataAccess data) throws ServiceException, DataAccessException {
+        if (authToken == null) {
+            throw new ServiceException(ErrorKind.Unauthorized);
+        }
+
+        // The session carries its expiry, so checking it needs no other lookup
+        var auth = isSignedToken(authToken) ? verifySigned(authToken) : data.getAuth(authToken);
+        if (auth == null || auth.expired(System.currentTimeMillis())) {
             throw new ServiceException(ErrorKind.Unauthorized);
         }
 
         return auth;
     }
 
-    private static AuthData createSession(String username, DataAccess data) throws DataAccessException {
+    AuthData verifySigned(String authToken) {
+        return signedTokens.verify(authToken);
+    }
+
+    boolean isSignedToken(String authToken) {
+        return signedTokens != null && authToken != null && SignedTokens.isSigned(authToken);
+    }
+
+    private AuthData createSession(String username, DataAccess data) throws DataAccessException {
+        if (signedTokens != null) {
+            return new AuthData(signedTokens.issue(username), username);
+        }
+
         var uuid = UUID.randomUUID().toString();
-        var authData = new AuthData(uuid, username);
+        var now = System.currentTimeMillis();
+        var authData = new AuthData(uuid, username, now, now + sessionLifetime.toMillis());
         data.insertAuth(authData);
 
         return authData;
@@ -8,7 +8,8 @@ public class ServiceException extends Exception {
         DoesNotExist,
         Unauthorized,
         LoginFail,
-        NullInput
+        NullInput,
+        Overloaded
     }
 
     public ServiceException(ErrorKind kind) {
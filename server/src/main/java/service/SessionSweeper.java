@@ -0,0 +1,72 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes expired sessions from storage in the background, so sessions that
+ * are never logged out don't pile up. Expired sessions are already rejected
+ * when they're used, so how soon they go only affects how much they take up.
+ * Revoked signed tokens that have expired go the same way, and the ones left
+ * are reloaded, which also drops expired ones from memory.
+ */
+public class SessionSweeper implements AutoCloseable {
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    static final int BATCH = 1000;
+    private static final Counter SWEPT =
+        MetricsRegistry.global().counter("chess_sessions_expired_total", "Expired sessions deleted from storage");
+
+    private final Service service;
+    private final DataAccess data;
+    private final ScheduledExecutorService sweeper;
+
+    public SessionSweeper(Service service, DataAccess data, long intervalMillis) {
+        this.service = service;
+        this.data = data;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes sessions that have expired a batch at a time, until a batch
+     * comes back short, so no one delete holds storage's locks for long.
+     *
+     * @return how many were deleted
+     */
+    int sweep() {
+        var now = System.currentTimeMillis();
+        var total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = data.deleteExpiredAuth(now, BATCH);
+                total += deleted;
+                SWEPT.add(deleted);
+            } while (deleted == BATCH);
+        } catch (DataAccessException e) {
+            System.err.println("Deleting expired sessions failed: " + e.getMessage());
+        }
+        try {
+            data.deleteExpiredRevokedTokens(now);
+            service.loadRevokedTokens(data);
+        } catch (DataAccessException e) {
+            System.err.println("Refreshing revoked tokens failed: " + e.getMessage());
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,174 @@
+package service;
+
+import model.AuthData;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues auth tokens that carry their own username and expiry, signed with
+ * HMAC-SHA256, so they can be checked without a database lookup.
+ * <p>
+ * A token looks like {@code s1.<username>.<expiry>.<signature>}, with the
+ * username and signature base64url encoded and the expiry in epoch seconds.
+ * Logged out tokens are remembered by signature until they would have expired
+ * anyway, which keeps the revocation list small. Clearing every session moves
+ * a cutoff instead, before which no token is accepted. Each node keeps its own
+ * revocations, so the server tells the others about them, and stores them so
+ * they can be {@link #load loaded} by nodes that start later or missed one.
+ * The cutoff is stored alongside, as a record made by {@link #cutoff}.
+ */
+public class SignedTokens {
+    private static final String PREFIX = "s1.";
+    // Three parts rather than a token's four, so it can't be mistaken for one
+    private static final String CUTOFF_PREFIX = PREFIX + "cutoff.";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration lifetime;
+    private final ThreadLocal<Mac> mac;
+    // Signature of each revoked token -> when the token expires
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    // Tokens issued in or before this epoch second are rejected
+    private final AtomicLong revokedUntil = new AtomicLong(Long.MIN_VALUE);
+
+    public SignedTokens(byte[] key, Duration lifetime) {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+        this.lifetime = lifetime;
+        this.mac = ThreadLocal.withInitial(this::createMac);
+    }
+
+    public static boolean isSigned(String token) {
+        return token.startsWith(PREFIX);
+    }
+
+    public Duration lifetime() {
+        return lifetime;
+    }
+
+    public String issue(String username) {
+        // Issued after the cutoff even if it was moved within this second
+        var issued = Math.max(System.currentTimeMillis() / 1000, revokedUntil.get() + 1);
+        var expiry = issued + lifetime.toSeconds();
+        var payload = PREFIX + ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8)) + "." + expiry;
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * @return the session the token belongs to, or null if it is malformed,
+     * tampered with, expired or revoked
+     */
+    public AuthData verify(String token) {
+        var parts = token.split("\\.");
+        if (parts.length != 4 || !isSigned(token)) {
+            return null;
+        }
+
+        try {
+            var payload = token.substring(0, token.lastIndexOf('.'));
+            var signature = DECODER.decode(parts[3]);
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return null;
+            }
+
+            var expiry = Long.parseLong(parts[2]);
+            if (expiry <= System.currentTimeMillis() / 1000 || revoked.containsKey(parts[3])
+                || expiry - lifetime.toSeconds() <= revokedUntil.get()) {
+                return null;
+            }
+
+            var username = new String(DECODER.decode(parts[1]), StandardCharsets.UTF_8);
+            return new AuthData(token, username, (expiry - lifetime.toSeconds()) * 1000, expiry * 1000);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Rejects a token from now on. The caller should have verified it first.
+     */
+    public void revoke(String token) {
+        var parts = token.split("\\.");
+        if (parts.length != 4) {
+            return;
+        }
+        try {
+            revoked.put(parts[3], Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            // Not one of ours, so verify rejects it anyway
+        }
+    }
+
+    /**
+     * Rejects every token issued at or before the given time, in epoch
+     * milliseconds.
+     */
+    public void revokeIssuedUntil(long millis) {
+        revokedUntil.accumulateAndGet(millis / 1000, Math::max);
+    }
+
+    /**
+     * @return how a cutoff at the given time, in epoch milliseconds, is
+     * stored among revoked tokens
+     */
+    public static String cutoff(long millis) {
+        return CUTOFF_PREFIX + millis;
+    }
+
+    /**
+     * Rejects the revoked tokens and cutoffs read back from storage, on top of
+     * the ones already known.
+     */
+    public void load(Collection<String> revokedTokens) {
+        for (var token : revokedTokens) {
+            if (token.startsWith(CUTOFF_PREFIX)) {
+                try {
+                    revokeIssuedUntil(Long.parseLong(token.substring(CUTOFF_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring malformed session cutoff " + token);
+                }
+            } else {
+                revoke(token);
+            }
+        }
+    }
+
+    /**
+     * Forgets revoked tokens that have expired or that the cutoff covers,
+     * which would be rejected anyway. Called periodically rather than on each
+     * revoke, since it looks at every one.
+     */
+    public void prune(long millis) {
+        var now = millis / 1000;
+        var until = revokedUntil.get();
+        revoked.values().removeIf(expiry -> expiry <= now || expiry - lifetime.toSeconds() <= until);
+    }
+
+    int revokedCount() {
+        return revoked.size();
+    }
+
+    private byte[] sign(String payload) {
+        return mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac createMac() {
+        try {
+            var mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
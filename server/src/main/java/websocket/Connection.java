@@ -1,21 +1,60 @@
 package websocket;
 
 import com.google.gson.Gson;
+import metrics.JsonEvent;
 import org.eclipse.jetty.websocket.api.Session;
 import websocket.messages.ServerMessage;
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 public class Connection {
     public final String id;
     public final Session session;
+    public final int gameId;
+    private final Lock sendLock;
 
-    public Connection(String id, Session session) {
+    /**
+     * @param sendLock held while sending, shared by every connection on the same
+     *                 session
+     */
+    public Connection(String id, Session session, int gameId, Lock sendLock) {
         this.id = id;
         this.session = session;
+        this.gameId = gameId;
+        this.sendLock = sendLock;
     }
 
     public void send(ServerMessage msg) throws IOException {
-        session.getRemote().sendString(new Gson().toJson(msg));
+        sendText(serialize(gameId, msg));
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the message as sent to connections to the given game
+     */
+    public static String serialize(int gameId, ServerMessage msg) {
+        msg.setGameID(gameId);
+        var json = new JsonEvent();
+        json.begin();
+        var text = new Gson().toJson(msg);
+        json.commit(msg.getClass(), false, gameId, text);
+        return text;
+    }
+
+    /**
+     * Sends a message that has already been serialized for this connection's
+     * game.
+     */
+    public void sendText(String text) throws IOException {
+        // One session can be subscribed to several games, and Jetty doesn't
+        // allow overlapping blocking sends on a session. This is a lock rather
+        // than synchronized so a virtual thread blocked sending doesn't pin its
+        // carrier thread.
+        sendLock.lock();
+        try {
+            session.getRemote().sendString(text);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+}
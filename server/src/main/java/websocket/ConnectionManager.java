@@ -1,38 +1,181 @@
 package websocket;
 
+import metrics.BroadcastEvent;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import metrics.MoveTrace.Phase;
 import org.eclipse.jetty.websocket.api.Session;
-import websocket.messages.ServerMessage;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ConnectionManager {
-    public final ConcurrentHashMap<String, Connection> connections = new ConcurrentHashMap<>();
+    private static final int EVENT_HISTORY = 64;
+    private static final Histogram FANOUT_TIME = MetricsRegistry.global()
+        .histogram("chess_ws_fanout_seconds", "Time to send one game event to every connection on this node");
+    private static final Counter SENT = MetricsRegistry.global()
+        .counter("chess_ws_messages_sent_total", "Websocket messages sent for game events");
+    private static final Counter SEND_FAILURES = MetricsRegistry.global()
+        .counter("chess_ws_send_failures_total", "Websocket sends that failed, dropping the connection");
 
-    public void add(Connection connection) {
-        connections.put(connection.id, connection);
+    public final ConcurrentHashMap<Session, Connection> connections = new ConcurrentHashMap<>();
+    public final GameEventLog events = new GameEventLog(EVENT_HISTORY);
+    // Created on the first move, since most managers are only looked at by
+    // spectators of games that have finished
+    private volatile Histogram moveDelivery;
+    private long emptySince = System.currentTimeMillis();
+    private boolean retired = false;
+    // Not synchronized, since resume and deliver block sending to websockets
+    // and would pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @return false if this manager has been retired and a new one must be used
+     */
+    public boolean add(Connection connection) {
+        lock.lock();
+        try {
+            if (retired) {
+                return false;
+            }
+            connections.put(connection.session, connection);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops sending this game's messages to a session. The session itself stays
+     * open, since it may still be subscribed to other games.
+     */
+    public void remove(Session session) {
+        lock.lock();
+        try {
+            connections.remove(session);
+            if (connections.isEmpty()) {
+                emptySince = System.currentTimeMillis();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public void remove(String id) {
-        var connection = connections.remove(id);
-        connection.session.close();
+    /**
+     * Retires this manager if it has had no connections since before the
+     * cutoff. A retired manager can't be added to.
+     */
+    public boolean retireIfIdle(long cutoffMillis) {
+        lock.lock();
+        try {
+            retired = connections.isEmpty() && emptySince < cutoffMillis;
+            return retired;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public void broadcast(String sourceId, ServerMessage message) throws IOException {
-        var removeList = new ArrayList<Connection>();
-        for (var c : connections.values()) {
-            if (c.session.isOpen()) {
-                if (!c.id.equals(sourceId)) {
-                    c.send(message);
+    /**
+     * Adds a reconnecting connection and sends it the events it missed.
+     *
+     * @return false if the missed events are no longer available, in which case
+     * the connection is not added
+     */
+    public boolean resume(Connection connection, long lastEpoch, long lastSequence) throws IOException {
+        lock.lock();
+        try {
+            var missed = events.since(lastEpoch, lastSequence);
+            if (missed == null || retired) {
+                return false;
+            }
+
+            for (var event : missed) {
+                if (!connection.id.equals(event.sourceId())) {
+                    connection.send(event.message());
                 }
-            } else {
-                removeList.add(c);
             }
+            add(connection);
+            return true;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     * Sends an event to every connection except its source. Connections that
+     * have closed or fail to send are dropped.
+     */
+    public void deliver(GameEvent event) {
+        var start = System.nanoTime();
+        var jfr = new BroadcastEvent();
+        jfr.begin();
+        var sent = 0;
+        lock.lock();
+        try {
+            var message = event.message();
+            message.setEpoch(event.epoch());
+            message.setSequence(event.sequence());
+            events.record(event);
 
-        for (var c : removeList) {
-            connections.remove(c.id);
+            // Every connection here is to the same game, so they're all sent the same text
+            var trace = event.trace();
+            var serializing = System.nanoTime();
+            var text = Connection.serialize(event.gameId(), message);
+            if (trace != null) {
+                trace.record(Phase.Serialize, serializing);
+                if (moveDelivery == null) {
+                    moveDelivery = new Histogram();
+                }
+            }
+
+            var removeList = new ArrayList<Connection>();
+            for (var c : connections.values()) {
+                if (!c.session.isOpen()) {
+                    removeList.add(c);
+                } else if (!c.id.equals(event.sourceId())) {
+                    try {
+                        var sending = System.nanoTime();
+                        c.sendText(text);
+                        if (trace != null) {
+                            trace.record(Phase.Send, sending);
+                            trace.delivered(moveDelivery);
+                        }
+                        SENT.increment();
+                        sent++;
+                    } catch (IOException e) {
+                        SEND_FAILURES.increment();
+                        removeList.add(c);
+                    }
+                }
+            }
+
+            for (var c : removeList) {
+                remove(c.session);
+            }
+
+            if (jfr.shouldCommit()) {
+                jfr.gameId = event.gameId();
+                jfr.sequence = event.sequence();
+                jfr.messageType = message.getServerMessageType().name();
+                jfr.recipients = sent;
+                jfr.failures = removeList.size();
+                jfr.commit();
+            }
+        } finally {
+            lock.unlock();
+            FANOUT_TIME.recordSince(start);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the time from a move being received to its board being sent to
+     * each connection, for moves made on this node, or null if there haven't
+     * been any
+     */
+    public Histogram moveDelivery() {
+        return moveDelivery;
+    }
+}
@@ -0,0 +1,120 @@
+package websocket;
+
+import com.google.gson.Gson;
+import websocket.messages.ErrorMessage;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format between SocketGameEventBus nodes and the GameEventBroker.
+ * Nodes send publish frames, and the broker answers every node with event
+ * frames, which are publish frames with the sequence number it assigned.
+ * Logout and clear frames are sent on to every node as they are. Each frame
+ * starts with a byte saying which kind it is.
+ */
+class EventFrames {
+    static final byte EVENT = 0;
+    static final byte LOGOUT = 1;
+    static final byte CLEAR = 2;
+    private static final Gson GSON = new Gson();
+
+    record Publish(int gameId, String sourceId, String messageJson) {}
+
+    interface Frame {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static void writePublish(DataOutputStream out, int gameId, String sourceId, String messageJson)
+        throws IOException {
+        out.writeByte(EVENT);
+        out.writeInt(gameId);
+        writeNullableString(out, sourceId);
+        writeString(out, messageJson);
+    }
+
+    static Publish readPublish(DataInputStream in) throws IOException {
+        var gameId = in.readInt();
+        var sourceId = readNullableString(in);
+        var json = readString(in);
+        return new Publish(gameId, sourceId, json);
+    }
+
+    static void writeEvent(DataOutputStream out, Publish publish, long epoch, long sequence) throws IOException {
+        out.writeByte(EVENT);
+        out.writeInt(publish.gameId());
+        out.writeLong(epoch);
+        out.writeLong(sequence);
+        writeNullableString(out, publish.sourceId());
+        writeString(out, publish.messageJson());
+    }
+
+    static GameEvent readEvent(DataInputStream in) throws IOException {
+        var gameId = in.readInt();
+        var epoch = in.readLong();
+        var sequence = in.readLong();
+        var sourceId = readNullableString(in);
+        var message = decodeMessage(readString(in));
+        return new GameEvent(gameId, epoch, sequence, sourceId, message);
+    }
+
+    static void writeLogout(DataOutputStream out, String authToken) throws IOException {
+        out.writeByte(LOGOUT);
+        writeString(out, authToken);
+    }
+
+    static String readLogout(DataInputStream in) throws IOException {
+        return readString(in);
+    }
+
+    static void writeClear(DataOutputStream out, long clearedAt) throws IOException {
+        out.writeByte(CLEAR);
+        out.writeLong(clearedAt);
+    }
+
+    static long readClear(DataInputStream in) throws IOException {
+        return in.readLong();
+    }
+
+    static String encodeMessage(ServerMessage message) {
+        return GSON.toJson(message);
+    }
+
+    static ServerMessage decodeMessage(String json) {
+        var message = GSON.fromJson(json, ServerMessage.class);
+        return switch (message.getServerMessageType()) {
+            case LOAD_GAME -> GSON.fromJson(json, LoadGameMessage.class);
+            case ERROR -> GSON.fromJson(json, ErrorMessage.class);
+            case NOTIFICATION -> GSON.fromJson(json, NotificationMessage.class);
+        };
+    }
+
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeString(out, s);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    // writeUTF is limited to 64KB, which a serialized game could exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
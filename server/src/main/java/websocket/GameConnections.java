@@ -0,0 +1,252 @@
+package websocket;
+
+import dataaccess.IntMap;
+import model.AuthData;
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks every open websocket and the games each one is subscribed to.
+ * <p>
+ * Sockets are pinged periodically, and ones that haven't sent anything (a
+ * command or a pong) within the idle timeout are closed and removed from their
+ * games. A game's ConnectionManager is dropped once it has been empty for the
+ * idle timeout, rather than immediately, so clients that all lose their
+ * connection at once can still resume its recent events.
+ */
+public class GameConnections {
+    private static final long PING_INTERVAL_MILLIS = 15_000;
+    private static final long IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private final IntMap<ConnectionManager> games = new IntMap<>();
+    private final ConcurrentHashMap<Session, Socket> sockets = new ConcurrentHashMap<>();
+    private final long pingIntervalMillis;
+    private final long idleTimeoutMillis;
+    private ScheduledExecutorService heartbeat;
+
+    /**
+     * What a socket authenticated as and which games it is subscribed to.
+     * Jetty's Session has no attributes of its own, so they're kept here
+     * instead.
+     */
+    public static class Socket {
+        final Session session;
+        final Set<Integer> games = ConcurrentHashMap.newKeySet();
+        final ReentrantLock sendLock = new ReentrantLock();
+        volatile AuthData auth;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        Socket(Session session) {
+            this.session = session;
+        }
+
+        public AuthData auth() {
+            return this.auth;
+        }
+    }
+
+    public GameConnections() {
+        this(PING_INTERVAL_MILLIS, IDLE_TIMEOUT_MILLIS);
+    }
+
+    public GameConnections(long pingIntervalMillis, long idleTimeoutMillis) {
+        this.pingIntervalMillis = pingIntervalMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public synchronized void start() {
+        if (heartbeat != null) {
+            return;
+        }
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "websocket-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::sweep, pingIntervalMillis, pingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * Records that a socket is alive, registering it if it is new.
+     */
+    public Socket touch(Session session) {
+        var socket = sockets.computeIfAbsent(session, Socket::new);
+        socket.lastSeen = System.currentTimeMillis();
+        return socket;
+    }
+
+    /**
+     * Removes a socket from every game it is subscribed to.
+     */
+    public void close(Session session) {
+        var socket = sockets.remove(session);
+        if (socket == null) {
+            return;
+        }
+
+        for (var gameId : socket.games) {
+            var connections = games.get(gameId);
+            if (connections != null) {
+                connections.remove(session);
+            }
+        }
+    }
+
+    public void bind(Session session, AuthData auth) {
+        touch(session).auth = auth;
+    }
+
+    /**
+     * @return the session a socket authenticated as on CONNECT, or null
+     */
+    public AuthData boundAuth(Session session) {
+        var socket = sockets.get(session);
+        return socket != null ? socket.auth : null;
+    }
+
+    /**
+     * Forgets every socket that authenticated with the given token, so their
+     * next command is checked against the database again.
+     */
+    public void revoke(String authToken) {
+        for (var socket : sockets.values()) {
+            var auth = socket.auth;
+            if (auth != null && auth.authToken().equals(authToken)) {
+                socket.auth = null;
+            }
+        }
+    }
+
+    public void revokeAll() {
+        for (var socket : sockets.values()) {
+            socket.auth = null;
+        }
+    }
+
+    /**
+     * @return the game's ConnectionManager, or null if no connections on this
+     * node have subscribed to it recently
+     */
+    public ConnectionManager existing(int gameId) {
+        return games.get(gameId);
+    }
+
+    /**
+     * @return the game's ConnectionManager, creating it if needed
+     */
+    public ConnectionManager game(int gameId) {
+        return games.computeIfAbsent(gameId, id -> new ConnectionManager());
+    }
+
+    /**
+     * Adds a connection to its game.
+     *
+     * @return the ConnectionManager it was added to
+     */
+    public ConnectionManager join(Connection connection) {
+        while (true) {
+            var connections = game(connection.gameId);
+            if (connections.add(connection)) {
+                track(connection);
+                return connections;
+            }
+            // The manager was retired between lookup and add, so try again with a new one
+        }
+    }
+
+    /**
+     * Adds a reconnecting connection to its game and sends it the events it
+     * missed.
+     *
+     * @return false if the missed events are no longer available, in which case
+     * the connection is not added
+     */
+    public boolean resume(Connection connection, long lastEpoch, long lastSequence) throws IOException {
+        if (game(connection.gameId).resume(connection, lastEpoch, lastSequence)) {
+            track(connection);
+            return true;
+        }
+        return false;
+    }
+
+    public void leave(Connection connection) {
+        var connections = games.get(connection.gameId);
+        if (connections != null) {
+            connections.remove(connection.session);
+        }
+
+        var socket = sockets.get(connection.session);
+        if (socket != null) {
+            socket.games.remove(connection.gameId);
+        }
+    }
+
+    private void track(Connection connection) {
+        touch(connection.session).games.add(connection.gameId);
+    }
+
+    /**
+     * Pings every live socket, closes the ones that have timed out, and drops
+     * games that have been empty for the idle timeout.
+     */
+    void sweep() {
+        var cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+
+        for (var socket : sockets.values()) {
+            var session = socket.session;
+            if (!session.isOpen() || socket.lastSeen < cutoff) {
+                close(session);
+                session.close();
+                continue;
+            }
+
+            socket.sendLock.lock();
+            try {
+                session.getRemote().sendPing(ByteBuffer.allocate(0));
+            } catch (IOException e) {
+                close(session);
+                session.close();
+            } finally {
+                socket.sendLock.unlock();
+            }
+        }
+
+        games.removeIf(connections -> connections.retireIfIdle(cutoff));
+    }
+
+    /**
+     * @return the ConnectionManager for each game with recent subscribers on
+     * this node, by game ID
+     */
+    public SortedMap<Integer, ConnectionManager> games() {
+        var snapshot = new TreeMap<Integer, ConnectionManager>();
+        games.forEach(snapshot::put);
+        return snapshot;
+    }
+
+    public int gameCount() {
+        return games.size();
+    }
+
+    public int socketCount() {
+        return sockets.size();
+    }
+}
@@ -0,0 +1,36 @@
+package websocket;
+
+import metrics.MoveTrace;
+import websocket.messages.ServerMessage;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A message broadcast to everyone watching a game.
+ *
+ * @param epoch    which numbering of the game's events the sequence number
+ *                 belongs to. Whatever numbers a game's events picks a new
+ *                 epoch whenever it starts counting from 1 again, so a client
+ *                 can't resume from a number that meant something else.
+ * @param sequence the event's position in the game's event stream
+ * @param sourceId the connection the message shouldn't be sent to, or null
+ * @param trace    times delivering the board after a move, or null. It is
+ *                 only set on the node the move was made on.
+ */
+public record GameEvent(int gameId, long epoch, long sequence, String sourceId, ServerMessage message,
+    MoveTrace trace) {
+    public GameEvent(int gameId, long epoch, long sequence, String sourceId, ServerMessage message) {
+        this(gameId, epoch, sequence, sourceId, message, null);
+    }
+
+    /**
+     * @return a random epoch, which is never 0
+     */
+    static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while (epoch == 0);
+        return epoch;
+    }
+}
@@ -0,0 +1,159 @@
+package websocket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relays game events between server nodes. Every published event is given the
+ * next sequence number for its game and sent to every connected node.
+ * <p>
+ * Each node has its own queue of frames and a thread that writes them, so a
+ * slow node doesn't hold up the others, or the game's counter.
+ */
+public class GameEventBroker implements AutoCloseable {
+    private final ServerSocket server;
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Integer, Sequence> sequences = new ConcurrentHashMap<>();
+
+    // A new broker starts every game's count over, so each gets a new epoch
+    private record Sequence(long epoch, AtomicLong last) {}
+
+    private static class Node {
+        final Socket socket;
+        final DataOutputStream out;
+        final LinkedBlockingQueue<EventFrames.Frame> outbox = new LinkedBlockingQueue<>();
+        Thread writer;
+
+        Node(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    public GameEventBroker(int port) throws IOException {
+        this.server = new ServerSocket(port);
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    int nodeCount() {
+        return nodes.size();
+    }
+
+    public void start() {
+        var acceptor = new Thread(this::accept, "event-broker");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException ignored) {}
+        for (var node : nodes) {
+            disconnect(node);
+        }
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                var socket = server.accept();
+                socket.setTcpNoDelay(true);
+                var node = new Node(socket);
+                node.writer = new Thread(() -> write(node), "event-broker-writer");
+                node.writer.setDaemon(true);
+                node.writer.start();
+                nodes.add(node);
+
+                var reader = new Thread(() -> serve(node), "event-broker-node");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Event broker failed to accept node: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Node node) {
+        try (var in = new DataInputStream(new BufferedInputStream(node.socket.getInputStream()))) {
+            while (true) {
+                switch (in.readByte()) {
+                    case EventFrames.EVENT -> relay(EventFrames.readPublish(in));
+                    case EventFrames.LOGOUT -> {
+                        var authToken = EventFrames.readLogout(in);
+                        forward(out -> EventFrames.writeLogout(out, authToken));
+                    }
+                    case EventFrames.CLEAR -> {
+                        var clearedAt = EventFrames.readClear(in);
+                        forward(out -> EventFrames.writeClear(out, clearedAt));
+                    }
+                    default -> throw new IOException("Unknown frame");
+                }
+            }
+        } catch (IOException e) {
+            disconnect(node);
+        }
+    }
+
+    private void relay(EventFrames.Publish publish) {
+        var sequence = sequences.computeIfAbsent(publish.gameId(),
+            id -> new Sequence(GameEvent.newEpoch(), new AtomicLong()));
+        // Hold the game's counter while queueing, so every node receives its
+        // events in sequence order. Queueing doesn't block, so neither does this.
+        synchronized (sequence) {
+            var next = sequence.last().incrementAndGet();
+            forward(out -> EventFrames.writeEvent(out, publish, sequence.epoch(), next));
+        }
+    }
+
+    private void forward(EventFrames.Frame frame) {
+        for (var node : nodes) {
+            node.outbox.add(frame);
+        }
+    }
+
+    /**
+     * Writes a node's frames in the order they were queued, flushing once
+     * the queue is empty rather than after every frame.
+     */
+    private void write(Node node) {
+        try {
+            while (true) {
+                var frame = node.outbox.take();
+                do {
+                    frame.write(node.out);
+                    frame = node.outbox.poll();
+                } while (frame != null);
+                node.out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            disconnect(node);
+        }
+    }
+
+    private void disconnect(Node node) {
+        nodes.remove(node);
+        if (node.writer != Thread.currentThread()) {
+            node.writer.interrupt();
+        }
+        try {
+            node.socket.close();
+        } catch (IOException ignored) {}
+    }
+}
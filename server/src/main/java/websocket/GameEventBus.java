@@ -0,0 +1,55 @@
+package websocket;
+
+import metrics.MoveTrace;
+import websocket.messages.ServerMessage;
+
+import java.io.IOException;
+
+/**
+ * Carries game events to every server node, each of which delivers them to the
+ * connections it holds. The bus also numbers each game's events, so every node
+ * sees the same sequence numbers in the same order.
+ * <p>
+ * It also carries ended sessions, since signed tokens are checked without
+ * storage and each node has to be told to stop accepting them.
+ */
+public interface GameEventBus extends AutoCloseable {
+    interface Listener {
+        void deliver(GameEvent event);
+    }
+
+    interface SessionListener {
+        void loggedOut(String authToken);
+
+        /**
+         * @param clearedAt when every session was ended, in epoch milliseconds
+         */
+        void cleared(long clearedAt);
+    }
+
+    default void publish(int gameId, String sourceId, ServerMessage message) throws IOException {
+        publish(gameId, sourceId, message, null);
+    }
+
+    /**
+     * @param trace passed on with the event to this node's listeners, or null
+     */
+    void publish(int gameId, String sourceId, ServerMessage message, MoveTrace trace) throws IOException;
+
+    void subscribe(Listener listener);
+
+    /**
+     * Tells every node, this one included, that a session was logged out.
+     */
+    void publishLogout(String authToken) throws IOException;
+
+    /**
+     * Tells every node, this one included, that every session was ended.
+     */
+    void publishClear(long clearedAt) throws IOException;
+
+    void subscribeSessions(SessionListener listener);
+
+    @Override
+    void close();
+}
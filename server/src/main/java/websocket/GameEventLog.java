@@ -0,0 +1,76 @@
+package websocket;
+
+import websocket.messages.ServerMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the most recent events broadcast to a game, so a client that
+ * reconnects can be sent only the events it missed. Only events from the
+ * latest epoch are kept.
+ */
+public class GameEventLog {
+    private final GameEvent[] events;
+    private long epoch = 0;
+    private long latest = 0;
+
+    public GameEventLog(int capacity) {
+        this.events = new GameEvent[capacity];
+    }
+
+    public synchronized void record(GameEvent event) {
+        if (event.epoch() != this.epoch) {
+            Arrays.fill(this.events, null);
+            this.epoch = event.epoch();
+            this.latest = 0;
+        }
+        this.events[slot(event.sequence())] = event;
+        this.latest = Math.max(this.latest, event.sequence());
+    }
+
+    public synchronized long latest() {
+        return this.latest;
+    }
+
+    public synchronized long epoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Numbers a message sent to one connection as the latest event, so the
+     * connection can resume from here.
+     */
+    public synchronized void stampLatest(ServerMessage message) {
+        message.setEpoch(this.epoch);
+        message.setSequence(this.latest);
+    }
+
+    /**
+     * @return every event after the given sequence number in order, or null if
+     * the epoch is another one or some of the events are no longer stored
+     */
+    public synchronized List<GameEvent> since(long epoch, long sequence) {
+        if (epoch != this.epoch || sequence > this.latest || this.latest - sequence > this.events.length) {
+            return null;
+        }
+
+        var result = new ArrayList<GameEvent>((int) (this.latest - sequence));
+        for (var s = sequence + 1; s <= this.latest; s++) {
+            // Slots can be empty or overwritten if this node only started
+            // receiving the game's events partway through
+            var event = this.events[slot(s)];
+            if (event == null || event.sequence() != s) {
+                return null;
+            }
+            result.add(event);
+        }
+
+        return result;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % this.events.length);
+    }
+}
@@ -0,0 +1,114 @@
+package websocket;
+
+import metrics.MoveTrace;
+import websocket.messages.ServerMessage;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers events to listeners in the same JVM, on the publishing thread.
+ */
+public class LocalGameEventBus implements GameEventBus {
+    // A game's counter is dropped after this long without events. Its count
+    // starts over with a new epoch, so clients reload it rather than resume.
+    private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ConcurrentHashMap<Integer, Sequence> sequences = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    /**
+     * A game's event counter. Listeners block on websocket sends, so this is
+     * guarded by a lock rather than synchronized to avoid pinning virtual
+     * threads.
+     */
+    private static class Sequence {
+        final ReentrantLock lock = new ReentrantLock();
+        // A pruned game's count starts over with a new epoch
+        final long epoch = GameEvent.newEpoch();
+        long last = 0;
+        long lastUsed = System.currentTimeMillis();
+        boolean removed = false;
+    }
+
+    @Override
+    public void publish(int gameId, String sourceId, ServerMessage message, MoveTrace trace) {
+        var now = System.currentTimeMillis();
+        if (now - lastPrune > IDLE_MILLIS) {
+            lastPrune = now;
+            prune(now - IDLE_MILLIS);
+        }
+
+        while (true) {
+            var sequence = sequences.computeIfAbsent(gameId, id -> new Sequence());
+            // Hold the game's counter so its events are delivered in sequence order
+            sequence.lock.lock();
+            try {
+                if (sequence.removed) {
+                    // Pruned between lookup and lock, so start a new one
+                    continue;
+                }
+                sequence.lastUsed = now;
+                var event = new GameEvent(gameId, sequence.epoch, ++sequence.last, sourceId, message, trace);
+                for (var listener : listeners) {
+                    listener.deliver(event);
+                }
+                return;
+            } finally {
+                sequence.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forgets the counters of games that haven't had an event since the
+     * cutoff, so the map only grows with the games being played.
+     */
+    void prune(long cutoffMillis) {
+        sequences.values().removeIf(sequence -> {
+            sequence.lock.lock();
+            try {
+                sequence.removed = sequence.lastUsed < cutoffMillis;
+                return sequence.removed;
+            } finally {
+                sequence.lock.unlock();
+            }
+        });
+    }
+
+    int sequenceCount() {
+        return sequences.size();
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void publishLogout(String authToken) {
+        for (var listener : sessionListeners) {
+            listener.loggedOut(authToken);
+        }
+    }
+
+    @Override
+    public void publishClear(long clearedAt) {
+        for (var listener : sessionListeners) {
+            listener.cleared(clearedAt);
+        }
+    }
+
+    @Override
+    public void subscribeSessions(SessionListener listener) {
+        sessionListeners.add(listener);
+    }
+
+    @Override
+    public void close() {}
+}
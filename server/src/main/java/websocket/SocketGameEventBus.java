@@ -0,0 +1,185 @@
+package websocket;
+
+import metrics.MoveTrace;
+import websocket.messages.ServerMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes events through a GameEventBroker, which sends them back to every
+ * connected node, this one included. Local connections therefore see events in
+ * the same order as every other node's.
+ * <p>
+ * If the connection to the broker drops, it is reconnected with exponential
+ * backoff. Publishes fail until then, and events relayed in the meantime are
+ * missed; the gap in sequence numbers sends reconnecting clients a full reload.
+ */
+public class SocketGameEventBus implements GameEventBus {
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private final String host;
+    private final int port;
+    // Replaced on reconnect, both guarded by writeLock
+    private Socket socket;
+    private DataOutputStream out;
+    private volatile boolean closed = false;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @throws IOException if the broker can't be reached at first
+     */
+    public SocketGameEventBus(String host, int port) throws IOException {
+        this.host = host;
+        this.port = port;
+        var connected = connect();
+
+        var reader = new Thread(() -> readEvents(connected), "event-bus-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private Socket connect() throws IOException {
+        var connected = new Socket(host, port);
+        connected.setTcpNoDelay(true);
+        writeLock.lock();
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+            socket = connected;
+            out = new DataOutputStream(new BufferedOutputStream(connected.getOutputStream()));
+        } finally {
+            writeLock.unlock();
+        }
+        return connected;
+    }
+
+    /**
+     * Events come back from the broker without anything to tell which node
+     * published them, so traces stop here.
+     */
+    @Override
+    public void publish(int gameId, String sourceId, ServerMessage message, MoveTrace trace) throws IOException {
+        var json = EventFrames.encodeMessage(message);
+        send(out -> EventFrames.writePublish(out, gameId, sourceId, json));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void publishLogout(String authToken) throws IOException {
+        send(out -> EventFrames.writeLogout(out, authToken));
+    }
+
+    @Override
+    public void publishClear(long clearedAt) throws IOException {
+        send(out -> EventFrames.writeClear(out, clearedAt));
+    }
+
+    @Override
+    public void subscribeSessions(SessionListener listener) {
+        sessionListeners.add(listener);
+    }
+
+    private void send(EventFrames.Frame frame) throws IOException {
+        writeLock.lock();
+        try {
+            frame.write(out);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writeLock.lock();
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void readEvents(Socket connected) {
+        while (!closed) {
+            readEventsFrom(connected);
+            connected = reconnect();
+            if (connected == null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the new connection, or null if the bus was closed first
+     */
+    private Socket reconnect() {
+        var backoff = MIN_BACKOFF_MILLIS;
+        while (!closed) {
+            try {
+                Thread.sleep(backoff);
+                var connected = connect();
+                if (closed) {
+                    connected.close();
+                    return null;
+                }
+                System.err.println("Reconnected to event broker");
+                return connected;
+            } catch (IOException e) {
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void readEventsFrom(Socket connected) {
+        try (var in = new DataInputStream(new BufferedInputStream(connected.getInputStream()))) {
+            while (true) {
+                switch (in.readByte()) {
+                    case EventFrames.EVENT -> {
+                        var event = EventFrames.readEvent(in);
+                        for (var listener : listeners) {
+                            listener.deliver(event);
+                        }
+                    }
+                    case EventFrames.LOGOUT -> {
+                        var authToken = EventFrames.readLogout(in);
+                        for (var listener : sessionListeners) {
+                            listener.loggedOut(authToken);
+                        }
+                    }
+                    case EventFrames.CLEAR -> {
+                        var clearedAt = EventFrames.readClear(in);
+                        for (var listener : sessionListeners) {
+                            listener.cleared(clearedAt);
+                        }
+                    }
+                    default -> throw new IOException("Unknown frame");
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Lost connection to event broker, reconnecting: " + e.getMessage());
+            }
+        }
+    }
+}
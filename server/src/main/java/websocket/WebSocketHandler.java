@@ -1,56 +1,104 @@
 package websocket;
 
+import capture.CommandCapture;
 import chess.InvalidMoveException;
 import com.google.gson.Gson;
+import dataaccess.AsyncDataAccess;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
-import model.UserData;
+import metrics.Counter;
+import metrics.JsonEvent;
+import metrics.MetricsRegistry;
+import metrics.MoveTrace;
+import model.AuthData;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketFrame;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import service.AsyncService;
 import service.Service;
 import service.ServiceException;
 import websocket.commands.MakeMoveCommand;
 import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
 import websocket.messages.ErrorMessage;
 import websocket.messages.LoadGameMessage;
 import websocket.messages.NotificationMessage;
-import model.GameData;
+import websocket.messages.ServerMessage;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 @WebSocket
 public class WebSocketHandler {
-    private final DataAccess data;
+    private static final Counter PUBLISH_FAILURES = MetricsRegistry.global()
+        .counter("chess_ws_publish_failures_total", "Game events that couldn't be published to the event bus");
+
+    private final Service service;
+    private final AsyncDataAccess data;
     private final Gson gson = new Gson();
-    private final ConcurrentHashMap<Integer, ConnectionManager> managers = new ConcurrentHashMap<>();
+    private final GameConnections connections = new GameConnections();
+    private final GameEventBus bus;
+    private final CommandCapture capture;
+
+    public WebSocketHandler(Service service, DataAccess data, GameEventBus bus) {
+        this(service, data, bus, null);
+    }
+
+    /**
+     * @param capture records every command received, or null
+     */
+    public WebSocketHandler(Service service, DataAccess data, GameEventBus bus, CommandCapture capture) {
+        this.service = service;
+        this.data = data.async();
+        this.bus = bus;
+        this.capture = capture;
+        bus.subscribe(this::deliver);
+    }
+
+    public void start() {
+        connections.start();
+    }
+
+    public void stop() {
+        connections.stop();
+    }
 
-    public WebSocketHandler(DataAccess data) {
-        this.data = data;
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        connections.touch(session);
     }
 
     @OnWebSocketMessage
     public void onCommand(Session session, String commandText) throws IOException {
-        var command = deserializeCommand(commandText);
-        var connection = new Connection(command.getAuthToken(), session);
-
-        var connections = managers.get(command.getGameID());
-        if (connections == null) {
-            connections = new ConnectionManager();
-            managers.put(command.getGameID(), connections);
+        var received = System.nanoTime();
+        var socket = connections.touch(session);
+        if (capture != null) {
+            capture.command(session, commandText);
         }
+        var command = deserializeCommand(commandText);
+        var connection = new Connection(command.getAuthToken(), session, command.getGameID(), socket.sendLock);
 
-        var auth = command.getAuthToken();
-
+        // Lookups within a command run at the same time, but each command is
+        // finished before the next one from the socket is read, so a socket's
+        // commands still take effect in order
         try {
-            var game = Service.getGame(command.getGameID(), auth, data);
-            var user = Service.getUser(auth, data);
+            var auth = authenticate(session, command);
+            if (capture != null) {
+                auth = auth.thenApply(found -> {
+                    capture.auth(found);
+                    return found;
+                });
+            }
+            var gameId = command.getGameID();
             switch (command.getCommandType()) {
-                case CONNECT -> connect(connections, connection, game, user);
-                case MAKE_MOVE -> move(connections, (MakeMoveCommand) command, data, user);
-                case LEAVE -> leave(connections, auth, data, game.gameID(), user);
-                case RESIGN -> resign(connections, auth, data, game.gameID(), user);
+                case CONNECT -> connect(connection, command.getLastEpoch(), command.getLastSequence(), gameId, auth);
+                case MAKE_MOVE -> move((MakeMoveCommand) command, auth, new MoveTrace(gameId, received));
+                case LEAVE -> leave(connection, gameId, auth);
+                case RESIGN -> resign(gameId, auth);
             }
         } catch (IOException | DataAccessException e) {
             var message = new ErrorMessage("Error: an unexpected error has occurred");
@@ -61,6 +109,7 @@ public class WebSocketHandler {
                 case DoesNotExist -> "Error: game does not exist";
                 case Unauthorized, LoginFail -> "Error: unauthorized";
                 case NullInput -> "Error: bad request";
+                case Overloaded -> "Error: server busy";
             };
 
             connection.send(new ErrorMessage(messageText));
@@ -69,32 +118,130 @@ public class WebSocketHandler {
         }
     }
 
+    @OnWebSocketFrame
+    public void onFrame(Session session, Frame frame) {
+        if (frame.getType() == Frame.Type.PONG) {
+            connections.touch(session);
+        }
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        connections.close(session);
+        if (capture != null) {
+            capture.close(session);
+        }
+    }
+
+    private void deliver(GameEvent event) {
+        var gameConnections = connections.existing(event.gameId());
+        if (gameConnections != null) {
+            gameConnections.deliver(event);
+        }
+    }
+
+    private void broadcast(int gameId, String sourceId, ServerMessage message) {
+        broadcast(gameId, sourceId, message, null);
+    }
+
+    /**
+     * Publishes an event for a change that has already been saved, so failing
+     * to publish it isn't reported as the command failing. Clients that missed
+     * it see the change the next time they load the game.
+     */
+    private void broadcast(int gameId, String sourceId, ServerMessage message, MoveTrace trace) {
+        try {
+            bus.publish(gameId, sourceId, message, trace);
+        } catch (IOException e) {
+            PUBLISH_FAILURES.increment();
+            System.err.println("Publishing an event for game " + gameId + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets every socket that authenticated with the given token, so their
+     * next command is checked against the database again.
+     */
+    public void revoke(String authToken) {
+        connections.revoke(authToken);
+    }
+
+    public void revokeAll() {
+        connections.revokeAll();
+    }
+
+    public GameConnections connections() {
+        return connections;
+    }
+
+    private CompletableFuture<AuthData> authenticate(Session session, UserGameCommand command) {
+        var token = command.getAuthToken();
+        var bound = connections.boundAuth(session);
+        // An expired session is looked up again, which rejects it
+        if (command.getCommandType() != CommandType.CONNECT && bound != null && bound.authToken().equals(token)
+            && !bound.expired(System.currentTimeMillis())) {
+            return CompletableFuture.completedFuture(bound);
+        }
+
+        var auth = AsyncService.authenticate(token, service, data);
+        if (command.getCommandType() == CommandType.CONNECT) {
+            return auth.thenApply(found -> {
+                connections.bind(session, found);
+                return found;
+            });
+        }
+        return auth;
+    }
+
     private UserGameCommand deserializeCommand(String messageText) {
+        var json = new JsonEvent();
+        json.begin();
         var command = gson.fromJson(messageText, UserGameCommand.class);
-        return switch (command.getCommandType()) {
+        command = switch (command.getCommandType()) {
             case CONNECT, LEAVE, RESIGN -> command;
             case MAKE_MOVE -> gson.fromJson(messageText, MakeMoveCommand.class);
         };
+        json.commit(command.getClass(), true, command.getGameID(), messageText);
+        return command;
     }
 
-    private void connect(ConnectionManager connections, Connection connection, GameData game, UserData user)
-        throws IOException {
-        connection.send(new LoadGameMessage(game.game()));
+    private void connect(Connection connection, Long lastEpoch, Long lastSequence, int gameId,
+        CompletableFuture<AuthData> auth)
+        throws ServiceException, DataAccessException, InvalidMoveException, IOException {
+        var loading = AsyncService.getGame(gameId, data);
+        var user = AsyncService.await(auth);
+        var game = AsyncService.await(loading);
+        if (capture != null) {
+            capture.game(game);
+        }
+        // Without the epoch, the client's sequence number could be from a
+        // numbering that has since started over, so it's sent the whole game
+        if (lastEpoch != null && lastSequence != null && connections.resume(connection, lastEpoch, lastSequence)) {
+            return;
+        }
+
+        var load = new LoadGameMessage(game.game());
+        connections.game(gameId).events.stampLatest(load);
+        connection.send(load);
 
         var team = game.userTeam(user.username());
         var message = team != null ? "player " + user.username() + " joined as " + team : user.username() +
             " is now observing the game";
-        connections.add(connection);
-        connections.broadcast(connection.id, new NotificationMessage(message));
+        connections.join(connection);
+        broadcast(gameId, connection.id, new NotificationMessage(message));
     }
 
-    private void move(ConnectionManager connections, MakeMoveCommand move, DataAccess data, UserData user)
+    private void move(MakeMoveCommand move, CompletableFuture<AuthData> auth, MoveTrace trace)
         throws ServiceException, DataAccessException, InvalidMoveException, IOException {
-        var game = Service.makeMove(move.getGameID(), move.getAuthToken(), move.move(), data);
-        connections.broadcast(null, new LoadGameMessage(game));
+        var gameId = move.getGameID();
+        var moving = AsyncService.makeMove(gameId, auth, move.move(), data, trace);
+        // Waiting on auth first reports a bad token ahead of any other error
+        var user = AsyncService.await(auth);
+        var game = AsyncService.await(moving);
+        broadcast(gameId, null, new LoadGameMessage(game), trace);
 
         var moveMessage = user.username() + " made move " + move.move();
-        connections.broadcast(move.getAuthToken(), new NotificationMessage(moveMessage));
+        broadcast(gameId, move.getAuthToken(), new NotificationMessage(moveMessage));
 
         var message = switch (game.status()) {
             case CHECK -> game.getTeamTurn() + " is in check!";
@@ -104,22 +251,26 @@ public class WebSocketHandler {
         };
 
         if (message != null) {
-            connections.broadcast(null, new NotificationMessage(message));
+            broadcast(gameId, null, new NotificationMessage(message));
         }
     }
 
-    private void leave(ConnectionManager connections, String authToken, DataAccess data, int game, UserData user)
-        throws ServiceException, DataAccessException, IOException {
-        Service.leaveGame(game, authToken, data);
+    private void leave(Connection connection, int game, CompletableFuture<AuthData> auth)
+        throws ServiceException, DataAccessException, InvalidMoveException, IOException {
+        var leaving = AsyncService.leaveGame(game, auth, data);
+        var user = AsyncService.await(auth);
+        AsyncService.await(leaving);
         var message = user.username() + " left the game";
-        connections.remove(authToken);
-        connections.broadcast(authToken, new NotificationMessage(message));
+        connections.leave(connection);
+        broadcast(game, user.authToken(), new NotificationMessage(message));
     }
 
-    private void resign(ConnectionManager connections, String authToken, DataAccess data, int game, UserData user)
-        throws ServiceException, DataAccessException, IOException {
-        var team = Service.resignGame(game, authToken, data);
+    private void resign(int game, CompletableFuture<AuthData> auth)
+        throws ServiceException, DataAccessException, InvalidMoveException, IOException {
+        var resigning = AsyncService.resignGame(game, auth, data);
+        var user = AsyncService.await(auth);
+        var team = AsyncService.await(resigning);
         var message = user.username() + " has resigned.";
-        connections.broadcast(null, new NotificationMessage(message, team));
+        broadcast(game, null, new NotificationMessage(message, team));
     }
 }
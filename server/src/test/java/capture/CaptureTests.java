@@ -0,0 +1,112 @@
+package capture;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import model.AuthData;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import websocket.commands.UserGameCommand;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CaptureTests {
+    @TempDir
+    Path directory;
+
+    /**
+     * @return a session that's only good for telling sockets apart
+     */
+    private static Session session() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        var file = directory.resolve("commands.cap");
+        var first = session();
+        var second = session();
+        try (var capture = new CommandCapture(file)) {
+            capture.auth(new AuthData("token", "alice"));
+            capture.auth(new AuthData("token", "alice"));
+            capture.game(new GameData(1, "alice", null, "game", new ChessGame()));
+            capture.command(first, "{\"commandType\":\"CONNECT\"}");
+            capture.command(second, "{\"commandType\":\"CONNECT\"}");
+            capture.game(new GameData(1, null, "bob", "game", new ChessGame()));
+            capture.command(first, "{\"commandType\":\"LEAVE\"}");
+            capture.close(first);
+            capture.close(first);
+        }
+
+        var capture = Capture.read(file);
+        assertEquals(1, capture.auth().size());
+        assertEquals("alice", capture.auth().getFirst().username());
+
+        // Players recorded later are merged into the first record of the game
+        assertEquals(1, capture.games().size());
+        var game = capture.games().getFirst();
+        assertEquals("alice", game.whiteUsername());
+        assertEquals("bob", game.blackUsername());
+
+        var events = capture.events();
+        assertEquals(4, events.size());
+        assertEquals(events.get(0).socket(), events.get(2).socket());
+        assertNotEquals(events.get(0).socket(), events.get(1).socket());
+        assertEquals("{\"commandType\":\"LEAVE\"}", events.get(2).command());
+        assertNull(events.get(3).command());
+        for (var i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i).offsetMicros() >= events.get(i - 1).offsetMicros());
+        }
+    }
+
+    @Test
+    public void tokensAreReplaced() throws IOException {
+        var file = directory.resolve("commands.cap");
+        var socket = session();
+        try (var capture = new CommandCapture(file)) {
+            capture.command(socket, "{\"commandType\":\"CONNECT\",\"authToken\":\"secret1\",\"gameID\":1}");
+            capture.auth(new AuthData("secret1", "alice"));
+            capture.command(socket, "{\"commandType\":\"LEAVE\",\"authToken\":\"secret1\",\"gameID\":1}");
+            capture.command(socket, "{\"commandType\":\"CONNECT\",\"authToken\":\"secret2\",\"gameID\":1}");
+            capture.command(socket, "not json secret3");
+        }
+
+        var bytes = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertFalse(bytes.contains("secret1"));
+        assertFalse(bytes.contains("secret2"));
+
+        // Commands use the same placeholder their session was recorded under
+        var capture = Capture.read(file);
+        var placeholder = capture.auth().getFirst().authToken();
+        assertEquals(List.of(new AuthData(placeholder, "alice")), capture.auth());
+        var events = capture.events();
+        var connect = new Gson().fromJson(events.get(0).command(), UserGameCommand.class);
+        assertEquals(placeholder, connect.getAuthToken());
+        assertEquals(1, connect.getGameID());
+        var leave = new Gson().fromJson(events.get(1).command(), UserGameCommand.class);
+        assertEquals(placeholder, leave.getAuthToken());
+        var other = new Gson().fromJson(events.get(2).command(), UserGameCommand.class);
+        assertNotEquals(placeholder, other.getAuthToken());
+        assertEquals("not json secret3", events.get(3).command());
+    }
+
+    @Test
+    public void readRejectsOtherFiles() throws IOException {
+        var file = directory.resolve("other.cap");
+        Files.writeString(file, "not a capture");
+        assertThrows(IOException.class, () -> Capture.read(file));
+    }
+}
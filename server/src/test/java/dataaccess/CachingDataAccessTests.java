@@ -0,0 +1,75 @@
+package dataaccess;
+
+import metrics.MetricsRegistry;
+import model.AuthData;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingDataAccessTests {
+    /**
+     * Storage whose lookups can be held up after they've read, as if the
+     * reply were slow to arrive.
+     */
+    private static class SlowReads extends MemoryDataAccess {
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean slow = false;
+
+        @Override
+        public AuthData getAuth(String token) {
+            var found = super.getAuth(token);
+            if (slow) {
+                slow = false;
+                read.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return found;
+        }
+    }
+
+    @Test
+    public void lookupDuringDeleteIsNotCached() throws Exception {
+        var storage = new SlowReads();
+        var cached = new CachingDataAccess(storage, 100, new MetricsRegistry());
+        storage.insertAuth(new AuthData("token", "alice"));
+
+        storage.slow = true;
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            var lookup = executor.submit(() -> cached.getAuth("token"));
+            assertTrue(storage.read.await(5, TimeUnit.SECONDS));
+
+            // The lookup read the session before it was deleted, and caches it after
+            cached.deleteAuth("token");
+            storage.release.countDown();
+            assertNotNull(lookup.get(5, TimeUnit.SECONDS));
+        }
+        assertNull(cached.getAuth("token"));
+    }
+
+    @Test
+    public void lookupDuringClearIsNotCached() throws Exception {
+        var storage = new SlowReads();
+        var cached = new CachingDataAccess(storage, 100, new MetricsRegistry());
+        storage.insertAuth(new AuthData("token", "alice"));
+
+        storage.slow = true;
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            var lookup = executor.submit(() -> cached.getAuth("token"));
+            assertTrue(storage.read.await(5, TimeUnit.SECONDS));
+
+            cached.clearAuth();
+            storage.release.countDown();
+            assertNotNull(lookup.get(5, TimeUnit.SECONDS));
+        }
+        assertNull(cached.getAuth("token"));
+    }
+}
@@ -1,34 +1,126 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import metrics.MetricsRegistry;
 import model.AuthData;
 import model.GameData;
+import model.GameSummary;
 import model.UserData;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class DataAccessTests {
+    // Storage opened for the current test, and the directories it keeps its files in
+    private static final List<AutoCloseable> opened = new ArrayList<>();
+    private static final List<Path> directories = new ArrayList<>();
+
+    private interface Opener {
+        DataAccess open() throws DataAccessException, IOException;
+    }
+
     static class Implementations implements ArgumentsProvider {
         @Override
-        public Stream<? extends Arguments> provideArguments(ExtensionContext extensionContext) throws
-            DataAccessException {
-            var memory = new MemoryDataAccess();
-            var database = new DBDataAccess();
-            database.clearAuth();
-            database.clearGames();
-            database.clearUsers();
-            return Stream.of(memory, database).map(Arguments::of);
+        public Stream<? extends Arguments> provideArguments(ExtensionContext extensionContext) {
+            // Each one is opened just before its test runs, after the previous one was closed
+            return Stream.<Opener>of(
+                MemoryDataAccess::new,
+                () -> track(new JournalDataAccess(directory("journal"))),
+                () -> new CachingDataAccess(new MemoryDataAccess(), 100, new MetricsRegistry()),
+                () -> track(new LogDataAccess(directory("log"), 4096, 0)),
+                DataAccessTests::sharded,
+                DataAccessTests::database,
+                DataAccessTests::shardedDatabase,
+                DataAccessTests::replicatedDatabase
+            ).map(opener -> {
+                try {
+                    return Arguments.of(opener.open());
+                } catch (DataAccessException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
         }
     }
 
+    private static Path directory(String prefix) throws IOException {
+        var directory = Files.createTempDirectory(prefix);
+        directories.add(directory);
+        return directory;
+    }
+
+    private static <T extends DataAccess & AutoCloseable> T track(T storage) {
+        opened.add(storage);
+        return storage;
+    }
+
+    private static DataAccess sharded() {
+        var ids = new AtomicInteger(1);
+        return new ShardedDataAccess(new MemoryDataAccess(), ids::getAndAdd,
+            List.of(new MemoryDataAccess(), new MemoryDataAccess(), new MemoryDataAccess()));
+    }
+
+    private static DBDataAccess database() throws DataAccessException {
+        var database = new DBDataAccess();
+        database.clearAuth();
+        database.clearGames();
+        database.clearUsers();
+        return database;
+    }
+
+    private static DataAccess shardedDatabase() throws DataAccessException {
+        var database = database();
+        // Schemas on the test database's server stand in for shard servers
+        var primary = DatabaseManager.primary();
+        var sharded = new ShardedDataAccess(database, database::reserveGameIds, List.of(
+            new DBDataAccess(primary.withDatabase(primary.databaseName() + "_shard0")),
+            new DBDataAccess(primary.withDatabase(primary.databaseName() + "_shard1"))));
+        sharded.clearGames();
+        return sharded;
+    }
+
+    private static DataAccess replicatedDatabase() throws DataAccessException {
+        database();
+        // The primary stands in for its own replica
+        var primary = DatabaseManager.primary();
+        return new DBDataAccess(primary.withReplicas(List.of(primary)));
+    }
+
+    @AfterEach
+    public void closeStorage() throws Exception {
+        for (var storage : opened) {
+            storage.close();
+        }
+        opened.clear();
+        for (var directory : directories) {
+            try (var files = Files.walk(directory)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        directories.clear();
+    }
+
     @ParameterizedTest
     @ArgumentsSource(Implementations.class)
     void emptyGetUser(DataAccess dataAccess) throws DataAccessException {
@@ -67,6 +159,30 @@ public class DataAccessTests {
         assertThrows(DataAccessException.class, () -> dataAccess.insertUser(user));
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void insertUsers(DataAccess dataAccess) throws DataAccessException {
+        var users = new ArrayList<UserData>();
+        // More than one batch
+        for (var i = 0; i < 1500; i++) {
+            users.add(new UserData("user" + i, "password", i + "@mail.com"));
+        }
+        dataAccess.insertUsers(users);
+        assertEquals(users.getFirst(), dataAccess.getUser("user0"));
+        assertEquals(users.getLast(), dataAccess.getUser("user1499"));
+        assertDoesNotThrow(() -> dataAccess.insertUsers(List.of()));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void insertUsersDuplicate(DataAccess dataAccess) throws DataAccessException {
+        dataAccess.insertUser(new UserData("beans", "paradox", "em"));
+        var users = List.of(new UserData("first", "paradox", "em"), new UserData("beans", "other", "em"));
+        assertThrows(DataAccessException.class, () -> dataAccess.insertUsers(users));
+        assertNull(dataAccess.getUser("first"));
+        assertEquals("paradox", dataAccess.getUser("beans").password());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(Implementations.class)
     void clearUsers(DataAccess dataAccess) throws DataAccessException {
@@ -164,6 +280,50 @@ public class DataAccessTests {
         assertEquals(expected, actual);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void putGames(DataAccess dataAccess) throws DataAccessException {
+        dataAccess.putGame(new GameData(3, "apple", null, "old", new ChessGame()));
+        var games = new ArrayList<GameData>();
+        for (var id = 1; id <= 1500; id++) {
+            games.add(new GameData(id, "apple", id % 2 == 0 ? "dumpling" : null, "game" + id, new ChessGame()));
+        }
+        dataAccess.putGames(games);
+
+        assertEquals(games, dataAccess.getGames());
+        assertEquals("game3", dataAccess.getGame(3).gameName());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void getGamesByIds(DataAccess dataAccess) throws DataAccessException {
+        var games = new ArrayList<GameData>();
+        for (var id = 1; id <= 10; id++) {
+            games.add(new GameData(id, "apple", null, "game" + id, new ChessGame()));
+        }
+        dataAccess.putGames(games);
+
+        var found = dataAccess.getGamesByIds(List.of(7, 2, 42, 5));
+        assertEquals(List.of(games.get(6), games.get(1), games.get(4)), found);
+        assertEquals(List.of(), dataAccess.getGamesByIds(List.of()));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void getGameSummaries(DataAccess dataAccess) throws DataAccessException, InvalidMoveException {
+        var resigned = new ChessGame();
+        resigned.resign(TeamColor.WHITE);
+        var moved = new ChessGame();
+        moved.makeMove(new ChessMove(ChessPosition.fromString("e2"), ChessPosition.fromString("e4"), null));
+        dataAccess.putGame(new GameData(4, "apple", null, "moved", moved));
+        dataAccess.putGame(new GameData(3, "apple", "dumpling", "resigned", resigned));
+
+        var expected = List.of(
+            new GameSummary(3, "apple", "dumpling", "resigned", GameStatus.RESIGN, TeamColor.WHITE),
+            new GameSummary(4, "apple", null, "moved", GameStatus.PLAY, TeamColor.BLACK));
+        assertEquals(expected, dataAccess.getGameSummaries());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(Implementations.class)
     void emptyGetGames(DataAccess dataAccess) throws DataAccessException {
@@ -255,4 +415,53 @@ public class DataAccessTests {
     void emptyClearAuth(DataAccess dataAccess) {
         assertDoesNotThrow(dataAccess::clearAuth);
     }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void getAuthTimestamps(DataAccess dataAccess) throws DataAccessException {
+        var auth = new AuthData("oh", "yeah", 1000, 2000);
+        dataAccess.insertAuth(auth);
+        assertEquals(auth, dataAccess.getAuth(auth.authToken()));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void deleteExpiredAuth(DataAccess dataAccess) throws DataAccessException {
+        for (var i = 0; i < 5; i++) {
+            dataAccess.insertAuth(new AuthData("old" + i, "yeah", 0, 100 + i));
+        }
+        var current = new AuthData("current", "yeah", 0, 1000);
+        dataAccess.insertAuth(current);
+        var forever = new AuthData("forever", "yeah");
+        dataAccess.insertAuth(forever);
+
+        // Soonest expiring first
+        assertEquals(3, dataAccess.deleteExpiredAuth(500, 3));
+        assertNull(dataAccess.getAuth("old2"));
+        assertNotNull(dataAccess.getAuth("old3"));
+        assertEquals(2, dataAccess.deleteExpiredAuth(500, 3));
+        assertEquals(0, dataAccess.deleteExpiredAuth(500, 3));
+
+        assertEquals(current, dataAccess.getAuth("current"));
+        assertEquals(forever, dataAccess.getAuth("forever"));
+        assertEquals(1, dataAccess.deleteExpiredAuth(Long.MAX_VALUE, 3));
+        assertEquals(forever, dataAccess.getAuth("forever"));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(Implementations.class)
+    void revokedTokens(DataAccess dataAccess) throws DataAccessException {
+        dataAccess.insertRevokedToken("old", 100);
+        dataAccess.insertRevokedToken("current", 1000);
+        // Another node recording the same logout
+        dataAccess.insertRevokedToken("current", 1000);
+        assertEquals(Map.of("old", 100L, "current", 1000L), dataAccess.getRevokedTokens());
+
+        assertEquals(1, dataAccess.deleteExpiredRevokedTokens(500));
+        assertEquals(Map.of("current", 1000L), dataAccess.getRevokedTokens());
+        assertEquals(0, dataAccess.deleteExpiredRevokedTokens(500));
+
+        dataAccess.clearAuth();
+        assertTrue(dataAccess.getRevokedTokens().isEmpty());
+    }
 }
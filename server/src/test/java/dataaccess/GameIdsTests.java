@@ -0,0 +1,87 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameIdsTests {
+    private static final int BLOCK = 10;
+
+    /**
+     * Reserves IDs the way the game_ids table does, by bumping one shared
+     * counter, and counts the reservations.
+     */
+    private static class Counter implements GameIds.Reserve {
+        final AtomicInteger nextId = new AtomicInteger(1);
+        final AtomicInteger reservations = new AtomicInteger();
+
+        @Override
+        public int reserve(int count) {
+            reservations.incrementAndGet();
+            return nextId.getAndAdd(count);
+        }
+    }
+
+    @Test
+    public void reservesInBlocks() throws DataAccessException {
+        var counter = new Counter();
+        var ids = new GameIds(counter, BLOCK);
+        for (var expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, ids.next());
+        }
+        assertEquals(3, counter.reservations.get());
+    }
+
+    @Test
+    public void serversSharingStorageNeverOverlap() throws InterruptedException, ExecutionException {
+        var counter = new Counter();
+        var servers = List.of(new GameIds(counter, BLOCK), new GameIds(counter, BLOCK));
+        var seen = ConcurrentHashMap.<Integer>newKeySet();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var tasks = new ArrayList<Future<?>>();
+            for (var t = 0; t < 8; t++) {
+                var server = servers.get(t % 2);
+                tasks.add(executor.submit(() -> {
+                    for (var i = 0; i < 1000; i++) {
+                        assertTrue(seen.add(server.next()));
+                    }
+                    return null;
+                }));
+            }
+            for (var task : tasks) {
+                task.get();
+            }
+        }
+        assertEquals(8000, seen.size());
+    }
+
+    @Test
+    public void clearOnOneServerKeepsIdsUnique() throws DataAccessException {
+        var counter = new Counter();
+        var cleared = new GameIds(counter, BLOCK);
+        var other = new GameIds(counter, BLOCK);
+        var seen = new HashSet<Integer>();
+        for (var i = 0; i < 15; i++) {
+            assertTrue(seen.add(cleared.next()));
+            assertTrue(seen.add(other.next()));
+        }
+
+        // Clearing drops the cleared server's block but leaves the shared counter where it was,
+        // so the other server's reserved block can't be handed out again
+        cleared.reset();
+        for (var i = 0; i < 15; i++) {
+            assertTrue(seen.add(cleared.next()));
+            assertTrue(seen.add(other.next()));
+        }
+        assertTrue(counter.nextId.get() > 60);
+    }
+}
@@ -0,0 +1,91 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntMapTests {
+    @Test
+    public void matchesHashMap() {
+        var map = new IntMap<String>();
+        var expected = new HashMap<Integer, String>();
+        var random = new Random(42);
+        // A small key range, so keys collide and are removed and re-added often
+        for (var i = 0; i < 100_000; i++) {
+            var key = random.nextInt(2000) - 100;
+            switch (random.nextInt(4)) {
+                case 0, 1 -> assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                case 2 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        var entries = new TreeMap<Integer, String>();
+        map.forEach(entries::put);
+        assertEquals(new TreeMap<>(expected), entries);
+    }
+
+    @Test
+    public void conditionalChanges() {
+        var map = new IntMap<String>();
+        assertNull(map.putIfAbsent(1, "a"));
+        assertEquals("a", map.putIfAbsent(1, "b"));
+        assertEquals("a", map.computeIfAbsent(1, key -> "c"));
+        assertEquals("d", map.computeIfAbsent(2, key -> "d"));
+
+        assertFalse(map.remove(1, "b"));
+        assertTrue(map.remove(1, "a"));
+        assertNull(map.get(1));
+
+        for (var i = 0; i < 1000; i++) {
+            map.put(i, i % 3 == 0 ? "drop" : "keep");
+        }
+        assertEquals(334, map.removeIf("drop"::equals));
+        assertEquals(666, map.size());
+        assertTrue(map.values().stream().allMatch("keep"::equals));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(5));
+    }
+
+    @Test
+    public void concurrentWriters() throws InterruptedException, ExecutionException {
+        var map = new IntMap<Integer>();
+        var created = new AtomicInteger();
+        var writers = new ArrayList<Future<?>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (var thread = 0; thread < 8; thread++) {
+                var offset = thread * 10_000;
+                writers.add(executor.submit(() -> {
+                    for (var i = 0; i < 10_000; i++) {
+                        map.put(offset + i, i);
+                        // Every thread races for the same shared keys too
+                        map.computeIfAbsent(-(i % 500) - 1, key -> {
+                            created.incrementAndGet();
+                            return key;
+                        });
+                        assertEquals(i, map.get(offset + i));
+                    }
+                }));
+            }
+        }
+        for (var writer : writers) {
+            writer.get();
+        }
+
+        assertEquals(80_500, map.size());
+        assertEquals(500, created.get());
+        assertEquals(9_999, map.get(79_999));
+    }
+}
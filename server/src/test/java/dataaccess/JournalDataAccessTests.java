@@ -0,0 +1,196 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalDataAccessTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void reopen() throws DataAccessException, InvalidMoveException, IOException {
+        try (var data = new JournalDataAccess(directory)) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.insertAuth(new AuthData("token1", "alice"));
+            data.insertAuth(new AuthData("token2", "alice"));
+            data.deleteAuth("token1");
+
+            var game = new ChessGame();
+            var id = data.createGame("game", game);
+            game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+            data.putGame(new GameData(id, "alice", null, "game", game));
+        }
+
+        try (var data = new JournalDataAccess(directory)) {
+            assertEquals("alice@mail.com", data.getUser("alice").email());
+            assertNull(data.getAuth("token1"));
+            assertEquals("alice", data.getAuth("token2").username());
+
+            var game = data.getGame(1);
+            assertEquals("alice", game.whiteUsername());
+            assertEquals(ChessGame.TeamColor.BLACK, game.game().getTeamTurn());
+            assertEquals(2, data.createGame("another", new ChessGame()));
+        }
+    }
+
+    @Test
+    public void reopenAfterClear() throws DataAccessException, IOException {
+        try (var data = new JournalDataAccess(directory)) {
+            data.createGame("game", new ChessGame());
+            data.clearGames();
+            data.createGame("other", new ChessGame());
+        }
+
+        try (var data = new JournalDataAccess(directory)) {
+            assertEquals(1, data.getGames().size());
+            assertEquals("other", data.getGame(1).gameName());
+        }
+    }
+
+    @Test
+    public void tornLastEntry() throws DataAccessException, IOException {
+        try (var data = new JournalDataAccess(directory)) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+        }
+        // A crash partway through writing the next entry
+        Files.writeString(lastJournal(), "user {\"username\":\"bo", StandardOpenOption.APPEND);
+
+        try (var data = new JournalDataAccess(directory)) {
+            assertNotNull(data.getUser("alice"));
+            data.insertUser(new UserData("bob", "password", "bob@mail.com"));
+        }
+
+        try (var data = new JournalDataAccess(directory)) {
+            assertNotNull(data.getUser("bob"));
+        }
+    }
+
+    @Test
+    public void snapshotThenCrash() throws DataAccessException, InvalidMoveException, IOException {
+        // Never closed, so the changes after the snapshot are only in the journal
+        var data = new JournalDataAccess(directory, 0, 0);
+        data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+        data.insertAuth(new AuthData("token1", "alice"));
+        var game = new ChessGame();
+        var id = data.createGame("game", game);
+        data.createGame("other", new ChessGame());
+        data.snapshot();
+
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        data.putGame(new GameData(id, "alice", "bob", "game", game));
+        data.deleteAuth("token1");
+        data.insertUser(new UserData("bob", "password", "bob@mail.com"));
+
+        try (var reopened = new JournalDataAccess(directory, 0, 0)) {
+            assertEquals("alice@mail.com", reopened.getUser("alice").email());
+            assertNotNull(reopened.getUser("bob"));
+            assertNull(reopened.getAuth("token1"));
+            assertEquals(game, reopened.getGame(id).game());
+            assertEquals("bob", reopened.getGame(id).blackUsername());
+            assertEquals("other", reopened.getGame(2).gameName());
+            assertNull(reopened.getGame(2).whiteUsername());
+            assertEquals(3, reopened.createGame("another", new ChessGame()));
+        }
+    }
+
+    @Test
+    public void replayBatches() throws DataAccessException, IOException {
+        // Never closed, so the batches are only in the journal
+        var data = new JournalDataAccess(directory, 0, 0);
+        data.insertUsers(List.of(new UserData("alice", "password", "a@mail.com"),
+            new UserData("bob", "password", "b@mail.com")));
+        assertThrows(DataAccessException.class, () -> data.insertUsers(List.of(
+            new UserData("carol", "password", "c@mail.com"), new UserData("bob", "again", "b@mail.com"))));
+        data.putGames(List.of(new GameData(1, "alice", null, "one", new ChessGame()),
+            new GameData(2, null, "bob", "two", new ChessGame())));
+
+        try (var reopened = new JournalDataAccess(directory, 0, 0)) {
+            assertNotNull(reopened.getUser("alice"));
+            assertEquals("password", reopened.getUser("bob").password());
+            assertNull(reopened.getUser("carol"));
+            assertEquals("bob", reopened.getGame(2).blackUsername());
+            assertEquals(3, reopened.createGame("three", new ChessGame()));
+        }
+    }
+
+    @Test
+    public void expiredSessionsAfterSnapshot() throws DataAccessException, IOException {
+        // Never closed, so the sweep after the snapshot is only in the journal
+        var data = new JournalDataAccess(directory, 0, 0);
+        data.insertAuth(new AuthData("expired", "alice", 100, 200));
+        data.insertAuth(new AuthData("current", "alice", 100, 1000));
+        data.snapshot();
+        assertEquals(1, data.deleteExpiredAuth(500, 10));
+
+        try (var reopened = new JournalDataAccess(directory, 0, 0)) {
+            assertNull(reopened.getAuth("expired"));
+            assertEquals(new AuthData("current", "alice", 100, 1000), reopened.getAuth("current"));
+            assertEquals(1, reopened.deleteExpiredAuth(2000, 10));
+        }
+    }
+
+    @Test
+    public void revokedTokensAfterSnapshot() throws DataAccessException, IOException {
+        // Never closed, so the changes after the snapshot are only in the journal
+        var data = new JournalDataAccess(directory, 0, 0);
+        data.insertRevokedToken("expired", 200);
+        data.insertRevokedToken("current", 1000);
+        data.snapshot();
+        data.insertRevokedToken("later", 2000);
+        assertEquals(1, data.deleteExpiredRevokedTokens(500));
+
+        try (var reopened = new JournalDataAccess(directory, 0, 0)) {
+            assertEquals(Map.of("current", 1000L, "later", 2000L), reopened.getRevokedTokens());
+        }
+        // And from the snapshot taken on close
+        try (var reopened = new JournalDataAccess(directory, 0, 0)) {
+            assertEquals(Map.of("current", 1000L, "later", 2000L), reopened.getRevokedTokens());
+        }
+    }
+
+    @Test
+    public void snapshotDeletesJournals() throws DataAccessException, IOException {
+        try (var data = new JournalDataAccess(directory, 0, 0)) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            var before = lastJournal();
+            data.snapshot();
+            assertFalse(Files.exists(before));
+            assertNotEquals(before, lastJournal());
+            assertEquals(0, Files.size(lastJournal()));
+        }
+
+        try (var data = new JournalDataAccess(directory, 0, 0)) {
+            assertNotNull(data.getUser("alice"));
+        }
+        // Only the empty journal started by the snapshot taken on close
+        try (var files = Files.list(directory)) {
+            var names = files.map(path -> path.getFileName().toString()).sorted().toList();
+            assertEquals(2, names.size());
+            assertEquals(List.of(lastJournal().getFileName().toString(), "snapshot.bin"), names);
+        }
+    }
+
+    private Path lastJournal() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                .max(Path::compareTo)
+                .orElseThrow();
+        }
+    }
+}
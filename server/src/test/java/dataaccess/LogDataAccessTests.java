@@ -0,0 +1,258 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogDataAccessTests {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    private LogDataAccess open() throws DataAccessException {
+        return new LogDataAccess(directory, SEGMENT_BYTES, 0);
+    }
+
+    private static ChessMove move(String from, String to) {
+        return new ChessMove(ChessPosition.fromString(from), ChessPosition.fromString(to), null);
+    }
+
+    @Test
+    public void reopen() throws DataAccessException, InvalidMoveException {
+        try (var data = open()) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.insertAuth(new AuthData("token1", "alice"));
+            data.insertAuth(new AuthData("token2", "alice"));
+            data.deleteAuth("token1");
+
+            // Fool's mate, so the status has to survive too
+            var game = new ChessGame();
+            var id = data.createGame("game", game);
+            game.makeMove(move("f2", "f3"));
+            game.makeMove(move("e7", "e5"));
+            game.makeMove(move("g2", "g4"));
+            game.makeMove(move("d8", "h4"));
+            data.putGame(new GameData(id, "alice", null, "game", game));
+            data.createGame("resigned", new ChessGame());
+            var resigned = data.getGame(2);
+            resigned.game().resign(TeamColor.BLACK);
+            data.putGame(resigned);
+        }
+
+        try (var data = open()) {
+            assertEquals("alice@mail.com", data.getUser("alice").email());
+            assertNull(data.getAuth("token1"));
+            assertEquals("alice", data.getAuth("token2").username());
+
+            var game = data.getGame(1);
+            assertEquals("alice", game.whiteUsername());
+            assertNull(game.blackUsername());
+            assertEquals(GameStatus.CHECKMATE, game.game().status());
+            assertTrue(game.game().isInCheckmate(TeamColor.WHITE));
+            assertEquals(GameStatus.RESIGN, data.getGame(2).game().status());
+            assertEquals(TeamColor.BLACK, data.getGame(2).game().getTeamTurn());
+            assertEquals(3, data.createGame("another", new ChessGame()));
+        }
+    }
+
+    @Test
+    public void reopenExpiringSessions() throws DataAccessException {
+        try (var data = open()) {
+            data.insertAuth(new AuthData("expired", "alice", 100, 200));
+            data.insertAuth(new AuthData("current", "alice", 100, 1000));
+            data.insertAuth(new AuthData("forever", "alice"));
+            assertEquals(1, data.deleteExpiredAuth(500, 10));
+        }
+
+        try (var data = open()) {
+            assertNull(data.getAuth("expired"));
+            assertEquals(new AuthData("current", "alice", 100, 1000), data.getAuth("current"));
+            // The expiry index is rebuilt from the log
+            assertEquals(1, data.deleteExpiredAuth(2000, 10));
+            assertNotNull(data.getAuth("forever"));
+        }
+    }
+
+    @Test
+    public void reopenAfterClear() throws DataAccessException {
+        try (var data = open()) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.createGame("game", new ChessGame());
+            data.clearGames();
+            data.clearUsers();
+            data.createGame("other", new ChessGame());
+        }
+
+        try (var data = open()) {
+            assertNull(data.getUser("alice"));
+            assertEquals(1, data.getGames().size());
+            assertEquals("other", data.getGame(1).gameName());
+        }
+    }
+
+    @Test
+    public void reopenRevokedTokens() throws DataAccessException {
+        try (var data = open()) {
+            data.insertRevokedToken("expired", 200);
+            data.insertRevokedToken("current", 1000);
+            assertEquals(1, data.deleteExpiredRevokedTokens(500));
+            // Enough dead records that compacting copies the live revocation
+            for (var i = 0; i < 100; i++) {
+                data.insertAuth(new AuthData("token" + i, "alice"));
+                data.deleteAuth("token" + i);
+            }
+            assertTrue(data.compact());
+        }
+
+        try (var data = open()) {
+            assertEquals(Map.of("current", 1000L), data.getRevokedTokens());
+            data.clearAuth();
+        }
+
+        try (var data = open()) {
+            assertTrue(data.getRevokedTokens().isEmpty());
+        }
+    }
+
+    @Test
+    public void tornLastRecord() throws DataAccessException, IOException {
+        try (var data = open()) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.insertUser(new UserData("bob", "password", "bob@mail.com"));
+        }
+
+        // Corrupt the end of bob's record, as if the process died while writing it
+        var segment = directory.resolve("segment-00000001.log");
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            var length = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(length, 0);
+            var bobStart = 2 * Integer.BYTES + length.getInt(0);
+            channel.read(length.clear(), bobStart);
+            var bobEnd = bobStart + 2 * Integer.BYTES + length.getInt(0);
+            channel.write(ByteBuffer.wrap(new byte[]{42}), bobEnd - 1);
+        }
+
+        try (var data = open()) {
+            assertNotNull(data.getUser("alice"));
+            assertNull(data.getUser("bob"));
+            data.insertUser(new UserData("carol", "password", "carol@mail.com"));
+        }
+
+        try (var data = open()) {
+            assertNotNull(data.getUser("carol"));
+            assertNull(data.getUser("bob"));
+        }
+    }
+
+    @Test
+    public void reopenForcingEachWrite() throws DataAccessException {
+        try (var data = new LogDataAccess(directory, SEGMENT_BYTES, 0, 0)) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.createGame("game", new ChessGame());
+        }
+
+        try (var data = new LogDataAccess(directory, SEGMENT_BYTES, 0, 0)) {
+            assertEquals("alice@mail.com", data.getUser("alice").email());
+            assertEquals("game", data.getGame(1).gameName());
+        }
+    }
+
+    @Test
+    public void closeWhileCompacting() throws DataAccessException, InvalidMoveException {
+        var game = new ChessGame();
+        // Compacting and syncing constantly, so close is likely to land during both
+        try (var data = new LogDataAccess(directory, SEGMENT_BYTES, 1, 1)) {
+            var id = data.createGame("game", game);
+            for (var i = 0; i < 300; i++) {
+                var forward = i % 2 == 0;
+                game.makeMove(forward ? move("g1", "f3") : move("f3", "g1"));
+                game.makeMove(forward ? move("g8", "f6") : move("f6", "g8"));
+                data.putGame(new GameData(id, "alice", "bob", "game", game));
+            }
+        }
+
+        try (var data = open()) {
+            assertEquals(game, data.getGame(1).game());
+            assertEquals(1, data.getGames().size());
+        }
+    }
+
+    @Test
+    public void compactIntoManySegments() throws DataAccessException, IOException {
+        var email = "x".repeat(200) + "@mail.com";
+        try (var data = open()) {
+            // More live records than fit in two segments, then enough dead ones to be worth compacting
+            for (var i = 0; i < 60; i++) {
+                data.insertUser(new UserData("user" + i, "password", email));
+            }
+            for (var i = 0; i < 400; i++) {
+                data.insertAuth(new AuthData("token" + i, "user" + (i % 60)));
+                data.deleteAuth("token" + i);
+            }
+
+            assertTrue(data.compact());
+            assertTrue(data.segmentCount() >= 3);
+            assertEquals(data.segmentCount(), Files.list(directory).count());
+        }
+
+        try (var data = open()) {
+            for (var i = 0; i < 60; i++) {
+                assertEquals(email, data.getUser("user" + i).email());
+            }
+            assertNull(data.getAuth("token0"));
+        }
+    }
+
+    @Test
+    public void compact() throws DataAccessException, InvalidMoveException, IOException {
+        try (var data = open()) {
+            data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+            data.insertAuth(new AuthData("deleted", "alice"));
+            data.deleteAuth("deleted");
+            var game = new ChessGame();
+            var id = data.createGame("game", game);
+            // Every move leaves the previous record of the game dead
+            for (var i = 0; i < 300; i++) {
+                var forward = i % 2 == 0;
+                game.makeMove(forward ? move("b1", "c3") : move("c3", "b1"));
+                game.makeMove(forward ? move("b8", "c6") : move("c6", "b8"));
+                data.putGame(new GameData(id, "alice", "bob", "game", game));
+            }
+
+            var before = data.segmentCount();
+            assertTrue(before > 2);
+            assertTrue(data.compact());
+            assertTrue(data.segmentCount() < before);
+            assertFalse(data.compact());
+            assertEquals(data.segmentCount(), Files.list(directory).count());
+
+            assertEquals("alice@mail.com", data.getUser("alice").email());
+            assertEquals(game, data.getGame(id).game());
+        }
+
+        try (var data = open()) {
+            assertEquals("alice@mail.com", data.getUser("alice").email());
+            assertNull(data.getAuth("deleted"));
+            assertEquals("bob", data.getGame(1).blackUsername());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import model.GameData;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryDataAccessTests {
+    // Idle games are only moved when the tests say so
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void idleGamesMoveOffHeap() throws DataAccessException, InvalidMoveException {
+        var data = new MemoryDataAccess(NEVER);
+        var game = new ChessGame();
+        var id = data.createGame("game", game);
+        game.makeMove(new ChessMove(ChessPosition.fromString("e2"), ChessPosition.fromString("e4"), null));
+        data.putGame(new GameData(id, "alice", null, "game", game));
+        var resigned = new ChessGame();
+        resigned.resign(TeamColor.WHITE);
+        data.putGame(new GameData(data.createGame("resigned", new ChessGame()), null, "bob", "resigned", resigned));
+
+        // Both were just used, so they stay until they've been idle for a whole round
+        assertEquals(0, data.moveIdleGames());
+        assertEquals(2, data.moveIdleGames());
+
+        var restored = data.getGame(id);
+        assertNotSame(game, restored.game());
+        assertEquals(game, restored.game());
+        assertEquals("alice", restored.whiteUsername());
+        assertNull(restored.blackUsername());
+        assertEquals(TeamColor.BLACK, restored.game().getTeamTurn());
+        assertSame(restored, data.getGame(id));
+
+        assertEquals(2, data.getGames().size());
+        assertEquals(GameStatus.RESIGN, data.getGames().get(1).game().status());
+        var summary = data.getGameSummaries().get(1);
+        assertEquals("resigned", summary.gameName());
+        assertEquals("bob", summary.blackUsername());
+        assertEquals(GameStatus.RESIGN, summary.status());
+        assertEquals(3, data.createGame("another", new ChessGame()));
+
+        // Only the game that wasn't read again is moved
+        assertEquals(0, data.moveIdleGames());
+        data.getGame(3);
+        assertEquals(1, data.moveIdleGames());
+    }
+
+    @Test
+    public void putWhileMovingIsKept() throws Exception {
+        var data = new MemoryDataAccess(NEVER);
+        var expected = new ArrayList<ChessGame>();
+        for (var i = 0; i < 256; i++) {
+            data.createGame("game", new ChessGame());
+            expected.add(new ChessGame());
+        }
+        // Knights out and back again, so the moves can go on forever
+        var moves = new ArrayList<ChessMove>();
+        for (var move : new String[] {"g1f3", "g8f6", "f3g1", "f6g8"}) {
+            moves.add(new ChessMove(ChessPosition.fromString(move.substring(0, 2)),
+                ChessPosition.fromString(move.substring(2)), null));
+        }
+
+        try (var mover = Executors.newSingleThreadExecutor()) {
+            var moving = mover.submit(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    data.moveIdleGames();
+                }
+            });
+            try {
+                // Each game is used rarely enough to be moved between its moves
+                for (var i = 0; i < 100 * expected.size(); i++) {
+                    var id = i % expected.size() + 1;
+                    var move = moves.get(i / expected.size() % moves.size());
+                    var current = data.getGame(id);
+                    current.game().makeMove(move);
+                    data.putGame(current);
+                    expected.get(id - 1).makeMove(move);
+                }
+            } finally {
+                moving.cancel(true);
+            }
+        }
+        for (var id = 1; id <= expected.size(); id++) {
+            assertEquals(expected.get(id - 1), data.getGame(id).game(), "a move in game " + id + " was lost");
+        }
+        data.close();
+    }
+
+    @Test
+    public void longNamesStayOnHeap() throws DataAccessException {
+        var data = new MemoryDataAccess(NEVER);
+        var id = data.createGame("x".repeat(100), new ChessGame());
+        data.moveIdleGames();
+        assertEquals(0, data.moveIdleGames());
+        assertEquals("x".repeat(100), data.getGame(id).gameName());
+    }
+
+    @Test
+    public void clearIdleGames() throws DataAccessException {
+        var data = new MemoryDataAccess(NEVER);
+        for (var i = 0; i < 5000; i++) {
+            data.createGame("game" + i, new ChessGame());
+        }
+        data.moveIdleGames();
+        assertEquals(5000, data.moveIdleGames());
+        assertEquals("game4999", data.getGame(5000).gameName());
+
+        data.clearGames();
+        assertNull(data.getGame(1));
+        assertTrue(data.getGames().isEmpty());
+        assertEquals(1, data.createGame("game", new ChessGame()));
+    }
+
+    @Test
+    public void clearReusesOffHeapMemory() throws DataAccessException {
+        var direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(pool -> pool.getName().equals("direct")).findFirst().orElseThrow();
+        var data = new MemoryDataAccess(NEVER);
+        for (var i = 0; i < 5000; i++) {
+            data.createGame("game" + i, new ChessGame());
+        }
+        data.moveIdleGames();
+        data.moveIdleGames();
+        var allocated = direct.getTotalCapacity();
+
+        // The same IDs again after each clear, so they fit in the same memory
+        for (var round = 0; round < 3; round++) {
+            data.clearGames();
+            for (var i = 0; i < 5000; i++) {
+                data.createGame("game" + i, new ChessGame());
+            }
+            assertEquals(5000, data.moveIdleGames() + data.moveIdleGames());
+        }
+        assertTrue(direct.getTotalCapacity() <= allocated,
+            "direct memory grew from " + allocated + " to " + direct.getTotalCapacity() + " bytes");
+
+        // Records past the new games are empty, not left over from before
+        data.clearGames();
+        data.createGame("game", new ChessGame());
+        assertNull(data.getGame(2));
+        assertEquals(1, data.getGames().size());
+        data.close();
+    }
+
+    private static long heapUsed() {
+        // More than once, since one collection can leave garbage for the next
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Test
+    public void idleGamesLeaveHeap() throws DataAccessException {
+        var before = heapUsed();
+        var data = new MemoryDataAccess(NEVER);
+        for (var i = 0; i < 20000; i++) {
+            data.createGame("game" + i, new ChessGame());
+        }
+        var onHeap = heapUsed() - before;
+        data.moveIdleGames();
+        data.moveIdleGames();
+        var offHeap = heapUsed() - before;
+
+        // About 1.1KB a game on the heap, and 50 bytes once moved
+        assertTrue(offHeap < onHeap / 4, "heap went from " + onHeap + " to " + offHeap + " bytes");
+        assertEquals(20000, data.getGameSummaries().size());
+        data.close();
+    }
+
+    @Test
+    public void concurrentCreatesGetDistinctIds() throws DataAccessException, InterruptedException, ExecutionException {
+        var data = new MemoryDataAccess();
+        var creators = new ArrayList<Future<List<Integer>>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (var thread = 0; thread < 8; thread++) {
+                creators.add(executor.submit(() -> {
+                    var ids = new ArrayList<Integer>();
+                    for (var i = 0; i < 1000; i++) {
+                        ids.add(data.createGame("game", new ChessGame()));
+                    }
+                    return ids;
+                }));
+            }
+        }
+
+        var ids = new TreeSet<Integer>();
+        for (var creator : creators) {
+            ids.addAll(creator.get());
+        }
+        // Every block is used up, so there are no gaps
+        assertEquals(8000, ids.size());
+        assertEquals(1, ids.first());
+        assertEquals(8000, ids.last());
+        assertEquals(8000, data.getGames().size());
+    }
+}
@@ -0,0 +1,51 @@
+package dataaccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MigrationsTests {
+    @Test
+    public void versionsAreConsecutive() {
+        var migrations = Migrations.MIGRATIONS;
+        for (var i = 0; i < migrations.size(); i++) {
+            assertEquals(i + 1, migrations.get(i).version());
+            assertFalse(migrations.get(i).statements().isEmpty());
+        }
+    }
+
+    /**
+     * Needs MySQL, like DBDataAccess's cases in DataAccessTests. Uses a
+     * database of its own, since it drops every table.
+     */
+    @Test
+    public void applyToDatabase() throws DataAccessException, SQLException {
+        var primary = DatabaseManager.primary();
+        var database = primary.withDatabase(primary.databaseName() + "_migrations");
+        database.createDatabase();
+        execute(database, "DROP TABLE IF EXISTS user, auth, gameData, game_ids, revoked_token, schema_version");
+
+        assertEquals(Migrations.MIGRATIONS.size(), Migrations.apply(database));
+        assertEquals(0, Migrations.apply(database));
+
+        // As if every migration from 3 on ran but couldn't be recorded. The
+        // ALTERs would fail if they ran again, so they're found and skipped.
+        execute(database, "DELETE FROM schema_version WHERE version >= 3");
+        assertEquals(Migrations.MIGRATIONS.size() - 2, Migrations.apply(database));
+        assertEquals(0, Migrations.apply(database));
+
+        var data = new DBDataAccess(database);
+        data.clearAuth();
+        data.clearGames();
+        data.clearUsers();
+    }
+
+    private static void execute(DatabaseManager database, String statement)
+        throws DataAccessException, SQLException {
+        try (var connection = database.getConnection(); var prepared = connection.prepareStatement(statement)) {
+            prepared.execute();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package dataaccess;
+
+import model.AuthData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks which of the primary and its replicas reads go to, against fake
+ * servers behind a JDBC driver of the test's own, so MySQL isn't needed.
+ */
+public class ReplicaRoutingTests {
+    /**
+     * A MySQL server that knows only sessions, and can be taken down.
+     */
+    private static class FakeServer {
+        final Map<String, String> sessions = new ConcurrentHashMap<>();
+        final AtomicInteger connects = new AtomicInteger();
+        final AtomicInteger lookups = new AtomicInteger();
+        volatile boolean down;
+
+        Connection connect() throws SQLException {
+            connects.incrementAndGet();
+            if (down) {
+                throw new SQLException("Connection refused");
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "prepareStatement" -> statement((String) args[0]);
+                    case "getAutoCommit" -> true;
+                    case "isClosed" -> false;
+                    default -> null;
+                });
+        }
+
+        private PreparedStatement statement(String sql) {
+            var params = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "setString" -> params.add(args[1]);
+                    case "executeQuery" -> results(query(sql, params));
+                    case "executeUpdate" -> 1;
+                    case "execute" -> false;
+                    default -> null;
+                });
+        }
+
+        private List<Object[]> query(String sql, List<Object> params) {
+            if (sql.contains("GET_LOCK")) {
+                return List.<Object[]>of(new Object[]{1});
+            } else if (sql.contains("MAX(version)")) {
+                return List.<Object[]>of(new Object[]{Migrations.MIGRATIONS.size()});
+            } else if (sql.contains("FROM auth WHERE auth_token")) {
+                lookups.incrementAndGet();
+                var username = sessions.get((String) params.getFirst());
+                return username == null ? List.of() : List.<Object[]>of(new Object[]{username, 0L, 0L});
+            }
+            return List.of();
+        }
+
+        private static ResultSet results(List<Object[]> rows) {
+            var row = new AtomicInteger(-1);
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "next" -> row.incrementAndGet() < rows.size();
+                    case "getInt", "getString", "getLong" -> rows.get(row.get())[(int) args[0] - 1];
+                    default -> null;
+                });
+        }
+    }
+
+    private final Map<String, FakeServer> servers = new ConcurrentHashMap<>();
+    private Driver driver;
+
+    @BeforeEach
+    public void registerDriver() throws SQLException {
+        driver = new Driver() {
+            @Override
+            public Connection connect(String url, Properties info) throws SQLException {
+                return acceptsURL(url) ? servers.get(url.substring("jdbc:fake://".length())).connect() : null;
+            }
+
+            @Override
+            public boolean acceptsURL(String url) {
+                return url.startsWith("jdbc:fake://");
+            }
+
+            @Override
+            public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+                return new DriverPropertyInfo[0];
+            }
+
+            @Override
+            public int getMajorVersion() {
+                return 1;
+            }
+
+            @Override
+            public int getMinorVersion() {
+                return 0;
+            }
+
+            @Override
+            public boolean jdbcCompliant() {
+                return false;
+            }
+
+            @Override
+            public Logger getParentLogger() {
+                return Logger.getGlobal();
+            }
+        };
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterEach
+    public void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private DatabaseManager manager(String name) {
+        servers.put(name, new FakeServer());
+        return new DatabaseManager("jdbc:fake://" + name, "chess", "user", "password", List.of());
+    }
+
+    @Test
+    public void unreachableReplicaSkipped() throws DataAccessException, SQLException {
+        var database = manager("primary").withReplicas(List.of(manager("replica1"), manager("replica2")));
+        servers.get("replica1").down = true;
+
+        // Whichever replica's turn it is, every read lands on the one that's up
+        for (var i = 0; i < 4; i++) {
+            database.getReadConnection().close();
+        }
+        assertEquals(4, servers.get("replica2").connects.get());
+        assertEquals(0, servers.get("primary").connects.get());
+        // Once it failed, the down replica isn't tried again for a while
+        assertEquals(1, servers.get("replica1").connects.get());
+    }
+
+    @Test
+    public void primaryOnlyWhenNoReplicaReachable() throws DataAccessException, SQLException {
+        var database = manager("primary").withReplicas(List.of(manager("replica1"), manager("replica2")));
+        servers.get("replica1").down = true;
+        servers.get("replica2").down = true;
+
+        database.getReadConnection().close();
+        assertEquals(1, servers.get("replica1").connects.get());
+        assertEquals(1, servers.get("replica2").connects.get());
+        assertEquals(1, servers.get("primary").connects.get());
+    }
+
+    @Test
+    public void lookupsReadOwnWritesFromPrimary() throws DataAccessException {
+        var data = new DBDataAccess(manager("primary").withReplicas(List.of(manager("replica"))));
+        var primary = servers.get("primary");
+        var replica = servers.get("replica");
+
+        // The replica hasn't caught up with this server's insert yet
+        data.insertAuth(new AuthData("mine", "alice"));
+        primary.sessions.put("mine", "alice");
+        assertEquals("alice", data.getAuth("mine").username());
+        assertEquals(1, primary.lookups.get());
+        assertEquals(0, replica.lookups.get());
+
+        // Tokens this server hasn't written are read from the replica, which has them
+        primary.sessions.put("other", "bob");
+        replica.sessions.put("other", "bob");
+        assertEquals("bob", data.getAuth("other").username());
+        assertEquals(1, replica.lookups.get());
+        assertEquals(1, primary.lookups.get());
+    }
+
+    @Test
+    public void missesNotRetriedOnPrimary() throws DataAccessException {
+        var data = new DBDataAccess(manager("primary").withReplicas(List.of(manager("replica"))));
+
+        for (var i = 0; i < 10; i++) {
+            assertNull(data.getAuth("forged" + i));
+        }
+        assertEquals(10, servers.get("replica").lookups.get());
+        assertEquals(0, servers.get("primary").lookups.get());
+    }
+}
@@ -0,0 +1,76 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedDataAccessTests {
+    private MemoryDataAccess primary;
+    private List<MemoryDataAccess> shards;
+    private ShardedDataAccess data;
+
+    @BeforeEach
+    public void setup() {
+        primary = new MemoryDataAccess();
+        shards = List.of(new MemoryDataAccess(), new MemoryDataAccess(), new MemoryDataAccess());
+        var ids = new AtomicInteger(1);
+        data = new ShardedDataAccess(primary, ids::getAndAdd, shards);
+    }
+
+    @Test
+    public void gamesSpreadByID() throws DataAccessException {
+        for (var i = 0; i < 9; i++) {
+            data.createGame("game" + i, new ChessGame());
+        }
+
+        for (var shard = 0; shard < shards.size(); shard++) {
+            var games = shards.get(shard).getGames();
+            assertEquals(3, games.size());
+            for (var game : games) {
+                assertEquals(shard, game.gameID() % shards.size());
+            }
+        }
+        assertTrue(primary.getGames().isEmpty());
+
+        var listed = data.getGames().stream().map(GameData::gameID).toList();
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9), listed);
+
+        data.putGame(new GameData(5, "alice", null, "game4", new ChessGame()));
+        assertEquals("alice", shards.get(2).getGame(5).whiteUsername());
+        assertEquals("alice", data.getGame(5).whiteUsername());
+    }
+
+    @Test
+    public void usersAndSessionsOnPrimary() throws DataAccessException {
+        data.insertUser(new UserData("alice", "password", "alice@mail.com"));
+        data.insertAuth(new AuthData("token", "alice"));
+
+        assertNotNull(primary.getUser("alice"));
+        assertNotNull(primary.getAuth("token"));
+        for (var shard : shards) {
+            assertNull(shard.getUser("alice"));
+            assertNull(shard.getAuth("token"));
+        }
+    }
+
+    @Test
+    public void clearEveryShard() throws DataAccessException {
+        for (var i = 0; i < 5; i++) {
+            data.createGame("game" + i, new ChessGame());
+        }
+        data.clearGames();
+
+        assertTrue(data.getGames().isEmpty());
+        for (var shard : shards) {
+            assertTrue(shard.getGames().isEmpty());
+        }
+    }
+}
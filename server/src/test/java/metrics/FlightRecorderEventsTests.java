@@ -0,0 +1,63 @@
+package metrics;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import dataaccess.MemoryDataAccess;
+import dataaccess.MeteredDataAccess;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecorderEventsTests {
+    @Test
+    public void recordsMoveAndDatabaseEvents() throws Exception {
+        var data = new MeteredDataAccess(new MemoryDataAccess(), new MetricsRegistry());
+        var gameId = data.createGame("game", new ChessGame());
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            recording.enable("chess.Move");
+            recording.enable("chess.Database");
+            recording.start();
+
+            var game = data.getGame(gameId);
+            game.game().makeMove(move, gameId);
+            data.putGame(game);
+
+            recording.stop();
+            var file = Files.createTempFile("chess", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        var moves = events.stream().filter(e -> e.getEventType().getName().equals("chess.Move")).toList();
+        assertEquals(1, moves.size());
+        assertEquals(gameId, moves.get(0).getInt("gameId"));
+        assertTrue(moves.get(0).getBoolean("legal"));
+        assertEquals("PLAY", moves.get(0).getString("status"));
+
+        var calls = events.stream()
+            .filter(e -> e.getEventType().getName().equals("chess.Database"))
+            .map(e -> e.getString("call"))
+            .toList();
+        assertEquals(List.of("getGame", "putGame"), calls);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(new DatabaseEvent().isEnabled());
+        assertFalse(new BroadcastEvent().isEnabled());
+    }
+}
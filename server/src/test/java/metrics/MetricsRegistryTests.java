@@ -0,0 +1,76 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTests {
+    @Test
+    public void histogramBucketsAreContiguous() {
+        for (var value = 0L; value < 100_000; value++) {
+            var index = Histogram.index(value);
+            assertTrue(value <= Histogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(value > Histogram.upperBound(index - 1));
+            }
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void histogramQuantiles() {
+        var histogram = new Histogram();
+        for (var i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        var median = histogram.quantileNanos(0.5);
+        var p99 = histogram.quantileNanos(0.99);
+        assertEquals(500_000, median, 500_000 / Histogram.SUB_BUCKETS);
+        assertEquals(990_000, p99, 990_000 / Histogram.SUB_BUCKETS);
+        assertEquals(0, new Histogram().quantileNanos(0.5));
+    }
+
+    @Test
+    public void prometheusText() throws IOException {
+        var registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests", "route", "/game").add(3);
+        registry.counter("requests_total", "Requests", "route", "/user").increment();
+        registry.gauge("sockets", "Open sockets", () -> 2);
+        var histogram = registry.histogram("latency_seconds", "Latency", "route", "/game");
+        histogram.record(1500);
+        histogram.record(2_000_000);
+
+        var out = new StringBuilder();
+        registry.write(out);
+        var text = out.toString();
+
+        assertTrue(text.contains("# TYPE requests_total counter\n"));
+        assertTrue(text.contains("requests_total{route=\"/game\"} 3\n"));
+        assertTrue(text.contains("requests_total{route=\"/user\"} 1\n"));
+        assertTrue(text.contains("sockets 2.0\n"));
+        assertTrue(text.contains("# TYPE latency_seconds histogram\n"));
+        assertTrue(text.contains("latency_seconds_bucket{route=\"/game\",le=\"2.048E-6\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{route=\"/game\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("latency_seconds_count{route=\"/game\"} 2\n"));
+    }
+
+    @Test
+    public void labelsInAnyOrder() {
+        var registry = new MetricsRegistry();
+        var counter = registry.counter("errors_total", "Errors", "route", "/game", "method", "GET");
+        assertSame(counter, registry.counter("errors_total", "Errors", "route", "/game", "method", "GET"));
+        assertSame(counter, registry.counter("errors_total", "Errors", "method", "GET", "route", "/game"));
+        assertNotSame(counter, registry.counter("errors_total", "Errors", "method", "PUT", "route", "/game"));
+    }
+
+    @Test
+    public void sameNameDifferentType() {
+        var registry = new MetricsRegistry();
+        registry.counter("name", "help");
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("name", "help"));
+    }
+}
@@ -0,0 +1,171 @@
+package server;
+
+import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import server.ServerInterface.*;
+import websocket.commands.MakeMoveCommand;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+import websocket.messages.ServerMessage;
+import websocket.messages.ServerMessage.ServerMessageType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.WebSocket;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs a whole server on in-memory storage, over real HTTP and websockets.
+ */
+public class ServerTests {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final Gson gson = new Gson();
+    private Server server;
+    private String url;
+
+    private void start(ServerConfig config) {
+        start(config, new MemoryDataAccess());
+    }
+
+    private void start(ServerConfig config, DataAccess storage) {
+        server = new Server(config, storage);
+        url = "localhost:" + server.run(0);
+    }
+
+    @AfterEach
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private <T> T http(String method, String path, String authToken, Object body, Class<T> response)
+        throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create("http://" + url + path))
+            .method(method, body != null ? BodyPublishers.ofString(gson.toJson(body)) : BodyPublishers.noBody());
+        if (authToken != null) {
+            request.header("authorization", authToken);
+        }
+        var result = client.send(request.build(), BodyHandlers.ofString());
+        assertEquals(200, result.statusCode(), result.body());
+        return gson.fromJson(result.body(), response);
+    }
+
+    private AuthData register(String username) throws IOException, InterruptedException {
+        return http("POST", "/user", null, new UserData(username, "password", username + "@mail.com"),
+            AuthData.class);
+    }
+
+    /**
+     * A websocket that queues every message it receives.
+     */
+    private class Socket implements WebSocket.Listener {
+        final BlockingQueue<ServerMessage> received = new LinkedBlockingQueue<>();
+        final StringBuilder partial = new StringBuilder();
+        final WebSocket webSocket;
+
+        Socket() {
+            webSocket = client.newWebSocketBuilder().buildAsync(URI.create("ws://" + url + "/ws"), this).join();
+        }
+
+        void send(UserGameCommand command) {
+            webSocket.sendText(gson.toJson(command), true).join();
+        }
+
+        ServerMessage next(ServerMessageType type) throws InterruptedException {
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (true) {
+                var message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                assertNotNull(message, "No " + type + " received");
+                if (message.getServerMessageType() == type) {
+                    return message;
+                }
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                received.add(gson.fromJson(partial.toString(), ServerMessage.class));
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+
+    @Test
+    public void moveLatencyPerGame() throws Exception {
+        start(ServerConfig.defaults());
+        var alice = register("alice");
+        var gameId = http("POST", "/game", alice.authToken(), new CreateGameRequest("game"),
+            CreateGameResponse.class).gameID();
+        http("PUT", "/game", alice.authToken(), new JoinGameRequest(TeamColor.WHITE, gameId), Object.class);
+
+        var socket = new Socket();
+        socket.send(new UserGameCommand(CommandType.CONNECT, alice.authToken(), gameId));
+        socket.next(ServerMessageType.LOAD_GAME);
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        socket.send(new MakeMoveCommand(alice.authToken(), gameId, move));
+        socket.next(ServerMessageType.LOAD_GAME);
+
+        // The delivery is recorded just after the board is sent
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        MoveLatencyResponse latency;
+        do {
+            latency = http("GET", "/metrics/games", null, null, MoveLatencyResponse.class);
+        } while (latency.games().isEmpty() && System.nanoTime() < deadline);
+        assertEquals(1, latency.games().size());
+        var game = latency.games().getFirst();
+        assertEquals(gameId, game.gameID());
+        assertEquals(1, game.deliveries());
+        assertTrue(game.p50Millis() > 0);
+        assertTrue(game.maxMillis() >= game.p50Millis());
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        var props = new Properties();
+        props.setProperty("chess.threads", "virtual");
+        var handledOn = new LinkedBlockingQueue<Thread>();
+        start(ServerConfig.fromProperties(props), new MemoryDataAccess() {
+            @Override
+            public void insertUser(UserData user) throws DataAccessException {
+                handledOn.add(Thread.currentThread());
+                super.insertUser(user);
+            }
+        });
+
+        // Registering stores the user on the thread handling the request
+        var alice = register("alice");
+        var thread = handledOn.poll(5, TimeUnit.SECONDS);
+        assertNotNull(thread);
+        assertTrue(thread.isVirtual(), thread.toString());
+
+        var gameId = http("POST", "/game", alice.authToken(), new CreateGameRequest("game"),
+            CreateGameResponse.class).gameID();
+        var socket = new Socket();
+        socket.send(new UserGameCommand(CommandType.CONNECT, alice.authToken(), gameId));
+        assertEquals(gameId, socket.next(ServerMessageType.LOAD_GAME).gameID());
+    }
+}
@@ -0,0 +1,81 @@
+package service;
+
+import dataaccess.DataAccessException;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import service.ServiceException.ErrorKind;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTests {
+    private static final Histogram TIME = new MetricsRegistry().histogram("test_seconds", "Time");
+
+    private final PasswordHasher hasher = new PasswordHasher(1, 1);
+
+    @AfterEach
+    public void shutdown() {
+        hasher.shutdown();
+    }
+
+    private void awaitStats(int active, int queued) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hasher.stats().active() != active || hasher.stats().queued() != queued) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + hasher.stats());
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void hashAndCheck() throws ServiceException, DataAccessException {
+        var hashed = hasher.hash("password");
+        assertNotEquals("password", hashed);
+        assertTrue(hasher.check("password", hashed));
+        assertFalse(hasher.check("wrong", hashed));
+        assertEquals(3, hasher.stats().completed());
+    }
+
+    @Test
+    public void shedsWhenSaturated() throws Exception {
+        var release = new CountDownLatch(1);
+        try (var callers = Executors.newFixedThreadPool(2)) {
+            // One running and one queued fills a pool of one thread with a queue of one
+            for (var i = 0; i < 2; i++) {
+                callers.submit(() -> hasher.run(() -> release.await(5, TimeUnit.SECONDS), TIME));
+            }
+            awaitStats(1, 1);
+
+            var error = assertThrows(ServiceException.class, () -> hasher.hash("password"));
+            assertEquals(ErrorKind.Overloaded, error.kind());
+            assertEquals(1, hasher.stats().rejected());
+            release.countDown();
+        }
+
+        // Once the backlog drains it accepts work again
+        assertTrue(hasher.check("password", hasher.hash("password")));
+    }
+
+    @Test
+    public void interruptedWhileWaiting() throws Exception {
+        var release = new CountDownLatch(1);
+        try (var callers = Executors.newSingleThreadExecutor()) {
+            var caller = callers.submit(() -> {
+                Thread.currentThread().interrupt();
+                // Not Overloaded, which would tell the client to come back later
+                assertThrows(DataAccessException.class,
+                    () -> hasher.run(() -> release.await(5, TimeUnit.SECONDS), TIME));
+                return Thread.currentThread().isInterrupted();
+            });
+            assertTrue(caller.get(5, TimeUnit.SECONDS));
+        }
+
+        // The abandoned task was cancelled rather than left holding the thread
+        awaitStats(0, 0);
+        release.countDown();
+    }
+}
@@ -1,25 +1,42 @@
 package service;
 
-import chess.ChessGame;
+import chess.ChessGame.GameStatus;
 import chess.ChessGame.TeamColor;
+import chess.ChessMove;
+import chess.ChessPosition;
 import dataaccess.DataAccessException;
 import dataaccess.MemoryDataAccess;
-import model.GameData;
+import metrics.MetricsRegistry;
+import metrics.MoveTrace;
+import metrics.MoveTrace.Phase;
+import model.AuthData;
+import model.GameSummary;
 import model.UserData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import service.ServiceException.ErrorKind;
 
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ServiceTests {
+    // Shared, so each test doesn't start a pool of its own
+    private static final PasswordHasher HASHER = PasswordHasher.forCores();
+    private static final Duration LIFETIME = Duration.ofDays(1);
+
     UserData user1 = new UserData("strength", "weakness", "journey@destination.com");
     UserData user2 = new UserData("favorite_color", "yellow", "bridge@death.com");
     String gameName = "game";
 
     MemoryDataAccess dataAccess = new MemoryDataAccess();
+    Service service = new Service(HASHER, null, LIFETIME);
 
     @BeforeEach
     public void clearDatabase() {
@@ -30,24 +47,24 @@ public class ServiceTests {
 
     @Test
     public void registerUserSuccess() throws DataAccessException, ServiceException {
-        var authData = Service.registerUser(user1, dataAccess);
+        var authData = service.registerUser(user1, dataAccess);
         assertEquals(user1.username(), authData.username());
     }
 
     @Test
     public void registerUserExisting() throws DataAccessException, ServiceException {
-        Service.registerUser(user1, dataAccess);
+        service.registerUser(user1, dataAccess);
 
         var sameUsername = new UserData(user1.username(), "in", "numbers@hotmail.com");
-        var error = assertThrows(ServiceException.class, () -> Service.registerUser(sameUsername, dataAccess));
+        var error = assertThrows(ServiceException.class, () -> service.registerUser(sameUsername, dataAccess));
         assertEquals(ErrorKind.AlreadyExists, error.kind());
     }
 
     @Test
     public void loginSuccess() throws DataAccessException, ServiceException {
-        var auth1 = Service.registerUser(user1, dataAccess);
-        var auth2 = Service.login(user1.username(), user1.password(), dataAccess);
-        var auth3 = Service.login(user1.username(), user1.password(), dataAccess);
+        var auth1 = service.registerUser(user1, dataAccess);
+        var auth2 = service.login(user1.username(), user1.password(), dataAccess);
+        var auth3 = service.login(user1.username(), user1.password(), dataAccess);
         assertEquals(user1.username(), auth2.username());
         assertNotEquals(auth1.authToken(), auth2.authToken());
         assertNotEquals(auth2.authToken(), auth3.authToken());
@@ -56,90 +73,91 @@ public class ServiceTests {
     @Test
     public void loginNonexistent() {
         var error =
-            assertThrows(ServiceException.class, () -> Service.login(user1.username(), user1.password(), dataAccess));
+            assertThrows(ServiceException.class, () -> service.login(user1.username(), user1.password(), dataAccess));
         assertEquals(ErrorKind.LoginFail, error.kind());
     }
 
     @Test
     public void loginWrongPassword() throws ServiceException, DataAccessException {
-        Service.registerUser(user2, dataAccess);
-        assertThrows(ServiceException.class, () -> Service.login(user2.username(), "blue", dataAccess));
+        service.registerUser(user2, dataAccess);
+        assertThrows(ServiceException.class, () -> service.login(user2.username(), "blue", dataAccess));
     }
 
     @Test
     public void logoutSuccess() throws ServiceException, DataAccessException {
-        var auth = Service.registerUser(user1, dataAccess);
+        var auth = service.registerUser(user1, dataAccess);
 
-        Service.logout(auth.authToken(), dataAccess);
+        service.logout(auth.authToken(), dataAccess);
     }
 
     @Test
     public void logoutNonexistent() {
-        var error = assertThrows(ServiceException.class, () -> Service.logout("nope way", dataAccess));
+        var error = assertThrows(ServiceException.class, () -> service.logout("nope way", dataAccess));
         assertEquals(ErrorKind.Unauthorized, error.kind());
     }
 
     @Test
     public void createGameSuccess() throws ServiceException, DataAccessException {
-        var auth = Service.registerUser(user1, dataAccess);
-        var game1 = Service.createGame(gameName, auth.authToken(), dataAccess);
-        var game2 = Service.createGame(gameName, auth.authToken(), dataAccess);
+        var auth = service.registerUser(user1, dataAccess);
+        var game1 = service.createGame(gameName, auth.authToken(), dataAccess);
+        var game2 = service.createGame(gameName, auth.authToken(), dataAccess);
         assertNotEquals(game1, game2);
     }
 
     @Test
     public void createGameUnauthorized() {
-        var error = assertThrows(ServiceException.class, () -> Service.createGame("game", "no chance", dataAccess));
+        var error = assertThrows(ServiceException.class, () -> service.createGame("game", "no chance", dataAccess));
         assertEquals(ErrorKind.Unauthorized, error.kind());
     }
 
     @Test
     public void listGamesSuccess() throws ServiceException, DataAccessException {
-        var auth = Service.registerUser(user1, dataAccess);
+        var auth = service.registerUser(user1, dataAccess);
         var gameName = "game";
-        var game1 = Service.createGame(gameName, auth.authToken(), dataAccess);
-        var game2 = Service.createGame(gameName, auth.authToken(), dataAccess);
+        var game1 = service.createGame(gameName, auth.authToken(), dataAccess);
+        var game2 = service.createGame(gameName, auth.authToken(), dataAccess);
 
-        var actual = Service.listGames(auth.authToken(), dataAccess);
-        var ids = actual.stream().map(GameData::gameID).toList();
+        var actual = service.listGames(auth.authToken(), dataAccess);
+        var ids = actual.stream().map(GameSummary::gameID).toList();
         assertEquals(List.of(game1, game2), ids);
     }
 
     @Test
     public void listGamesUnauthorized() {
-        var error = assertThrows(ServiceException.class, () -> Service.listGames("nah", dataAccess));
+        var error = assertThrows(ServiceException.class, () -> service.listGames("nah", dataAccess));
         assertEquals(ErrorKind.Unauthorized, error.kind());
     }
 
     @Test
     public void joinGameSuccess() throws ServiceException, DataAccessException {
-        var auth1 = Service.registerUser(user1, dataAccess);
-        var auth2 = Service.registerUser(user2, dataAccess);
+        var auth1 = service.registerUser(user1, dataAccess);
+        var auth2 = service.registerUser(user2, dataAccess);
         var gameName = "game";
-        var game = Service.createGame(gameName, auth1.authToken(), dataAccess);
+        var game = service.createGame(gameName, auth1.authToken(), dataAccess);
 
-        Service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
+        service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
         // Test for idempotence
-        Service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
-        Service.joinGame(game, TeamColor.BLACK, auth2.authToken(), dataAccess);
+        service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
+        service.joinGame(game, TeamColor.BLACK, auth2.authToken(), dataAccess);
 
-        var expected = new GameData(game, user1.username(), user2.username(), gameName, new ChessGame());
-        assertEquals(List.of(expected), Service.listGames(auth1.authToken(), dataAccess));
+        var expected = new GameSummary(game, user1.username(), user2.username(), gameName, GameStatus.PLAY,
+            TeamColor.WHITE);
+        assertEquals(List.of(expected), service.listGames(auth1.authToken(), dataAccess));
     }
 
     @Test
     public void joinGameUnauthorized() {
-        var error = assertThrows(ServiceException.class, () -> Service.joinGame(0, TeamColor.WHITE, "heh", dataAccess));
+        var error = assertThrows(ServiceException.class, () -> service.joinGame(0, TeamColor.WHITE, "heh", dataAccess));
         assertEquals(ErrorKind.Unauthorized, error.kind());
     }
 
     @Test
     public void joinGameNonexistent() throws ServiceException, DataAccessException {
-        var auth = Service.registerUser(user1, dataAccess);
+        var auth = service.registerUser(user1, dataAccess);
 
         var error = assertThrows(
             ServiceException.class,
-            () -> Service.joinGame(0, TeamColor.WHITE, auth.authToken(), dataAccess)
+            () -> service.joinGame(0, TeamColor.WHITE, auth.authToken(), dataAccess)
         );
 
         assertEquals(ErrorKind.DoesNotExist, error.kind());
@@ -147,15 +165,15 @@ public class ServiceTests {
 
     @Test
     public void joinGameAlreadyTaken() throws ServiceException, DataAccessException {
-        var auth1 = Service.registerUser(user1, dataAccess);
-        var auth2 = Service.registerUser(user2, dataAccess);
-        var game = Service.createGame(gameName, auth1.authToken(), dataAccess);
+        var auth1 = service.registerUser(user1, dataAccess);
+        var auth2 = service.registerUser(user2, dataAccess);
+        var game = service.createGame(gameName, auth1.authToken(), dataAccess);
 
-        Service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
+        service.joinGame(game, TeamColor.WHITE, auth1.authToken(), dataAccess);
 
         var error = assertThrows(
             ServiceException.class,
-            () -> Service.joinGame(game, TeamColor.WHITE, auth2.authToken(), dataAccess)
+            () -> service.joinGame(game, TeamColor.WHITE, auth2.authToken(), dataAccess)
         );
 
         assertEquals(ErrorKind.AlreadyExists, error.kind());
@@ -163,20 +181,246 @@ public class ServiceTests {
 
     @Test
     public void clear() throws DataAccessException, ServiceException {
-        var auth1 = Service.registerUser(user1, dataAccess);
-        Service.createGame(gameName, auth1.authToken(), dataAccess);
+        var auth1 = service.registerUser(user1, dataAccess);
+        service.createGame(gameName, auth1.authToken(), dataAccess);
 
-        Service.clear(dataAccess);
+        service.clear(dataAccess);
 
         var loginError =
-            assertThrows(ServiceException.class, () -> Service.login(user1.username(), user1.password(), dataAccess));
+            assertThrows(ServiceException.class, () -> service.login(user1.username(), user1.password(), dataAccess));
         assertEquals(ErrorKind.LoginFail, loginError.kind());
 
-        var logoutError = assertThrows(ServiceException.class, () -> Service.logout(auth1.authToken(), dataAccess));
+        var logoutError = assertThrows(ServiceException.class, () -> service.logout(auth1.authToken(), dataAccess));
         assertEquals(ErrorKind.Unauthorized, logoutError.kind());
 
-        var auth2 = Service.registerUser(user2, dataAccess);
-        var games = Service.listGames(auth2.authToken(), dataAccess);
+        var auth2 = service.registerUser(user2, dataAccess);
+        var games = service.listGames(auth2.authToken(), dataAccess);
         assertEquals(0, games.size());
     }
+
+    @Test
+    public void signedTokenSession() throws DataAccessException, ServiceException {
+        var service = new Service(HASHER, new SignedTokens("secret".getBytes(), Duration.ofHours(1)), LIFETIME);
+        var auth = service.registerUser(user1, dataAccess);
+        assertTrue(SignedTokens.isSigned(auth.authToken()));
+        // Signed tokens aren't stored
+        assertNull(dataAccess.getAuth(auth.authToken()));
+
+        service.createGame(gameName, auth.authToken(), dataAccess);
+        service.logout(auth.authToken(), dataAccess);
+
+        var error = assertThrows(ServiceException.class, () -> service.listGames(auth.authToken(), dataAccess));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+    }
+
+    @Test
+    public void signedTokensCleared() throws DataAccessException, ServiceException {
+        var service = new Service(HASHER, new SignedTokens("secret".getBytes(), Duration.ofHours(1)), LIFETIME);
+        var auth = service.registerUser(user1, dataAccess);
+        service.clear(dataAccess);
+
+        var error = assertThrows(ServiceException.class, () -> service.listGames(auth.authToken(), dataAccess));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+        // Sessions made right after the clear are still accepted
+        var next = service.registerUser(user1, dataAccess);
+        assertTrue(service.listGames(next.authToken(), dataAccess).isEmpty());
+    }
+
+    @Test
+    public void servicesKeepOwnTokens() throws DataAccessException, ServiceException {
+        // As with two servers in one process, one issuing signed tokens and one not
+        var signed = new Service(HASHER, new SignedTokens("secret".getBytes(), Duration.ofHours(1)), LIFETIME);
+        var random = new Service(HASHER, null, Duration.ofMinutes(5));
+
+        var signedAuth = signed.registerUser(user1, dataAccess);
+        var randomAuth = random.registerUser(user2, dataAccess);
+        assertTrue(SignedTokens.isSigned(signedAuth.authToken()));
+        assertFalse(SignedTokens.isSigned(randomAuth.authToken()));
+        var stored = dataAccess.getAuth(randomAuth.authToken());
+        assertEquals(Duration.ofMinutes(5).toMillis(), stored.expiresAt() - stored.issuedAt());
+        assertEquals(user1.username(), signed.authenticate(signedAuth.authToken(), dataAccess).username());
+    }
+
+    @Test
+    public void signedTokensRevokedElsewhere() {
+        // Two nodes with the same key
+        var tokens = new SignedTokens("secret".getBytes(), Duration.ofHours(1));
+        var other = new SignedTokens("secret".getBytes(), Duration.ofHours(1));
+        var token = tokens.issue(user1.username());
+        assertNotNull(other.verify(token));
+
+        other.revoke(token);
+        assertNull(other.verify(token));
+        assertNotNull(tokens.verify(token));
+
+        tokens.revokeIssuedUntil(System.currentTimeMillis());
+        assertNull(tokens.verify(token));
+        assertNotNull(tokens.verify(tokens.issue(user2.username())));
+    }
+
+    @Test
+    public void signedTokenRevokedAfterRestart() throws DataAccessException, ServiceException {
+        var tokens = new SignedTokens("secret".getBytes(), Duration.ofHours(1));
+        var service = new Service(HASHER, tokens, LIFETIME);
+        var loggedOut = service.registerUser(user1, dataAccess);
+        service.logout(loggedOut.authToken(), dataAccess);
+
+        // A node starting up with the same key and storage
+        var restarted = new Service(HASHER, new SignedTokens("secret".getBytes(), Duration.ofHours(1)), LIFETIME);
+        // Another user, since the same user's tokens from the same second are identical
+        var current = restarted.registerUser(user2, dataAccess);
+        restarted.loadRevokedTokens(dataAccess);
+        var error = assertThrows(ServiceException.class,
+            () -> restarted.listGames(loggedOut.authToken(), dataAccess));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+        assertTrue(restarted.listGames(current.authToken(), dataAccess).isEmpty());
+
+        // A clear stores its cutoff too
+        service.clear(dataAccess);
+        var afterClear = new Service(HASHER, new SignedTokens("secret".getBytes(), Duration.ofHours(1)), LIFETIME);
+        afterClear.loadRevokedTokens(dataAccess);
+        error = assertThrows(ServiceException.class, () -> afterClear.listGames(current.authToken(), dataAccess));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+    }
+
+    @Test
+    public void revokedTokensPruned() {
+        var tokens = new SignedTokens("secret".getBytes(), Duration.ofHours(1));
+        tokens.revoke(tokens.issue(user1.username()));
+        tokens.revoke(tokens.issue(user2.username()));
+        tokens.prune(System.currentTimeMillis());
+        assertEquals(2, tokens.revokedCount());
+
+        // Expired by then, so rejected without being remembered
+        tokens.prune(System.currentTimeMillis() + Duration.ofHours(2).toMillis());
+        assertEquals(0, tokens.revokedCount());
+    }
+
+    @Test
+    public void signedTokenTampered() {
+        var tokens = new SignedTokens("secret".getBytes(), Duration.ofHours(1));
+        var token = tokens.issue(user1.username());
+        assertEquals(user1.username(), tokens.verify(token).username());
+
+        var otherName = Base64.getUrlEncoder().encodeToString("x".getBytes());
+        var otherUser = token.replaceFirst("\\.[^.]+\\.", "." + otherName + ".");
+        assertNull(tokens.verify(otherUser));
+        var otherKey = new SignedTokens("other".getBytes(), Duration.ofHours(1));
+        assertNull(otherKey.verify(token));
+    }
+
+    @Test
+    public void signedTokenExpired() {
+        var tokens = new SignedTokens("secret".getBytes(), Duration.ofSeconds(-1));
+        assertNull(tokens.verify(tokens.issue(user1.username())));
+    }
+
+    @Test
+    public void expiredSession() throws DataAccessException, ServiceException {
+        var auth = service.registerUser(user1, dataAccess);
+        assertTrue(auth.expiresAt() > System.currentTimeMillis());
+
+        var now = System.currentTimeMillis();
+        dataAccess.insertAuth(new AuthData("expired", user1.username(), now - 2000, now - 1000));
+        var error = assertThrows(ServiceException.class, () -> service.listGames("expired", dataAccess));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+        var async = AsyncService.authenticate("expired", service, dataAccess.async());
+        error = assertThrows(ServiceException.class, () -> AsyncService.await(async));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+    }
+
+    @Test
+    public void sweepExpiredSessions() throws DataAccessException {
+        var now = System.currentTimeMillis();
+        // More than one batch
+        for (var i = 0; i < SessionSweeper.BATCH + 10; i++) {
+            dataAccess.insertAuth(new AuthData("expired" + i, user1.username(), now - 2000, now - 1000));
+        }
+        dataAccess.insertAuth(new AuthData("current", user1.username(), now, now + 60_000));
+
+        try (var sweeper = new SessionSweeper(service, dataAccess, Duration.ofDays(1).toMillis())) {
+            assertEquals(SessionSweeper.BATCH + 10, sweeper.sweep());
+            assertEquals(0, sweeper.sweep());
+        }
+        assertNull(dataAccess.getAuth("expired0"));
+        assertNotNull(dataAccess.getAuth("current"));
+    }
+
+    @Test
+    public void asyncMakeMove() throws Exception {
+        var auth = service.registerUser(user1, dataAccess);
+        var gameId = service.createGame(gameName, auth.authToken(), dataAccess);
+        service.joinGame(gameId, TeamColor.WHITE, auth.authToken(), dataAccess);
+
+        var async = dataAccess.async();
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        var authFuture = AsyncService.authenticate(auth.authToken(), service, async);
+        var trace = new MoveTrace(gameId, System.nanoTime());
+        var game = AsyncService.await(AsyncService.makeMove(gameId, authFuture, move, async, trace));
+
+        assertEquals(TeamColor.BLACK, game.getTeamTurn());
+        assertEquals(TeamColor.BLACK, dataAccess.getGame(gameId).game().getTeamTurn());
+    }
+
+    @Test
+    public void asyncErrors() throws Exception {
+        var auth = service.registerUser(user1, dataAccess);
+        var gameId = service.createGame(gameName, auth.authToken(), dataAccess);
+        var async = dataAccess.async();
+
+        var badAuth = AsyncService.authenticate("heh", service, async);
+        var error = assertThrows(ServiceException.class, () -> AsyncService.await(badAuth));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+
+        // Not playing in the game
+        var authFuture = AsyncService.authenticate(auth.authToken(), service, async);
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        var trace = new MoveTrace(gameId, System.nanoTime());
+        var moving = AsyncService.makeMove(gameId, authFuture, move, async, trace);
+        error = assertThrows(ServiceException.class, () -> AsyncService.await(moving));
+        assertEquals(ErrorKind.Unauthorized, error.kind());
+
+        error = assertThrows(ServiceException.class, () -> AsyncService.await(AsyncService.getGame(99, async)));
+        assertEquals(ErrorKind.DoesNotExist, error.kind());
+    }
+
+    private static Map<Phase, Long> phaseCounts() {
+        var counts = new EnumMap<Phase, Long>(Phase.class);
+        for (var phase : Phase.values()) {
+            var time = MetricsRegistry.global().histogram("chess_move_phase_seconds",
+                "Time moves spend in each step of being made and broadcast", "phase", phase.name().toLowerCase());
+            counts.put(phase, time.count());
+        }
+        return counts;
+    }
+
+    private static void assertRecorded(Map<Phase, Long> before, Set<Phase> phases) {
+        var after = phaseCounts();
+        for (var phase : Phase.values()) {
+            var expected = before.get(phase) + (phases.contains(phase) ? 1 : 0);
+            assertEquals(expected, after.get(phase), phase.name());
+        }
+    }
+
+    @Test
+    public void moveTracePhases() throws Exception {
+        var auth = service.registerUser(user1, dataAccess);
+        var gameId = service.createGame(gameName, auth.authToken(), dataAccess);
+        service.joinGame(gameId, TeamColor.WHITE, auth.authToken(), dataAccess);
+        var async = dataAccess.async();
+        var move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+        var before = phaseCounts();
+        var authFuture = AsyncService.authenticate(auth.authToken(), service, async);
+        AsyncService.await(AsyncService.makeMove(gameId, authFuture, move, async, new MoveTrace(gameId,
+            System.nanoTime())));
+        assertRecorded(before, EnumSet.of(Phase.Auth, Phase.Load, Phase.Validate, Phase.Persist));
+
+        // A failed lookup is still timed, but nothing after it is
+        before = phaseCounts();
+        var badAuth = AsyncService.authenticate("heh", service, async);
+        var moving = AsyncService.makeMove(gameId, badAuth, move, async, new MoveTrace(gameId, System.nanoTime()));
+        assertThrows(ServiceException.class, () -> AsyncService.await(moving));
+        assertRecorded(before, EnumSet.of(Phase.Auth, Phase.Load));
+    }
 }
@@ -0,0 +1,17 @@
+package websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionManagerTests {
+    @Test
+    public void retireIdle() {
+        var manager = new ConnectionManager();
+        assertFalse(manager.retireIfIdle(0));
+        assertTrue(manager.retireIfIdle(System.currentTimeMillis() + 1));
+        assertFalse(manager.add(new Connection("token", null, 1, new ReentrantLock())));
+    }
+}
@@ -0,0 +1,97 @@
+package websocket;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameConnectionsTests {
+    private static final long PING_MILLIS = 20;
+    private static final long IDLE_MILLIS = 200;
+
+    /**
+     * A session that counts the pings sent to it and remembers being closed.
+     */
+    private static class FakeSession {
+        final AtomicInteger pings = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Session session;
+
+        FakeSession() {
+            var remote = (RemoteEndpoint) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "sendPing" -> {
+                        pings.incrementAndGet();
+                        yield null;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+            session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "isOpen" -> !closed.get();
+                    case "getRemote" -> remote;
+                    case "close" -> {
+                        closed.set(true);
+                        yield null;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        }
+    }
+
+    @Test
+    public void silentSocketsClosed() throws InterruptedException {
+        var connections = new GameConnections(PING_MILLIS, IDLE_MILLIS);
+        var silent = new FakeSession();
+        var live = new FakeSession();
+        connections.join(new Connection("silent", silent.session, 1, new ReentrantLock()));
+        connections.join(new Connection("live", live.session, 1, new ReentrantLock()));
+        connections.start();
+        try {
+            // The live socket answers its pings, the silent one never does
+            var deadline = System.currentTimeMillis() + 5 * IDLE_MILLIS;
+            while (!silent.closed.get() && System.currentTimeMillis() < deadline) {
+                connections.touch(live.session);
+                Thread.sleep(PING_MILLIS / 2);
+            }
+
+            assertTrue(silent.closed.get());
+            assertTrue(silent.pings.get() > 0);
+            assertFalse(live.closed.get());
+            assertTrue(live.pings.get() > 0);
+            assertEquals(1, connections.socketCount());
+            assertEquals(1, connections.existing(1).connections.size());
+        } finally {
+            connections.stop();
+        }
+    }
+
+    @Test
+    public void emptyGamesDropped() throws InterruptedException {
+        var connections = new GameConnections(PING_MILLIS, IDLE_MILLIS);
+        var silent = new FakeSession();
+        connections.join(new Connection("silent", silent.session, 1, new ReentrantLock()));
+        connections.start();
+        try {
+            // Closing the socket empties the game, which is dropped once it's been empty for the idle timeout
+            var deadline = System.currentTimeMillis() + 10 * IDLE_MILLIS;
+            while (connections.gameCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(PING_MILLIS);
+            }
+
+            assertTrue(silent.closed.get());
+            assertEquals(0, connections.socketCount());
+            assertEquals(0, connections.gameCount());
+        } finally {
+            connections.stop();
+        }
+    }
+}
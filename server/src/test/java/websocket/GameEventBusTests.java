@@ -0,0 +1,174 @@
+package websocket;
+
+import chess.ChessGame;
+import org.junit.jupiter.api.Test;
+import websocket.messages.LoadGameMessage;
+import websocket.messages.NotificationMessage;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameEventBusTests {
+    @Test
+    public void localSequencesPerGame() throws IOException {
+        var bus = new LocalGameEventBus();
+        var received = new CopyOnWriteArrayList<GameEvent>();
+        bus.subscribe(received::add);
+
+        bus.publish(1, null, new NotificationMessage("a"));
+        bus.publish(2, null, new NotificationMessage("b"));
+        bus.publish(1, "token", new NotificationMessage("c"));
+
+        assertEquals(List.of(1L, 1L, 2L), received.stream().map(GameEvent::sequence).toList());
+        assertEquals("token", received.get(2).sourceId());
+    }
+
+    @Test
+    public void localSequencesPruned() throws IOException {
+        var bus = new LocalGameEventBus();
+        var received = new CopyOnWriteArrayList<GameEvent>();
+        bus.subscribe(received::add);
+
+        bus.publish(1, null, new NotificationMessage("a"));
+        bus.publish(2, null, new NotificationMessage("b"));
+        bus.prune(System.currentTimeMillis() + 1);
+        assertEquals(0, bus.sequenceCount());
+
+        bus.publish(1, null, new NotificationMessage("c"));
+        assertEquals(1, bus.sequenceCount());
+        assertEquals(1L, received.get(2).sequence());
+        assertNotEquals(received.get(0).epoch(), received.get(2).epoch());
+    }
+
+    @Test
+    public void nodeReconnectsToBroker() throws IOException, InterruptedException {
+        var broker = new GameEventBroker(0);
+        var port = broker.port();
+        broker.start();
+        try (var node = new SocketGameEventBus("localhost", port)) {
+            while (broker.nodeCount() < 1) {
+                Thread.sleep(10);
+            }
+            broker.close();
+
+            // The broker comes back on the same port, and the node finds it again
+            try (var restarted = restart(port)) {
+                restarted.start();
+                var deadline = System.currentTimeMillis() + 10_000;
+                while (restarted.nodeCount() < 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, restarted.nodeCount());
+
+                var latch = new CountDownLatch(1);
+                node.subscribe(e -> latch.countDown());
+                node.publish(7, null, new NotificationMessage("back"));
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private static GameEventBroker restart(int port) throws IOException, InterruptedException {
+        // The old broker's port can take a moment to be released
+        for (var attempt = 0; ; attempt++) {
+            try {
+                return new GameEventBroker(port);
+            } catch (BindException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @Test
+    public void brokerFansOutToEveryNode() throws IOException, InterruptedException {
+        try (var broker = new GameEventBroker(0)) {
+            broker.start();
+            try (
+                var node1 = new SocketGameEventBus("localhost", broker.port());
+                var node2 = new SocketGameEventBus("localhost", broker.port())
+            ) {
+                // Nodes are registered by the broker's thread after they connect
+                while (broker.nodeCount() < 2) {
+                    Thread.sleep(10);
+                }
+
+                var first = new CountDownLatch(2);
+                var latch = new CountDownLatch(4);
+                var received1 = new CopyOnWriteArrayList<GameEvent>();
+                var received2 = new CopyOnWriteArrayList<GameEvent>();
+                node1.subscribe(e -> {
+                    received1.add(e);
+                    first.countDown();
+                    latch.countDown();
+                });
+                node2.subscribe(e -> {
+                    received2.add(e);
+                    first.countDown();
+                    latch.countDown();
+                });
+
+                node1.publish(7, null, new LoadGameMessage(new ChessGame()));
+                // Publishes from different nodes can reach the broker in either order
+                assertTrue(first.await(5, TimeUnit.SECONDS));
+                node2.publish(7, "token", new NotificationMessage("moved"));
+
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+                for (var received : List.of(received1, received2)) {
+                    assertEquals(List.of(1L, 2L), received.stream().map(GameEvent::sequence).toList());
+                    assertEquals(new ChessGame(), ((LoadGameMessage) received.get(0).message()).game());
+                    assertEquals("moved", ((NotificationMessage) received.get(1).message()).message());
+                    assertEquals("token", received.get(1).sourceId());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sessionsEndOnEveryNode() throws IOException, InterruptedException {
+        try (var broker = new GameEventBroker(0)) {
+            broker.start();
+            try (
+                var node1 = new SocketGameEventBus("localhost", broker.port());
+                var node2 = new SocketGameEventBus("localhost", broker.port())
+            ) {
+                while (broker.nodeCount() < 2) {
+                    Thread.sleep(10);
+                }
+
+                var latch = new CountDownLatch(4);
+                var ended = new CopyOnWriteArrayList<String>();
+                GameEventBus.SessionListener listener = new GameEventBus.SessionListener() {
+                    @Override
+                    public void loggedOut(String authToken) {
+                        ended.add(authToken);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void cleared(long clearedAt) {
+                        ended.add("cleared at " + clearedAt);
+                        latch.countDown();
+                    }
+                };
+                node1.subscribeSessions(listener);
+                node2.subscribeSessions(listener);
+
+                node1.publishLogout("token");
+                node1.publishClear(42);
+
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+                assertEquals(2, ended.stream().filter("token"::equals).count());
+                assertEquals(2, ended.stream().filter("cleared at 42"::equals).count());
+            }
+        }
+    }
+}
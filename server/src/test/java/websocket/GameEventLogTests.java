@@ -0,0 +1,83 @@
+package websocket;
+
+import org.junit.jupiter.api.Test;
+import websocket.messages.NotificationMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameEventLogTests {
+    private static final long EPOCH = 42;
+
+    private static GameEvent event(long sequence, String sourceId) {
+        return new GameEvent(1, EPOCH, sequence, sourceId, new NotificationMessage("message " + sequence));
+    }
+
+    @Test
+    public void recordTracksLatest() {
+        var log = new GameEventLog(4);
+        log.record(event(1, null));
+        log.record(event(2, "token"));
+        assertEquals(2, log.latest());
+    }
+
+    @Test
+    public void sinceReturnsMissedEvents() {
+        var log = new GameEventLog(4);
+        log.record(event(1, null));
+        log.record(event(2, null));
+        log.record(event(3, "token"));
+
+        var missed = log.since(EPOCH, 1);
+        assertNotNull(missed);
+        assertEquals(List.of(2L, 3L), missed.stream().map(GameEvent::sequence).toList());
+        assertEquals("token", missed.get(1).sourceId());
+        assertEquals(List.of(), log.since(EPOCH, 3));
+    }
+
+    @Test
+    public void sinceEvicted() {
+        var log = new GameEventLog(2);
+        for (var i = 1; i <= 5; i++) {
+            log.record(event(i, null));
+        }
+
+        assertNull(log.since(EPOCH, 1));
+        assertNotNull(log.since(EPOCH, 3));
+    }
+
+    @Test
+    public void sinceFuture() {
+        var log = new GameEventLog(2);
+        log.record(event(1, null));
+
+        // A client that saw events from before a server restart has to reload
+        assertNull(log.since(EPOCH, 7));
+    }
+
+    @Test
+    public void sinceBeforeFirstRecorded() {
+        var log = new GameEventLog(4);
+        log.record(event(5, null));
+        log.record(event(6, null));
+
+        // This node never saw events 3 and 4
+        assertNull(log.since(EPOCH, 2));
+        assertEquals(1, log.since(EPOCH, 5).size());
+    }
+
+    @Test
+    public void sinceOtherEpoch() {
+        var log = new GameEventLog(4);
+        log.record(event(1, null));
+        log.record(event(2, null));
+
+        // The numbering started over, so sequence 1 of the old epoch means nothing
+        assertNull(log.since(EPOCH + 1, 1));
+        log.record(new GameEvent(1, EPOCH + 1, 1, null, new NotificationMessage("again")));
+        assertEquals(1, log.latest());
+        assertNull(log.since(EPOCH, 1));
+        assertEquals(List.of(), log.since(EPOCH + 1, 1));
+    }
+}
@@ -0,0 +1,247 @@
+package websocket;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import dataaccess.DataAccessException;
+import dataaccess.MemoryDataAccess;
+import model.AuthData;
+import model.UserData;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.PasswordHasher;
+import service.Service;
+import service.ServiceException;
+import websocket.commands.UserGameCommand;
+import websocket.commands.UserGameCommand.CommandType;
+import websocket.messages.ErrorMessage;
+import websocket.messages.NotificationMessage;
+import websocket.messages.ServerMessage.ServerMessageType;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends commands straight to the handler from fake sockets. Storage and the
+ * event bus run on the calling thread, so every message a command causes has
+ * been sent by the time it returns.
+ */
+public class WebSocketHandlerTests {
+    private static final PasswordHasher HASHER = PasswordHasher.forCores();
+    private static final Gson GSON = new Gson();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final MemoryDataAccess data = new MemoryDataAccess() {
+        @Override
+        public AuthData getAuth(String token) {
+            lookups.incrementAndGet();
+            return super.getAuth(token);
+        }
+    };
+    private final Service service = new Service(HASHER, null, Duration.ofDays(1));
+    private final WebSocketHandler handler = new WebSocketHandler(service, data, new LocalGameEventBus());
+    private AuthData alice;
+    private AuthData bob;
+    private int game1;
+    private int game2;
+
+    /**
+     * A socket that keeps the text of every message sent to it.
+     */
+    private class FakeSocket {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Session session;
+
+        FakeSocket() {
+            var remote = (RemoteEndpoint) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "sendString" -> {
+                        received.add((String) args[0]);
+                        yield null;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+            session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "isOpen" -> !closed.get();
+                    case "getRemote" -> remote;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+            handler.onConnect(session);
+        }
+
+        void send(CommandType type, AuthData auth, int gameId) throws IOException {
+            handler.onCommand(session, GSON.toJson(new UserGameCommand(type, auth.authToken(), gameId)));
+        }
+
+        /**
+         * @return the text of the last message received, which must be an error
+         */
+        String lastError() {
+            var last = GSON.fromJson(received.getLast(), ErrorMessage.class);
+            assertEquals(ServerMessageType.ERROR, last.getServerMessageType());
+            return last.message();
+        }
+
+        void close() {
+            closed.set(true);
+            handler.onClose(session, 1000, "closed");
+        }
+
+        /**
+         * @return the messages received since the last call, as type and game ID
+         */
+        List<String> take() {
+            var taken = received.stream().map(text -> GSON.fromJson(text, NotificationMessage.class))
+                .map(message -> message.getServerMessageType() + " " + message.gameID()).toList();
+            received.clear();
+            return taken;
+        }
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        HASHER.shutdown();
+    }
+
+    @BeforeEach
+    public void setup() throws DataAccessException, ServiceException {
+        alice = service.registerUser(new UserData("alice", "password", "alice@mail.com"), data);
+        bob = service.registerUser(new UserData("bob", "password", "bob@mail.com"), data);
+        game1 = data.createGame("game1", new ChessGame());
+        game2 = data.createGame("game2", new ChessGame());
+        lookups.set(0);
+    }
+
+    @Test
+    public void oneSocketSeveralGames() throws IOException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        aliceSocket.send(CommandType.CONNECT, alice, game2);
+        assertEquals(List.of("LOAD_GAME " + game1, "LOAD_GAME " + game2), aliceSocket.take());
+
+        // Each game's events reach the one socket, tagged with the game they're about
+        var bobSocket = new FakeSocket();
+        bobSocket.send(CommandType.CONNECT, bob, game2);
+        bobSocket.send(CommandType.CONNECT, bob, game1);
+        assertEquals(List.of("NOTIFICATION " + game2, "NOTIFICATION " + game1), aliceSocket.take());
+        assertEquals(2, handler.connections().socketCount());
+    }
+
+    @Test
+    public void leaveKeepsOtherGames() throws IOException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        aliceSocket.send(CommandType.CONNECT, alice, game2);
+        var bobSocket = new FakeSocket();
+        bobSocket.send(CommandType.CONNECT, bob, game1);
+        bobSocket.send(CommandType.CONNECT, bob, game2);
+        aliceSocket.take();
+        bobSocket.take();
+
+        aliceSocket.send(CommandType.LEAVE, alice, game1);
+        assertEquals(List.of("NOTIFICATION " + game1), bobSocket.take());
+        assertFalse(handler.connections().existing(game1).connections.containsKey(aliceSocket.session));
+
+        // Still subscribed to the other game, over the same socket
+        bobSocket.send(CommandType.LEAVE, bob, game1);
+        bobSocket.send(CommandType.LEAVE, bob, game2);
+        var left = GSON.fromJson(aliceSocket.received.getFirst(), NotificationMessage.class);
+        assertEquals("bob left the game", left.message());
+        assertEquals(List.of("NOTIFICATION " + game2), aliceSocket.take());
+    }
+
+    @Test
+    public void closeLeavesEveryGame() throws IOException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        aliceSocket.send(CommandType.CONNECT, alice, game2);
+        aliceSocket.close();
+
+        assertEquals(0, handler.connections().socketCount());
+        assertTrue(handler.connections().existing(game1).connections.isEmpty());
+        assertTrue(handler.connections().existing(game2).connections.isEmpty());
+    }
+
+    @Test
+    public void boundSessionReused() throws IOException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        assertEquals(1, lookups.get());
+
+        // Later commands with the same token use the session bound on CONNECT
+        aliceSocket.send(CommandType.LEAVE, alice, game1);
+        assertEquals(1, lookups.get());
+        assertEquals(List.of("LOAD_GAME " + game1), aliceSocket.take());
+    }
+
+    @Test
+    public void otherTokenLookedUp() throws IOException, DataAccessException, ServiceException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        // Any token can be sent over the socket, and only the bound one skips the lookup
+        aliceSocket.send(CommandType.LEAVE, bob, game1);
+        assertEquals(2, lookups.get());
+
+        var loggedOut = service.login("alice", "password", data);
+        service.logout(loggedOut.authToken(), data);
+        lookups.set(0);
+        aliceSocket.send(CommandType.LEAVE, loggedOut, game1);
+        assertEquals(1, lookups.get());
+        assertEquals("Error: unauthorized", aliceSocket.lastError());
+    }
+
+    @Test
+    public void logoutRevokesBoundSession() throws IOException, DataAccessException, ServiceException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+
+        // What the server does when it's told about the logout
+        service.logout(alice.authToken(), data);
+        handler.revoke(alice.authToken());
+        lookups.set(0);
+        aliceSocket.send(CommandType.LEAVE, alice, game1);
+        assertEquals("Error: unauthorized", aliceSocket.lastError());
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void clearRevokesBoundSessions() throws IOException, DataAccessException {
+        var aliceSocket = new FakeSocket();
+        aliceSocket.send(CommandType.CONNECT, alice, game1);
+        var bobSocket = new FakeSocket();
+        bobSocket.send(CommandType.CONNECT, bob, game2);
+
+        service.clear(data);
+        handler.revokeAll();
+        aliceSocket.send(CommandType.LEAVE, alice, game1);
+        assertEquals("Error: unauthorized", aliceSocket.lastError());
+        bobSocket.send(CommandType.RESIGN, bob, game2);
+        assertEquals("Error: unauthorized", bobSocket.lastError());
+    }
+
+    @Test
+    public void expiredBoundSessionRejected() throws IOException, DataAccessException {
+        var now = System.currentTimeMillis();
+        var expired = new AuthData("expired", "alice", now - 2000, now - 1000);
+        data.insertAuth(expired);
+        var aliceSocket = new FakeSocket();
+        handler.connections().bind(aliceSocket.session, expired);
+
+        aliceSocket.send(CommandType.LEAVE, expired, game1);
+        assertEquals("Error: unauthorized", aliceSocket.lastError());
+        assertEquals(1, lookups.get());
+    }
+}
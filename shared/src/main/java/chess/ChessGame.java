@@ -37,6 +37,16 @@ public class ChessGame {
         this.setBoard(board);
     }
 
+    /**
+     * Restores a game whose status is already known, without working it out
+     * from the board again
+     */
+    ChessGame(ChessBoard board, TeamColor turn, GameStatus status) {
+        this.setBoard(board);
+        this.turn = turn;
+        this.status = status;
+    }
+
     public GameStatus status() {
         return this.status;
     }
@@ -117,18 +127,31 @@ public class ChessGame {
      * @throws InvalidMoveException if move is invalid
      */
     public void makeMove(ChessMove move) throws InvalidMoveException {
-        if (!this.status().canPlay()) {
-            throw new InvalidMoveException();
-        }
+        this.makeMove(move, 0);
+    }
 
-        var piece = this.board.getPiece(move.startPosition());
-        if (piece == null || this.turn != piece.pieceColor()) {
-            throw new InvalidMoveException();
+    /**
+     * Makes a move in a chess game, recording it in Flight Recorder under the
+     * given game ID
+     *
+     * @throws InvalidMoveException if move is invalid
+     */
+    public void makeMove(ChessMove move, int gameId) throws InvalidMoveException {
+        // When the event is disabled the JIT removes it, so this costs nothing
+        var event = new MoveEvent();
+        event.begin();
+        var recording = event.isEnabled();
+        var start = recording ? System.nanoTime() : 0;
+
+        var legal = this.isLegal(move);
+        if (recording) {
+            event.gameId = gameId;
+            event.move = move.toString();
+            event.legal = legal;
+            event.legalityDuration = System.nanoTime() - start;
         }
-
-        var valid = this.validMovesStream(move.startPosition())
-            .anyMatch(move::equals);
-        if (!valid) {
+        if (!legal) {
+            event.commit();
             throw new InvalidMoveException();
         }
 
@@ -142,7 +165,27 @@ public class ChessGame {
 
         this.turn = this.turn.opposite();
 
+        var statusStart = recording ? System.nanoTime() : 0;
         this.status = this.computeStatus();
+        if (recording) {
+            event.statusDuration = System.nanoTime() - statusStart;
+            event.status = this.status.name();
+        }
+        event.commit();
+    }
+
+    private boolean isLegal(ChessMove move) {
+        if (!this.status().canPlay()) {
+            return false;
+        }
+
+        var piece = this.board.getPiece(move.startPosition());
+        if (piece == null || this.turn != piece.pieceColor()) {
+            return false;
+        }
+
+        return this.validMovesStream(move.startPosition())
+            .anyMatch(move::equals);
     }
 
     public void resign(TeamColor team) {
@@ -0,0 +1,105 @@
+package chess;
+
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
+import chess.ChessPiece.PieceType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs a game into {@value #BYTES} bytes: a nibble for each square, then the
+ * turn and status. Unlike JSON, decoding doesn't have to work out the status
+ * again from the board.
+ * <p>
+ * A square's nibble is 0 when it is empty, and otherwise the piece type's
+ * ordinal plus one, with the high bit set for black pieces.
+ */
+public class GameCodec {
+    private static final int SQUARES = ChessBoard.BOARD_SIZE * ChessBoard.BOARD_SIZE;
+    public static final int BYTES = SQUARES / 2 + 1;
+
+    private static final PieceType[] TYPES = PieceType.values();
+    private static final GameStatus[] STATUSES = GameStatus.values();
+    private static final int BLACK = 0b1000;
+    // Pieces are immutable, so every decoded board shares these instead of
+    // allocating its own
+    private static final ChessPiece[] PIECES = new ChessPiece[BLACK << 1];
+
+    static {
+        for (var type : TYPES) {
+            PIECES[type.ordinal() + 1] = new ChessPiece(TeamColor.WHITE, type);
+            PIECES[(type.ordinal() + 1) | BLACK] = new ChessPiece(TeamColor.BLACK, type);
+        }
+    }
+
+    public static void write(ChessGame game, ByteBuffer out) {
+        var board = game.getBoard();
+        for (var square = 0; square < SQUARES; square += 2) {
+            out.put((byte) (nibble(board, square) << 4 | nibble(board, square + 1)));
+        }
+        out.put((byte) (game.getTeamTurn().ordinal() << 7 | game.status().ordinal()));
+    }
+
+    public static byte[] encode(ChessGame game) {
+        var out = ByteBuffer.allocate(BYTES);
+        write(game, out);
+        return out.array();
+    }
+
+    public static ChessGame read(ByteBuffer in) {
+        var board = new ChessBoard();
+        for (var square = 0; square < SQUARES; square += 2) {
+            var packed = in.get();
+            addPiece(board, square, (packed >> 4) & 0xF);
+            addPiece(board, square + 1, packed & 0xF);
+        }
+        var state = in.get();
+        return new ChessGame(board, turn(state), status(state));
+    }
+
+    /**
+     * @return whose turn it is in the game encoded at offset, without
+     * decoding its board
+     */
+    public static TeamColor turn(ByteBuffer in, int offset) {
+        return turn(in.get(offset + BYTES - 1));
+    }
+
+    /**
+     * @return the status of the game encoded at offset, without decoding its
+     * board
+     */
+    public static GameStatus status(ByteBuffer in, int offset) {
+        return status(in.get(offset + BYTES - 1));
+    }
+
+    private static TeamColor turn(byte state) {
+        return (state & 0x80) != 0 ? TeamColor.BLACK : TeamColor.WHITE;
+    }
+
+    private static GameStatus status(byte state) {
+        return STATUSES[state & 0x7F];
+    }
+
+    public static ChessGame decode(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    private static int nibble(ChessBoard board, int square) {
+        var piece = board.getPiece(position(square));
+        if (piece == null) {
+            return 0;
+        }
+        return (piece.type().ordinal() + 1) | (piece.pieceColor() == TeamColor.BLACK ? BLACK : 0);
+    }
+
+    private static void addPiece(ChessBoard board, int square, int nibble) {
+        if (nibble != 0) {
+            board.addPiece(position(square), PIECES[nibble]);
+        }
+    }
+
+    private static ChessPosition position(int square) {
+        return new ChessPosition(square / ChessBoard.BOARD_SIZE + 1, square % ChessBoard.BOARD_SIZE + 1);
+    }
+}
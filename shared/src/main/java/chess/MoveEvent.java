@@ -0,0 +1,43 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for {@link ChessGame#makeMove}. Disabled unless a
+ * recording turns it on, for example with
+ * {@code -XX:StartFlightRecording:chess.Move#enabled=true}.
+ */
+@Name("chess.Move")
+@Label("Chess Move")
+@Category("Chess")
+@Enabled(false)
+@StackTrace(false)
+class MoveEvent extends jdk.jfr.Event {
+    @Label("Game ID")
+    int gameId;
+
+    @Label("Move")
+    String move;
+
+    @Label("Legal")
+    boolean legal;
+
+    @Label("Status")
+    @Description("The game's status after the move")
+    String status;
+
+    @Label("Legality Check")
+    @Timespan(Timespan.NANOSECONDS)
+    long legalityDuration;
+
+    @Label("Status Check")
+    @Description("Time spent looking for check, checkmate and stalemate")
+    @Timespan(Timespan.NANOSECONDS)
+    long statusDuration;
+}
@@ -1,3 +1,16 @@
 package model;
 
-public record AuthData(String authToken, String username) {}
+/**
+ * @param issuedAt  when the token was issued, in epoch milliseconds
+ * @param expiresAt when the token stops being accepted, in epoch
+ *                  milliseconds, or 0 if it never does
+ */
+public record AuthData(String authToken, String username, long issuedAt, long expiresAt) {
+    public AuthData(String authToken, String username) {
+        this(authToken, username, 0, 0);
+    }
+
+    public boolean expired(long now) {
+        return this.expiresAt != 0 && this.expiresAt <= now;
+    }
+}
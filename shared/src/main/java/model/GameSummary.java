@@ -0,0 +1,17 @@
+package model;
+
+import chess.ChessGame.GameStatus;
+import chess.ChessGame.TeamColor;
+
+/**
+ * What the lobby shows about a game. It has no board, so storage can list
+ * games without reading or decoding any.
+ */
+public record GameSummary(
+    int gameID, String whiteUsername, String blackUsername, String gameName, GameStatus status, TeamColor turn
+) {
+    public static GameSummary of(GameData game) {
+        return new GameSummary(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(),
+            game.game().status(), game.game().getTeamTurn());
+    }
+}
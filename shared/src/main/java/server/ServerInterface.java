@@ -1,7 +1,7 @@
 package server;
 
 import chess.ChessGame;
-import model.GameData;
+import model.GameSummary;
 
 import java.util.List;
 
@@ -9,7 +9,7 @@ import java.util.List;
 public class ServerInterface {
     public record LoginRequest(String username, String password) {}
 
-    public record ListGamesResponse(List<GameData> games) {}
+    public record ListGamesResponse(List<GameSummary> games) {}
 
     public record CreateGameRequest(String gameName) {}
 
@@ -18,4 +18,16 @@ public class ServerInterface {
     public record JoinGameRequest(ChessGame.TeamColor playerColor, int gameID) {}
 
     public record ResponseExceptionBody(String message) {}
+
+    /**
+     * Time from the server receiving a move to sending the new board to a
+     * player or observer, over every move made in the game on one server node.
+     *
+     * @param deliveries how many times a board was sent after a move
+     */
+    public record MoveLatency(
+        int gameID, long deliveries, double p50Millis, double p90Millis, double p99Millis, double maxMillis
+    ) {}
+
+    public record MoveLatencyResponse(List<MoveLatency> games) {}
 }
@@ -16,10 +16,28 @@ public sealed class UserGameCommand permits MakeMoveCommand {
 
     private final Integer gameID;
 
+    private final Long lastEpoch;
+
+    private final Long lastSequence;
+
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID) {
+        this(commandType, authToken, gameID, null, null);
+    }
+
+    /**
+     * @param lastEpoch    the epoch of the last game event the client received,
+     *                     which its sequence number belongs to. May be null.
+     * @param lastSequence the sequence number of the last game event the client
+     *                     received, so a reconnecting client is only sent what it
+     *                     missed. May be null.
+     */
+    public UserGameCommand(CommandType commandType, String authToken, Integer gameID, Long lastEpoch,
+        Long lastSequence) {
         this.commandType = commandType;
         this.authToken = authToken;
         this.gameID = gameID;
+        this.lastEpoch = lastEpoch;
+        this.lastSequence = lastSequence;
     }
 
     public enum CommandType {
@@ -41,6 +59,14 @@ public sealed class UserGameCommand permits MakeMoveCommand {
         return gameID;
     }
 
+    public Long getLastEpoch() {
+        return lastEpoch;
+    }
+
+    public Long getLastSequence() {
+        return lastSequence;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -10,6 +10,9 @@ import java.util.Objects;
  */
 public sealed class ServerMessage permits LoadGameMessage, NotificationMessage, ErrorMessage {
     ServerMessageType serverMessageType;
+    Integer gameID;
+    Long epoch;
+    Long sequence;
 
     public enum ServerMessageType {
         LOAD_GAME,
@@ -25,6 +28,43 @@ public sealed class ServerMessage permits LoadGameMessage, NotificationMessage,
         return this.serverMessageType;
     }
 
+    /**
+     * @return the game this message is about, so that one websocket can carry
+     * messages for several games
+     */
+    public Integer gameID() {
+        return this.gameID;
+    }
+
+    public void setGameID(int gameID) {
+        this.gameID = gameID;
+    }
+
+    /**
+     * @return the position of this message in its game's event stream, or null
+     * if the message was only sent to a single connection
+     */
+    public Long sequence() {
+        return this.sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return which numbering of its game's events the sequence number
+     * belongs to, or null. Numbering starts over from 1 with a new epoch, for
+     * example when the server restarts.
+     */
+    public Long epoch() {
+        return this.epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {